@@ -0,0 +1,62 @@
+package com.teinvdlugt.android.fractals;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps bitmaps that are no longer shown, so that the next frame of the same size can draw
+ * into them instead of allocating new ones. Like the {@link com.teinvdlugt.fractals.engine.BufferPool}
+ * of the pixel arrays, it counts the bitmaps it had to allocate.
+ * <p/>
+ * It is used from the UI thread and from the background threads of the tasks of {@link FractalView}.
+ */
+class BitmapPool {
+
+    private final int maxPooled;
+    private final List<Bitmap> bitmaps = new ArrayList<>();
+    private long allocations, reuses;
+
+    /**
+     * @param maxPooled The number of bitmaps to keep at most
+     */
+    BitmapPool(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * A bitmap of exactly this size, from the pool if there is one. Its pixels are whatever
+     * they were when it was released.
+     */
+    synchronized Bitmap obtain(int width, int height, Bitmap.Config config) {
+        for (int i = bitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = bitmaps.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                reuses++;
+                return bitmaps.remove(i);
+            }
+        }
+        allocations++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a bitmap to the pool. It must not be drawn or drawn into any more by the caller.
+     *
+     * @param bitmap May be null
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || bitmaps.contains(bitmap)) return;
+        if (bitmaps.size() >= maxPooled) bitmaps.remove(0).recycle();
+        bitmaps.add(bitmap);
+    }
+
+    synchronized long getAllocations() {
+        return allocations;
+    }
+
+    synchronized long getReuses() {
+        return reuses;
+    }
+}
@@ -0,0 +1,292 @@
+package com.teinvdlugt.android.fractals;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import com.teinvdlugt.fractals.engine.ColorScheme;
+import com.teinvdlugt.fractals.engine.MapTile;
+import com.teinvdlugt.fractals.engine.MapTileScheduler;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.TileRenderer;
+
+/**
+ * Shows a fractal as a map of {@link MapTile}s, which can be panned with one finger and zoomed
+ * with two without waiting for a render: only the tiles that come into view are calculated,
+ * in the background, and tiles that are still missing are filled in with a scaled-up part
+ * of a tile of a lower zoom level, if there is one. Unlike {@link FractalView} it stops at
+ * the zoom level where doubles run out of precision.
+ */
+public class FractalMapView extends View {
+
+    /**
+     * The number of tiles kept in memory, 128 KB each. A 1080x1920 screen shows up to
+     * about 104 of them.
+     */
+    private static final int MAX_CACHED_TILES = 192;
+    /**
+     * The number of lower zoom levels that are searched for a tile to show in place of a missing one.
+     */
+    private static final int MAX_FALLBACK_LEVELS = 4;
+
+    private MapTileScheduler<Bitmap> scheduler;
+    private RenderParams params;
+    private ColorScheme colorScheme;
+
+    /**
+     * The zoom level, continuous: at zoom z the tiles of level z are MapTile.SIZE device pixels wide.
+     */
+    private double zoom = -1;
+    private double centerReal = -.5, centerImg = 0;
+
+    private ScaleGestureDetector scaleGestureDetector;
+    private float lastX, lastY;
+    private boolean panning;
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect tileSource = new Rect();
+    private final RectF tileDestination = new RectF();
+
+    private final MapTileScheduler.OnTileReadyListener onTileReadyListener = new MapTileScheduler.OnTileReadyListener() {
+        @Override
+        public void onTileReady(MapTile tile) {
+            postInvalidate();
+        }
+    };
+
+    /**
+     * Renders the tiles with new params from now on.
+     */
+    public void setParams(RenderParams params, ColorScheme colorScheme) {
+        this.params = params;
+        this.colorScheme = colorScheme;
+        if (scheduler != null) {
+            scheduler.setParams(params, colorScheme);
+            updateTiles(0, 0);
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        scheduler = new MapTileScheduler<>(new MapTileScheduler.TileFactory<Bitmap>() {
+            @Override
+            public Bitmap create(MapTile tile, int[] colors) {
+                return Bitmap.createBitmap(colors, MapTile.SIZE, MapTile.SIZE, Bitmap.Config.RGB_565);
+            }
+        }, TileRenderer.availableProcessors(), MAX_CACHED_TILES);
+        scheduler.setOnTileReadyListener(onTileReadyListener);
+        if (params != null) {
+            scheduler.setParams(params, colorScheme);
+            updateTiles(0, 0);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        scheduler.shutdown();
+        scheduler = null;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        // Start with the whole set in view
+        if (zoom < 0 && w > 0) zoom = clampZoom(Math.log((double) w / MapTile.SIZE) / Math.log(2));
+        updateTiles(0, 0);
+    }
+
+    /**
+     * The level of the tiles that are shown, of which the size on the screen is closest to MapTile.SIZE.
+     */
+    private int level() {
+        return (int) Math.min(MapTile.MAX_ZOOM, Math.max(0, Math.round(zoom)));
+    }
+
+    /**
+     * The width of a tile of the shown level in device pixels.
+     */
+    private double tileScale() {
+        return MapTile.SIZE * Math.pow(2, zoom - level());
+    }
+
+    /**
+     * The width of a device pixel in the complex plane.
+     */
+    private double pixelSize() {
+        return MapTile.range(level()) / tileScale();
+    }
+
+    private static double clampZoom(double zoom) {
+        return Math.max(0, Math.min(MapTile.MAX_ZOOM, zoom));
+    }
+
+    /**
+     * Tells the scheduler which tiles are in view.
+     *
+     * @param directionX The horizontal direction in which the view moves, in any unit
+     * @param directionY The vertical direction in which the view moves, in any unit
+     */
+    private void updateTiles(double directionX, double directionY) {
+        if (scheduler == null || zoom < 0) return;
+        int level = level();
+        double scale = tileScale();
+        double left = MapTile.tileX(centerReal, level) - getWidth() / 2.0 / scale;
+        double top = MapTile.tileY(centerImg, level) - getHeight() / 2.0 / scale;
+        scheduler.update(level, left, top, left + getWidth() / scale, top + getHeight() / scale,
+                directionX, directionY);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawColor(Color.BLACK);
+        if (scheduler == null || zoom < 0) return;
+
+        int level = level();
+        double scale = tileScale();
+        double left = MapTile.tileX(centerReal, level) - getWidth() / 2.0 / scale;
+        double top = MapTile.tileY(centerImg, level) - getHeight() / 2.0 / scale;
+        long lastX = (long) Math.ceil(left + getWidth() / scale) - 1;
+        long lastY = (long) Math.ceil(top + getHeight() / scale) - 1;
+        for (long y = (long) Math.floor(top); y <= lastY; y++) {
+            for (long x = (long) Math.floor(left); x <= lastX; x++) {
+                // Round the edges, so that neighbouring tiles don't leave a seam between them
+                tileDestination.set(Math.round((x - left) * scale), Math.round((y - top) * scale),
+                        Math.round((x + 1 - left) * scale), Math.round((y + 1 - top) * scale));
+                drawTile(canvas, new MapTile(level, x, y));
+            }
+        }
+    }
+
+    /**
+     * Draws a tile into {@link #tileDestination}, or the part of a tile of a lower level that
+     * covers it if it hasn't been rendered yet.
+     */
+    private void drawTile(Canvas canvas, MapTile tile) {
+        MapTile source = tile;
+        for (int up = 0; up <= MAX_FALLBACK_LEVELS && source != null; up++) {
+            Bitmap bitmap = scheduler.getTile(source);
+            if (bitmap != null) {
+                int size = MapTile.SIZE >> up;
+                int sourceLeft = (int) (tile.getX() - (source.getX() << up)) * size;
+                int sourceTop = (int) (tile.getY() - (source.getY() << up)) * size;
+                tileSource.set(sourceLeft, sourceTop, sourceLeft + size, sourceTop + size);
+                canvas.drawBitmap(bitmap, tileSource, tileDestination, tilePaint);
+                return;
+            }
+            source = source.getParent();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleGestureDetector.onTouchEvent(event);
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                lastX = event.getX();
+                lastY = event.getY();
+                panning = true;
+                return true;
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_POINTER_UP:
+                // The first pointer may have changed, so start again at the next move
+                panning = false;
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (scaleGestureDetector.isInProgress() || event.getPointerCount() > 1) return true;
+                if (panning) pan(lastX - event.getX(), lastY - event.getY());
+                lastX = event.getX();
+                lastY = event.getY();
+                panning = true;
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                // At rest, prefetch the tiles on all sides
+                updateTiles(0, 0);
+                return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    /**
+     * Moves the view by a number of device pixels.
+     */
+    private void pan(float dx, float dy) {
+        if (zoom < 0) return;
+        double pixelSize = pixelSize();
+        centerReal += dx * pixelSize;
+        centerImg -= dy * pixelSize;
+        updateTiles(dx, dy);
+        invalidate();
+    }
+
+    private void init() {
+        scaleGestureDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            private float focusX, focusY;
+
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                focusX = detector.getFocusX();
+                focusY = detector.getFocusY();
+                return zoom >= 0;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                // Move along with the fingers, then keep the point between them in place while zooming
+                double pixelSize = pixelSize();
+                centerReal += (focusX - detector.getFocusX()) * pixelSize;
+                centerImg -= (focusY - detector.getFocusY()) * pixelSize;
+                focusX = detector.getFocusX();
+                focusY = detector.getFocusY();
+
+                double offsetX = focusX - getWidth() / 2.0, offsetY = focusY - getHeight() / 2.0;
+                double focusReal = centerReal + offsetX * pixelSize, focusImg = centerImg - offsetY * pixelSize;
+                zoom = clampZoom(zoom + Math.log(detector.getScaleFactor()) / Math.log(2));
+                pixelSize = pixelSize();
+                centerReal = focusReal - offsetX * pixelSize;
+                centerImg = focusImg + offsetY * pixelSize;
+
+                updateTiles(0, 0);
+                invalidate();
+                return true;
+            }
+        });
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    public double getCenterReal() {
+        return centerReal;
+    }
+
+    public double getCenterImg() {
+        return centerImg;
+    }
+
+    public FractalMapView(Context context) {
+        super(context);
+        init();
+    }
+
+    public FractalMapView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public FractalMapView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+}
@@ -5,44 +5,178 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.AsyncTask;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 
-import java.util.Arrays;
+import com.teinvdlugt.fractals.engine.BufferPool;
+import com.teinvdlugt.fractals.engine.ColorScheme;
+import com.teinvdlugt.fractals.engine.DeepViewport;
+import com.teinvdlugt.fractals.engine.DiskBlockStore;
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.IterationCache;
+import com.teinvdlugt.fractals.engine.JuliaPreview;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.RenderStats;
+import com.teinvdlugt.fractals.engine.TileRenderer;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Locale;
 
 public class FractalView extends View {
 
-    public static final int MANDELBROT_SET = 0;
-    public static final int TRICORN = 1;
-    public static final int BURNING_SHIP = 2;
-    public static final int MULTIBROT_3 = 3;
-    public static final int MULTIBROT_4 = 4;
+    public static final int MANDELBROT_SET = FractalEngine.MANDELBROT_SET;
+    public static final int TRICORN = FractalEngine.TRICORN;
+    public static final int BURNING_SHIP = FractalEngine.BURNING_SHIP;
+    public static final int MULTIBROT_3 = FractalEngine.MULTIBROT_3;
+    public static final int MULTIBROT_4 = FractalEngine.MULTIBROT_4;
+    public static final int MULTIBROT = FractalEngine.MULTIBROT;
+
+    /**
+     * The memory budget of the iteration cache; a 540 x 540 frame needs about 1.6 MB.
+     */
+    private static final long ITERATION_CACHE_BYTES = 16 * 1024 * 1024;
+    /**
+     * The size of the file in the cache directory that keeps the iteration counts between
+     * launches; it holds about 8000 blocks of 64 x 64 points.
+     */
+    private static final long DISK_CACHE_BYTES = 64 * 1024 * 1024;
+    private static final String DISK_CACHE_FILE = "iterations.cache";
+    /**
+     * The number of bitmaps and of buffers of each type that are kept for the next frames.
+     * A render needs one new frame bitmap (the old one is kept until it's finished), and
+     * an iteration count and a color buffer.
+     */
+    private static final int POOLED_BITMAPS = 2, POOLED_BUFFERS = 3;
+    /**
+     * How long the fingers have to rest during a pinch or pan before the new viewport is rendered, in ms.
+     */
+    private static final long GESTURE_RENDER_DELAY = 150;
 
     protected double startReal = -2, startImg = 2, rangeReal = 4, rangeImg = 4, escapeValue = 2;
     protected int widthResolution = 540, heightResolution = 540, precision = 400, updateRows = 10;
     private double backupStartReal = -2, backupStartImg = 2, backupRangeReal = 4, backupRangeImg = 4, backupEscapeValue = 2;
+    /**
+     * startReal and startImg with enough precision to zoom in further than doubles can.
+     * They are kept up to date together with the doubles.
+     */
+    protected BigDecimal preciseStartReal = BigDecimal.valueOf(-2), preciseStartImg = BigDecimal.valueOf(2);
+    private BigDecimal backupPreciseStartReal = preciseStartReal, backupPreciseStartImg = preciseStartImg;
     private int backupWidthResolution = 540, backupHeightResolution = 540, backupPrecision = 400, backupUpdateRows = 10;
     private int currentFractal = 0;
+    private double exponent = 2;
+    private boolean julia = false;
+    private double juliaReal, juliaImg;
+    private boolean interiorDetection = true;
+    private int renderMode = RenderParams.MODE_BRUTE_FORCE;
+    private boolean progressive = true;
+    private boolean smooth = false;
+    private boolean distanceEstimation = false;
+    private FractalEngine.OnPassFinishedListener onPassFinishedListener;
     private boolean useColor = true;
     private double maxColorIterations = 400d;
     private double colorDistribution = 30;
 
     private int physicalWidth, physicalHeight;
+    /**
+     * The frame at the render resolution, which is scaled to the size of the view while it is
+     * drawn. Replaced on the UI thread only.
+     */
     protected Bitmap bitmap;
-    protected Bitmap scaledBitmap;
+    private final Matrix frameMatrix = new Matrix();
+    /**
+     * The pinch and pan since the frame was rendered, in device pixels. The frame is drawn
+     * through it until the render of the new viewport starts.
+     */
+    private final Matrix gestureMatrix = new Matrix();
+    /**
+     * Where the last frame goes in the next one, in the pixels of both, or null to stretch it
+     * over the whole next frame.
+     */
+    private Matrix backupTransform;
+    private ScaleGestureDetector scaleGestureDetector;
+    private float gestureFocusX, gestureFocusY;
+    private final Runnable gestureRender = new Runnable() {
+        @Override
+        public void run() {
+            renderGesture();
+        }
+    };
+    private final BitmapPool bitmapPool = new BitmapPool(POOLED_BITMAPS);
+    private final BufferPool bufferPool = new BufferPool(POOLED_BUFFERS);
+    /**
+     * The number of bitmaps and buffers that the last finished render had to allocate.
+     */
+    private long frameAllocations;
     private CalculatingTask calculatingTask;
+    private RecoloringTask recoloringTask;
+    /**
+     * The iteration counts of the last finished frame, so that it can be recolored
+     * without calculating it again.
+     */
+    private int[] frameIterations;
+    /**
+     * The continuous iteration counts of the last finished frame, or null if it wasn't rendered smooth.
+     */
+    private float[] frameSmooth;
+    /**
+     * The distances to the boundary of the last finished frame, or null if it wasn't rendered with them.
+     */
+    private float[] frameDistances;
+    private int frameWidth, frameHeight, framePrecision;
+
+    private final JuliaPreview juliaPreview = new JuliaPreview();
+    /**
+     * The thumbnail of the Julia set of the last tapped point, shown in the top right
+     * corner. Tapping it switches to that Julia set.
+     */
+    private Bitmap juliaPreviewBitmap;
+    private double juliaPreviewReal, juliaPreviewImg;
+    private final RectF juliaPreviewRect = new RectF();
+    private final IterationCache iterationCache = new IterationCache(ITERATION_CACHE_BYTES);
+    private boolean diskCacheOpened;
+    /**
+     * The stats of the last finished render, or null.
+     */
+    private RenderStats renderStats;
+    private boolean showStats;
 
     protected Paint axisPaint;
     protected Paint zoomPaint;
+    protected Paint statsPaint, statsBackgroundPaint;
 
     private class CalculatingTask extends AsyncTask<Void, Void, Void> {
         double finalStartReal = -1, finalStartImg = -1, finalRangeReal = -1, finalRangeImg = -1, finalEscapeValue = -1;
         int finalWidthResolution = -1, finalHeightResolution = -1, finalPrecision = -1, finalUpdateRows = -1;
-        Bitmap backupBitmap;
+        BigDecimal finalPreciseStartReal, finalPreciseStartImg;
+        Viewport viewport;
+        RenderParams renderParams;
+        ColorScheme colorScheme;
+        FractalEngine engine;
+        int[] iterations;
+        float[] smoothIterations;
+        float[] distances;
+        /**
+         * The bitmap this task renders into, and the one that was shown before it.
+         */
+        Bitmap frame, backupBitmap;
         boolean restoreBackup = true;
+        /**
+         * The region of the frame that changed since the last progress update.
+         */
+        final Rect dirty = new Rect();
+        final Rect dirtyCopy = new Rect();
+        long allocationsBefore;
 
         OnCancelledListener onCancelledListener;
 
@@ -58,209 +192,195 @@ public class FractalView extends View {
             finalHeightResolution = heightResolution;
             finalPrecision = precision;
             finalUpdateRows = updateRows;
+            finalPreciseStartReal = preciseStartReal;
+            finalPreciseStartImg = preciseStartImg;
+
+            viewport = new Viewport(finalStartReal, finalStartImg, finalRangeReal, finalRangeImg,
+                    finalWidthResolution, finalHeightResolution);
+            renderParams = createRenderParams();
+            colorScheme = createColorScheme();
+            engine = new FractalEngine();
+            engine.setIterationCache(iterationCache);
+
+            // The old frame stays around to fill in the pixels that haven't been calculated yet,
+            // and to go back to when the render is cancelled
+            allocationsBefore = getAllocations();
+            backupBitmap = bitmap;
+            frame = bitmapPool.obtain(finalWidthResolution, finalHeightResolution, Bitmap.Config.RGB_565);
+            // Filled in here, so that the old contents of the pooled bitmap are never drawn
+            long scaleStart = System.nanoTime();
+            if (backupBitmap == null || backupTransform != null) frame.eraseColor(Color.BLACK);
+            if (backupBitmap != null && backupTransform != null) {
+                new Canvas(frame).drawBitmap(backupBitmap, backupTransform, null);
+            } else if (backupBitmap != null) {
+                new Canvas(frame).drawBitmap(backupBitmap, null,
+                        new Rect(0, 0, finalWidthResolution, finalHeightResolution), null);
+            }
+            backupTransform = null;
+            engine.getStats().addScaleNanos(System.nanoTime() - scaleStart);
+            bitmap = frame;
         }
 
         @Override
         protected Void doInBackground(Void... params) {
-            if (bitmap != null) {
-                backupBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight());
-                if (bitmap.getWidth() != widthResolution || bitmap.getHeight() != heightResolution) {
-                    bitmap = Bitmap.createScaledBitmap(bitmap, finalWidthResolution, finalHeightResolution, false);
-                }
-            } else {
-                bitmap = Bitmap.createBitmap(finalWidthResolution, finalHeightResolution, Bitmap.Config.RGB_565);
+            openDiskCache();
+            int pixels = finalWidthResolution * finalHeightResolution;
+            iterations = bufferPool.obtainInts(pixels);
+            smoothIterations = smooth ? bufferPool.obtainFloats(pixels) : null;
+            distances = distanceEstimation ? bufferPool.obtainFloats(pixels) : null;
+            final int[] colors = bufferPool.obtainInts(pixels);
+            try {
+                render(colors);
+            } finally {
+                bufferPool.release(colors);
             }
-            int[] progressLine = new int[finalWidthResolution];
-            Arrays.fill(progressLine, Color.RED);
-
-            int[] colors = new int[finalWidthResolution * finalUpdateRows];
-            for (int y = 0; y < finalHeightResolution; y++) {
-                if (isCancelled()) return null;
-                for (int x = 0; x < finalWidthResolution; x++) {
-                    double cReal = absoluteRealValue(x);
-                    double cImg = absoluteImaginaryValue(y);
-                    double zReal = 0, zImg = 0;
-
-                    int iterations = 0;
-                    switch (currentFractal) {
-                        case MANDELBROT_SET:
-                            while (zReal * zReal + zImg * zImg <= finalEscapeValue * finalEscapeValue && iterations < finalPrecision) {
-                                double zRealNew = zReal * zReal - zImg * zImg + cReal;
-                                zImg = 2 * zReal * zImg + cImg;
-                                zReal = zRealNew;
-                                iterations++;
-                            }
-                            break;
-                        case BURNING_SHIP:
-                            while (zReal * zReal + zImg * zImg <= finalEscapeValue * finalEscapeValue && iterations < finalPrecision) {
-                                double zRealNew = zReal * zReal - zImg * zImg + cReal;
-                                zImg = Math.abs(2 * zReal * zImg) + cImg;
-                                zReal = zRealNew;
-                                iterations++;
-                            }
-                            break;
-                        case TRICORN:
-                            while (zReal * zReal + zImg * zImg <= finalEscapeValue * finalEscapeValue && iterations < finalPrecision) {
-                                double zRealNew = zReal * zReal - zImg * zImg + cReal;
-                                zImg = 2 * zReal * -zImg + cImg;
-                                zReal = zRealNew;
-                                iterations++;
-                            }
-                            break;
-                        case MULTIBROT_3:
-                            while (zReal * zReal + zImg * zImg <= finalEscapeValue * finalEscapeValue && iterations < finalPrecision) {
-                                double zRealNew = zReal * zReal * zReal - zImg * zImg * zReal - 2 * zImg * zImg * zReal + cReal;
-                                zImg = zReal * zReal * zImg - zImg * zImg * zImg + 2 * zReal * zReal * zImg + cImg;
-                                zReal = zRealNew;
-                                iterations++;
-                            }
-                            break;
-                        case MULTIBROT_4:
-                            while (zReal * zReal + zImg * zImg <= finalEscapeValue * finalEscapeValue && iterations < finalPrecision) {
-                                // (zReal*zReal*zReal - zImg*zImg*zReal - 2*zImg*zImg*zReal + i*zReal*zReal*zImg - i*zImg*zImg*zImg + i*2*zReal*zReal*zImg)*
-                                //                                      (zReal + i*zImg) =
-                                // zReal^4 - zImg^2*zReal^2 - 2*zImg^2*zReal^2 - zReal^2*zImg^2 + zImg^4 - 2*zReal^2*zImg^2
-                                //                          + i*zImg*zReal^3 - i*zImg^3*zReal - i*2*zImg^3*zReal + i*zReal^3*zImg - i*zImg^3*zReal + i*2*zReal^3*zImg =
-                                // zReal^2*zImg^2*(-1 - 2 - 1 - 2) + zReal^4 + zImg^4 +
-                                //                          + i*(zImg^3*zReal*-4 + zImg*zReal^3*4)
-
-                                double zRealNew = -6 * zReal * zReal * zImg * zImg + zReal * zReal * zReal * zReal + zImg * zImg * zImg * zImg + cReal;
-                                zImg = -4 * zImg * zImg * zImg * zReal + 4 * zReal * zReal * zReal * zImg + cImg;
-                                zReal = zRealNew;
-                                iterations++;
-                            }
-                            break;
-                    }
+            return null;
+        }
 
-                    colors[(y % finalUpdateRows) * finalWidthResolution + x] =
-                            iterations == finalPrecision ? Color.BLACK :
-                                    useColor ? resolveColor(iterations) : Color.WHITE;
+        private void render(final int[] colors) {
+            TileRenderer.TileCalculator colorer = new TileRenderer.TileCalculator() {
+                @Override
+                public void calculateTile(int left, int top, int width, int height) {
+                    if (smoothIterations != null) {
+                        colorScheme.color(smoothIterations, colors, finalPrecision, finalWidthResolution, left, top, width, height);
+                    } else {
+                        colorScheme.color(iterations, colors, finalPrecision, finalWidthResolution, left, top, width, height);
+                    }
+                    if (distances != null) {
+                        colorScheme.shade(distances, colors, finalPrecision, finalWidthResolution, left, top, width, height);
+                    }
                 }
+            };
+            TileRenderer.OnTileFinishedListener listener = new TileRenderer.OnTileFinishedListener() {
+                int pixelsSinceUpdate = 0;
+
+                @Override
+                public void onTileFinished(int left, int top, int width, int height) {
+                    if (isCancelled()) {
+                        engine.cancel();
+                        return;
+                    }
 
-                if (isCancelled()) return null;
-
-                if ((y + 1) % finalUpdateRows == 0) {
-                    bitmap.setPixels(colors, 0, finalWidthResolution, 0, y - finalUpdateRows + 1, finalWidthResolution, finalUpdateRows);
-                    if (y + 1 != bitmap.getHeight()) {
-                        bitmap.setPixels(progressLine, 0, finalWidthResolution, 0, y + 1, finalWidthResolution, 1);
+                    long uploadStart = System.nanoTime();
+                    frame.setPixels(colors, top * finalWidthResolution + left, finalWidthResolution, left, top, width, height);
+                    engine.getStats().addUploadNanos(System.nanoTime() - uploadStart);
+                    synchronized (dirty) {
+                        dirty.union(left, top, left + width, top + height);
                     }
 
-                    scaledBitmap = Bitmap.createScaledBitmap(bitmap, physicalWidth, physicalHeight, false);
-                    publishProgress();
-                } else if (y == finalHeightResolution - 1) {
-                    bitmap.setPixels(colors, 0, finalWidthResolution, 0, finalHeightResolution - finalHeightResolution % finalUpdateRows,
-                            finalWidthResolution, finalHeightResolution % finalUpdateRows);
-                    scaledBitmap = Bitmap.createScaledBitmap(bitmap, physicalWidth, physicalHeight, false);
-                    publishProgress();
+                    // Publish about as often as the row-by-row calculation did
+                    pixelsSinceUpdate += width * height;
+                    if (pixelsSinceUpdate >= finalUpdateRows * finalWidthResolution) {
+                        pixelsSinceUpdate = 0;
+                        publishProgress();
+                    }
                 }
-            }
-
-            scaledBitmap = Bitmap.createScaledBitmap(bitmap, physicalWidth, physicalHeight, false);
-
-            return null;
-        }
-
-        protected int resolveColor(int iterations) {
-            double value = 1 - Math.pow(1 - iterations / maxColorIterations, colorDistribution);
-            //double value = Math.pow(Math.pow(iterations, pow) / 0xffffff, 1. / pow);
-            //double value = Math.pow((double) iterations, pow) / 0xffffff;
-
-            //Log.d("colorvalue", value + "");
-
-            if (value >= 1.) return Color.WHITE;
-
-            // 0.00 blue
-            // 0.50 red
-            // 1.00 green
-
-            double valuePerUnitColor = .5 / 255;
-
-            // 0.00 => 255 blue
-            // 0.50 => 0   blue
-            int blue = (int) Math.max(255 - value / valuePerUnitColor, 0);
-
-            // 0.00 => 0   red
-            // 0.50 => 255 red
-            // 1.00 => 0   red
-            int red = (int) Math.max(255 - Math.abs(.5 - value) / valuePerUnitColor, 0);
-            int green = (int) Math.max(255 - (1. - value) / valuePerUnitColor, 0);
-
-            return Color.rgb(red, green, blue);
-
-            /*int color = (int) Math.pow(iterations, pow);
-            if (color > 0xffffff) return Color.WHITE;
-
-            String hexStr = "#" + Integer.toHexString(color);
-            while (hexStr.length() < 7) hexStr += "0";
-
-            return Color.parseColor(hexStr);*/
-
-            /*// white --> green --> red --> blue
-            double value = Math.pow(2, iterations / precision);
-            //double value = Math.pow(-Math.log(iterations/precision), -1);
-            //value = 1.0 / (value * value);
-            // low value => blue
-            // high value => white
-            // 1.0 (highest) value => black
-            if (value >= 1.0) return Color.BLACK;
-
-            // 0.00 blue
-            // 0.33 red
-            // 0.67 green
-            // 0.99 white
-
-            // 0.00 => 255 blue
-            // 0.33 => 0   blue
-            int blue = (int) Math.max((1.0 - value / 0.33) * 255, 0);
-
-            // 0.00 => 0   red
-            // 0.33 => 255 red
-            // 0.67 => 0   red
-            int red = (int) Math.max((1.0 - Math.abs(value - 0.33) / 0.33) * 255, 0);
-            int green = (int) Math.max((1.0 - Math.abs(value - 0.67) / 0.33) * 255, 0);
-
-            // 0.67 => 0.0 white factor
-            // 1.00 => 1.0 white factor
-            double whiteFactor = Math.max((1.0 - Math.abs(value - 1.0) / 0.33), 0);
+            };
+
+            final FractalEngine.OnPassFinishedListener passListener = onPassFinishedListener;
+            engine.setOnPassFinishedListener(new FractalEngine.OnPassFinishedListener() {
+                @Override
+                public void onPassFinished(int step, long elapsedNanos) {
+                    if (step > 1) {
+                        // Show the preview straight away
+                        publishProgress();
+                    }
+                    if (passListener != null) passListener.onPassFinished(step, elapsedNanos);
+                }
+            });
 
-            // Whitify:
-            // Only green has to be whitified because red and white can never mix.
-            green += (255 - blue) * whiteFactor;
-            red += (255 - red) * whiteFactor;
-            blue += (255 - blue) * whiteFactor;
+            if (!colorScheme.preparePalette(finalPrecision, engine.getRenderer())) return;
 
-            Log.d("colors", "value: " + value);
+            boolean finished;
+            if (FractalEngine.needsPerturbation(finalRangeReal, finalWidthResolution)) {
+                DeepViewport deepViewport = new DeepViewport(finalPreciseStartReal, finalPreciseStartImg,
+                        finalRangeReal, finalRangeImg, finalWidthResolution, finalHeightResolution);
+                finished = engine.render(deepViewport, renderParams, iterations, smoothIterations, distances,
+                        colorer, listener);
+            } else {
+                finished = engine.render(viewport, renderParams, iterations, smoothIterations, distances,
+                        colorer, listener);
+            }
 
-            return Color.rgb(red, green, blue);*/
+            if (finished && !isCancelled()) {
+                synchronized (dirty) {
+                    dirty.set(0, 0, finalWidthResolution, finalHeightResolution);
+                }
+            }
+            // Keep the new counts for the next launch
+            iterationCache.flush();
         }
 
         @Override
         protected void onProgressUpdate(Void... values) {
-            invalidate();
+            drawDirtyRegion();
+        }
+
+        /**
+         * Redraws the part of the view that shows the pixels that changed since the last time.
+         */
+        void drawDirtyRegion() {
+            synchronized (dirty) {
+                dirtyCopy.set(dirty);
+                dirty.setEmpty();
+            }
+            // A newer task may already have taken over
+            if (bitmap == frame && !dirtyCopy.isEmpty()) {
+                invalidateFrameRegion(dirtyCopy);
+            }
         }
 
         @Override
         protected void onPostExecute(Void aVoid) {
+            drawDirtyRegion();
+            // If a newer task took over, it has this frame as its backup
+            bitmapPool.release(backupBitmap);
             // Change the backup values to the new values which have just been calculated with.
             updateBackup();
 
+            bufferPool.release(frameIterations);
+            bufferPool.release(frameSmooth);
+            bufferPool.release(frameDistances);
+            frameIterations = iterations;
+            frameSmooth = smoothIterations;
+            frameDistances = distances;
+            frameWidth = finalWidthResolution;
+            frameHeight = finalHeightResolution;
+            framePrecision = finalPrecision;
+            if (colorScheme.isUseColor() != useColor || colorScheme.getMaxColorIterations() != maxColorIterations
+                    || colorScheme.getColorDistribution() != colorDistribution) {
+                // The colors were changed during the calculation
+                recolor();
+            }
+
+            frameAllocations = getAllocations() - allocationsBefore;
+            renderStats = engine.getStats();
+
             invalidate();
             requestLayout();
         }
 
         @Override
         protected void onCancelled() {
+            bufferPool.release(iterations);
+            bufferPool.release(smoothIterations);
+            bufferPool.release(distances);
             if (restoreBackup) {
                 // The backupValues don't (all) have to 'restore' anything. They are just there when you need them.
-                // However, the bitmap (and scaledBitmap) have to be restored by the backupBitmap because onDraw only
-                // draws scaledBitmap to the canvas and not backupBitmap.
+                // However, the bitmap has to be restored by the backupBitmap because onDraw only
+                // draws bitmap to the canvas and not backupBitmap.
                 // Also the backup of the startReal/Img and rangeReal/Img have to be restored.
-                if (backupBitmap != null) {
-                    bitmap = Bitmap.createBitmap(backupBitmap, 0, 0, backupBitmap.getWidth(), backupBitmap.getHeight());
-                    scaledBitmap = Bitmap.createScaledBitmap(backupBitmap, physicalWidth, physicalHeight, false);
+                if (bitmap != frame) {
+                    // A newer task already took over, with this frame as its backup
+                    bitmapPool.release(backupBitmap);
+                } else if (backupBitmap != null) {
+                    bitmapPool.release(frame);
+                    bitmap = backupBitmap;
 
                     startReal = backupStartReal;
                     startImg = backupStartImg;
+                    preciseStartReal = backupPreciseStartReal;
+                    preciseStartImg = backupPreciseStartImg;
                     rangeReal = backupRangeReal;
                     rangeImg = backupRangeImg;
 
@@ -269,6 +389,7 @@ public class FractalView extends View {
                 }
             } else {
                 // Act as if the calculation is properly finished.
+                bitmapPool.release(backupBitmap);
                 updateBackup();
             }
 
@@ -281,6 +402,8 @@ public class FractalView extends View {
         private void updateBackup() {
             backupStartReal = finalStartReal;
             backupStartImg = finalStartImg;
+            backupPreciseStartReal = finalPreciseStartReal;
+            backupPreciseStartImg = finalPreciseStartImg;
             backupRangeReal = finalRangeReal;
             backupRangeImg = finalRangeImg;
             backupEscapeValue = finalEscapeValue;
@@ -290,26 +413,6 @@ public class FractalView extends View {
             backupUpdateRows = finalUpdateRows;
         }
 
-        /**
-         * The real value in the complex field represented by a column of virtual pixels.
-         *
-         * @param column The column of the 'virtual' pixels (defined in {@code widthResolution})
-         * @return The real value in the complex field
-         */
-        protected double absoluteRealValue(int column) {
-            return finalStartReal + finalRangeReal / finalWidthResolution * column;
-        }
-
-        /**
-         * The imaginary value in the complex field represented by a row of virtual pixels.
-         *
-         * @param row The row of the 'virtual' pixels (defined in {@code heightResolution})
-         * @return The imaginary value in the complex field
-         */
-        protected double absoluteImaginaryValue(int row) {
-            return finalStartImg - finalRangeImg / finalHeightResolution * row;
-        }
-
         public void setRestoreBackup(boolean restoreBackup) {
             this.restoreBackup = restoreBackup;
         }
@@ -328,7 +431,150 @@ public class FractalView extends View {
         void onCancelled();
     }
 
+    /**
+     * Colors the last frame again with a new color scheme.
+     */
+    private class RecoloringTask extends AsyncTask<Void, Void, Boolean> {
+        int[] iterations;
+        float[] smoothIterations;
+        float[] distances;
+        int width, height, precision;
+        ColorScheme colorScheme;
+        Bitmap newBitmap;
+
+        @Override
+        protected void onPreExecute() {
+            iterations = frameIterations;
+            smoothIterations = smooth ? frameSmooth : null;
+            distances = distanceEstimation ? frameDistances : null;
+            width = frameWidth;
+            height = frameHeight;
+            precision = framePrecision;
+            colorScheme = createColorScheme();
+            newBitmap = bitmapPool.obtain(width, height, Bitmap.Config.RGB_565);
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            int[] colors = bufferPool.obtainInts(width * height);
+            try {
+                FractalEngine engine = new FractalEngine();
+                boolean finished = smoothIterations != null
+                        ? engine.color(smoothIterations, colors, width, height, precision, colorScheme)
+                        : engine.color(iterations, colors, width, height, precision, colorScheme);
+                if (finished && distances != null) {
+                    finished = engine.shade(distances, colors, width, height, precision, colorScheme);
+                }
+                if (!finished || isCancelled()) return false;
+                newBitmap.setPixels(colors, 0, width, 0, 0, width, height);
+                return true;
+            } finally {
+                bufferPool.release(colors);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean finished) {
+            if (finished) {
+                bitmapPool.release(bitmap);
+                bitmap = newBitmap;
+                invalidate();
+            } else {
+                bitmapPool.release(newBitmap);
+            }
+        }
+
+        @Override
+        protected void onCancelled() {
+            bitmapPool.release(newBitmap);
+        }
+    }
+
+    /**
+     * Invalidates the part of the view that shows a region of {@code bitmap}, rounded out to
+     * whole device pixels. A progress update then costs as much as the pixels that changed,
+     * instead of scaling the whole frame again.
+     *
+     * @param region The region of the frame in its own pixels
+     */
+    private void invalidateFrameRegion(Rect region) {
+        int width = bitmap.getWidth(), height = bitmap.getHeight();
+        invalidate(region.left * physicalWidth / width, region.top * physicalHeight / height,
+                (region.right * physicalWidth + width - 1) / width,
+                (region.bottom * physicalHeight + height - 1) / height);
+    }
+
+    /**
+     * Opens the file that keeps the iteration counts between launches, the first time a
+     * render needs it. Called on the background thread, because it reads the index of the file.
+     */
+    private synchronized void openDiskCache() {
+        if (diskCacheOpened) return;
+        diskCacheOpened = true;
+        try {
+            iterationCache.setDiskStore(DiskBlockStore.open(
+                    new File(getContext().getCacheDir(), DISK_CACHE_FILE), DISK_CACHE_BYTES));
+        } catch (IOException ignored) {
+            // Then the counts are only kept in memory
+        }
+    }
+
+    /**
+     * The number of bitmaps and buffers that had to be allocated since the view was created.
+     */
+    private long getAllocations() {
+        return bitmapPool.getAllocations() + bufferPool.getAllocations();
+    }
+
+    /**
+     * The number of bitmaps and pixel buffers that the last finished render allocated instead
+     * of reusing them. Once the resolution and the size of the view stay the same, it is 0.
+     */
+    public long getFrameAllocations() {
+        return frameAllocations;
+    }
+
+    /**
+     * The params of the next render, with the current settings.
+     */
+    public RenderParams createRenderParams() {
+        RenderParams params = new RenderParams(currentFractal, precision, escapeValue);
+        params.setExponent(exponent);
+        if (julia) params.setJulia(juliaReal, juliaImg);
+        params.setInteriorDetection(interiorDetection);
+        params.setRenderMode(renderMode);
+        params.setProgressive(progressive);
+        return params;
+    }
+
+    public ColorScheme createColorScheme() {
+        return new ColorScheme(useColor, maxColorIterations, colorDistribution);
+    }
+
+    /**
+     * The viewport that is shown, at another resolution with the same aspect ratio, e.g. to export it.
+     */
+    public DeepViewport getViewport(int width) {
+        int height = (int) Math.max(1, Math.round(width * rangeImg / rangeReal));
+        return new DeepViewport(preciseStartReal, preciseStartImg, rangeReal, rangeImg, width, height);
+    }
+
+    /**
+     * Applies the current color settings to the frame on the screen without calculating
+     * it again. If a frame is being calculated, it is recolored when it's finished.
+     */
+    public void recolor() {
+        if (calculatingTask != null
+                && calculatingTask.getStatus() == AsyncTask.Status.RUNNING)
+            return;
+        if (frameIterations == null || bitmap == null) return;
+        if (recoloringTask != null) recoloringTask.cancel(true);
+        recoloringTask = new RecoloringTask();
+        recoloringTask.execute();
+    }
+
     public void recalculate() {
+        if (recoloringTask != null) recoloringTask.cancel(true);
         if (calculatingTask != null
                 && calculatingTask.getStatus() == AsyncTask.Status.RUNNING)
             calculatingTask.cancel(true);
@@ -367,8 +613,10 @@ public class FractalView extends View {
     private void applyDimensions(int w, int h, int oldw, int oldh) {
         double rangeRealDiff = (w - oldw) / (double) oldw * rangeReal;
         double rangeImgDiff = (h - oldh) / (double) oldh * rangeImg;
-        startReal = startReal - rangeRealDiff / 2.0;
-        startImg = startImg + rangeImgDiff / 2.0;
+        preciseStartReal = preciseStartReal.subtract(new BigDecimal(rangeRealDiff / 2.0));
+        preciseStartImg = preciseStartImg.add(new BigDecimal(rangeImgDiff / 2.0));
+        startReal = preciseStartReal.doubleValue();
+        startImg = preciseStartImg.doubleValue();
         rangeReal = rangeReal + rangeRealDiff;
         rangeImg = rangeImg + rangeImgDiff;
         widthResolution = (int) ((double) w / oldw * widthResolution);
@@ -377,16 +625,29 @@ public class FractalView extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        // Draw bitmap
-        if (scaledBitmap != null) {
-            canvas.drawBitmap(scaledBitmap, 0f, 0f, null);
+        // Draw bitmap, scaled up without filtering like Bitmap.createScaledBitmap
+        if (bitmap != null) {
+            frameMatrix.setScale((float) physicalWidth / bitmap.getWidth(), (float) physicalHeight / bitmap.getHeight());
+            if (!gestureMatrix.isIdentity()) {
+                // Pinched or panned: clear what the frame doesn't cover any more
+                canvas.drawColor(Color.BLACK);
+                frameMatrix.postConcat(gestureMatrix);
+            }
+            long scaleStart = System.nanoTime();
+            canvas.drawBitmap(bitmap, frameMatrix, null);
+            if (calculatingTask != null && calculatingTask.getStatus() == AsyncTask.Status.RUNNING) {
+                calculatingTask.engine.getStats().addScaleNanos(System.nanoTime() - scaleStart);
+            }
         }
 
         // Draw axes
+        canvas.save();
+        canvas.concat(gestureMatrix);
         float real0 = (float) (canvas.getWidth() * (-backupStartReal / backupRangeReal));
         float img0 = (float) (canvas.getHeight() * (backupStartImg / backupRangeImg));
         canvas.drawLine(real0, 0, real0, canvas.getHeight(), axisPaint);
         canvas.drawLine(0, img0, canvas.getWidth(), img0, axisPaint);
+        canvas.restore();
 
         // Draw zoom indication
         if (zoomStartX != -1 && zoomStartY != -1 && zoomEndX != -1 && zoomEndY != -1) {
@@ -396,6 +657,47 @@ public class FractalView extends View {
             float bottom = Math.max(zoomStartY, zoomEndY);
             canvas.drawRect(left, top, right, bottom, zoomPaint);
         }
+
+        // Draw Julia preview
+        if (juliaPreviewBitmap != null) {
+            float size = Math.min(canvas.getWidth(), canvas.getHeight()) / 4f;
+            juliaPreviewRect.set(canvas.getWidth() - size, 0, canvas.getWidth(), size);
+            canvas.drawBitmap(juliaPreviewBitmap, null, juliaPreviewRect, null);
+        }
+
+        if (showStats && renderStats != null) drawStats(canvas, renderStats);
+    }
+
+    /**
+     * Draws the stats of a render in the top left corner.
+     */
+    private void drawStats(Canvas canvas, RenderStats stats) {
+        long classified = stats.getEscapedPixels() + stats.getInteriorPixels();
+        String[] lines = {
+                String.format(Locale.US, "%d x %d, %s, %d threads", frameWidth, frameHeight,
+                        FractalEngine.arithmeticName(stats.getArithmetic()), stats.getThreads()),
+                String.format(Locale.US, "%.1f ms, %.2f Mpixels/s", stats.getWallNanos() / 1e6,
+                        stats.getPixelsPerSecond() / 1e6),
+                String.format(Locale.US, "iterate %.1f, color %.1f ms", stats.getIterateNanos() / 1e6,
+                        stats.getColorNanos() / 1e6),
+                String.format(Locale.US, "upload %.1f, scale %.1f ms", stats.getUploadNanos() / 1e6,
+                        stats.getScaleNanos() / 1e6),
+                String.format(Locale.US, "%,d iterations", stats.getIterations()),
+                String.format(Locale.US, "%.1f%% escaped, %.1f%% interior",
+                        classified == 0 ? 0 : stats.getEscapedPixels() * 100. / classified,
+                        classified == 0 ? 0 : stats.getInteriorPixels() * 100. / classified)};
+
+        float textSize = Math.min(canvas.getWidth(), canvas.getHeight()) / 30f;
+        statsPaint.setTextSize(textSize);
+        float width = 0;
+        for (String line : lines) {
+            width = Math.max(width, statsPaint.measureText(line));
+        }
+        float lineHeight = textSize * 1.25f;
+        canvas.drawRect(0, 0, width + textSize, lines.length * lineHeight + textSize / 2, statsBackgroundPaint);
+        for (int i = 0; i < lines.length; i++) {
+            canvas.drawText(lines[i], textSize / 2, (i + 1) * lineHeight, statsPaint);
+        }
     }
 
     protected float zoomStartX = -1, zoomStartY = -1;
@@ -403,6 +705,13 @@ public class FractalView extends View {
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        scaleGestureDetector.onTouchEvent(event);
+        if (scaleGestureDetector.isInProgress() || event.getPointerCount() > 1) {
+            // Two fingers pinch and pan instead of drawing a zoom rectangle
+            zoomStartX = zoomStartY = zoomEndX = zoomEndY = -1;
+            return true;
+        }
+
         if (event.getAction() == MotionEvent.ACTION_DOWN) {
             zoomStartX = event.getX();
             zoomStartY = event.getY();
@@ -421,6 +730,7 @@ public class FractalView extends View {
         } else if (event.getAction() == MotionEvent.ACTION_UP) {
             if (zoomStartX == -1 || zoomStartY == -1
                     || checkTap(event)) {
+                if (zoomStartX != -1 && zoomStartY != -1) onTap(event.getX(), event.getY());
                 zoomStartX = zoomStartY = zoomEndX = zoomEndY = -1;
                 return false;
             }
@@ -430,6 +740,41 @@ public class FractalView extends View {
         return super.onTouchEvent(event);
     }
 
+    /**
+     * Tapping the fractal shows the Julia set of the tapped point in the corner, and
+     * tapping that preview switches to the Julia set.
+     */
+    private void onTap(float x, float y) {
+        if (juliaPreviewBitmap != null && juliaPreviewRect.contains(x, y)) {
+            julia = true;
+            juliaReal = juliaPreviewReal;
+            juliaImg = juliaPreviewImg;
+            juliaPreviewBitmap = null;
+            restoreZoom();
+        } else if (!julia) {
+            // Snap to the device pixel, so that tapping the same pixel again uses the cached thumbnail
+            showJuliaPreview(absoluteRealValue(Math.round(x)), absoluteImaginaryValue(Math.round(y)));
+        }
+    }
+
+    /**
+     * Renders the thumbnail of the Julia set of {@code real + img * i} on the UI thread.
+     */
+    public void showJuliaPreview(double real, double img) {
+        RenderParams params = new RenderParams(currentFractal, precision, escapeValue);
+        params.setExponent(exponent);
+        int[] iterations = juliaPreview.render(params, real, img);
+
+        int size = juliaPreview.getSize(), previewPrecision = juliaPreview.getPrecision(params);
+        int[] colors = new int[size * size];
+        new ColorScheme(useColor, maxColorIterations * previewPrecision / precision, colorDistribution)
+                .color(iterations, colors, previewPrecision, size, 0, 0, size, size);
+        juliaPreviewBitmap = Bitmap.createBitmap(colors, size, size, Bitmap.Config.RGB_565);
+        juliaPreviewReal = real;
+        juliaPreviewImg = img;
+        invalidate();
+    }
+
     private boolean checkTap(MotionEvent e) {
         boolean xNotChanged = Math.abs(e.getX() - zoomStartX) <= 2;
         boolean yNotChanged = Math.abs(e.getY() - zoomStartY) <= 2;
@@ -440,10 +785,13 @@ public class FractalView extends View {
         OnCancelledListener listener = new OnCancelledListener() {
             @Override
             public void onCancelled() {
-                double startReal = absoluteRealValue(zoomStartX);
-                double endReal = absoluteRealValue(zoomEndX);
-                double startImg = absoluteImaginaryValue(zoomStartY);
-                double endImg = absoluteImaginaryValue(zoomEndY);
+                // Calculate with the distances to the current start, which don't lose
+                // precision when zoomed in far. They're added to preciseStartReal/Img at the end.
+                double startReal = relativeRealValue(zoomStartX);
+                double endReal = relativeRealValue(zoomEndX);
+                double startImg = relativeImaginaryValue(zoomStartY);
+                double endImg = relativeImaginaryValue(zoomEndY);
+                double newStartReal, newStartImg;
 
                 zoomStartX = zoomStartY = zoomEndX = zoomEndY = -1;
 
@@ -455,18 +803,25 @@ public class FractalView extends View {
 
                 if (bigFactor > smallFactor) {
                     // Current screen is more horizontal than zoom frame
-                    FractalView.this.startImg = Math.max(startImg, endImg);
+                    newStartImg = Math.max(startImg, endImg);
                     FractalView.this.rangeImg = yRange;
                     FractalView.this.rangeReal = bigFactor / smallFactor * xRange;
-                    FractalView.this.startReal = Math.min(startReal, endReal) - Math.abs(xRange - FractalView.this.rangeReal) / 2;
+                    newStartReal = Math.min(startReal, endReal) - Math.abs(xRange - FractalView.this.rangeReal) / 2;
                 } else {
                     // Current screen is more vertical than zoom frame
-                    FractalView.this.startReal = Math.min(startReal, endReal);
+                    newStartReal = Math.min(startReal, endReal);
                     FractalView.this.rangeReal = xRange;
                     FractalView.this.rangeImg = smallFactor / bigFactor * yRange;
-                    FractalView.this.startImg = Math.max(startImg, endImg) + Math.abs(yRange - FractalView.this.rangeImg) / 2;
+                    newStartImg = Math.max(startImg, endImg) + Math.abs(yRange - FractalView.this.rangeImg) / 2;
                 }
 
+                // Digits that are much smaller than the new pixels don't matter
+                MathContext mc = new MathContext(Math.max(20, 20 - (int) Math.log10(FractalView.this.rangeReal)));
+                preciseStartReal = backupPreciseStartReal.add(new BigDecimal(newStartReal), mc);
+                preciseStartImg = backupPreciseStartImg.add(new BigDecimal(newStartImg), mc);
+                FractalView.this.startReal = preciseStartReal.doubleValue();
+                FractalView.this.startImg = preciseStartImg.doubleValue();
+
                 recalculate();
             }
         };
@@ -482,15 +837,107 @@ public class FractalView extends View {
         }
     }
 
+    /**
+     * Stops the render that is running, and keeps what it has calculated so far as the frame
+     * that the gesture moves around. A render that was already stopped is left alone, so a
+     * gesture stops at most one render per gesture frame.
+     */
+    private void stopRenderForGesture() {
+        if (calculatingTask != null && calculatingTask.getStatus() == AsyncTask.Status.RUNNING
+                && !calculatingTask.isCancelled()) {
+            calculatingTask.setRestoreBackup(false);
+            calculatingTask.cancel(true);
+        }
+    }
+
+    /**
+     * Renders the viewport that the frame was pinched or panned to. The frame stays where the
+     * gesture put it, and is replaced tile by tile.
+     */
+    private void renderGesture() {
+        if (gestureMatrix.isIdentity()) return;
+        if (calculatingTask != null && calculatingTask.getStatus() == AsyncTask.Status.RUNNING) {
+            // Wait for the stopped render to hand over its frame and viewport
+            stopRenderForGesture();
+            calculatingTask.setOnCancelledListener(new OnCancelledListener() {
+                @Override
+                public void onCancelled() {
+                    renderGesture();
+                }
+            });
+            return;
+        }
+
+        float[] values = new float[9];
+        gestureMatrix.getValues(values);
+        float scale = values[Matrix.MSCALE_X];
+        // The top left corner of the new view, in the device pixels of the old one
+        float left = -values[Matrix.MTRANS_X] / scale, top = -values[Matrix.MTRANS_Y] / scale;
+        rangeReal = backupRangeReal / scale;
+        rangeImg = backupRangeImg / scale;
+        MathContext mc = new MathContext(Math.max(20, 20 - (int) Math.log10(rangeReal)));
+        preciseStartReal = backupPreciseStartReal.add(new BigDecimal(relativeRealValue(left)), mc);
+        preciseStartImg = backupPreciseStartImg.add(new BigDecimal(relativeImaginaryValue(top)), mc);
+        startReal = preciseStartReal.doubleValue();
+        startImg = preciseStartImg.doubleValue();
+
+        if (bitmap != null) {
+            backupTransform = new Matrix();
+            backupTransform.setScale((float) physicalWidth / bitmap.getWidth(), (float) physicalHeight / bitmap.getHeight());
+            backupTransform.postConcat(gestureMatrix);
+            backupTransform.postScale((float) widthResolution / physicalWidth, (float) heightResolution / physicalHeight);
+        }
+        gestureMatrix.reset();
+        recalculate();
+    }
+
     protected void init() {
         axisPaint = new Paint();
         zoomPaint = new Paint();
         axisPaint.setColor(Color.BLACK);
         zoomPaint.setARGB(128, 50, 50, 200);
+        statsPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        statsPaint.setColor(Color.WHITE);
+        statsBackgroundPaint = new Paint();
+        statsBackgroundPaint.setARGB(160, 0, 0, 0);
+
+        scaleGestureDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                gestureFocusX = detector.getFocusX();
+                gestureFocusY = detector.getFocusY();
+                removeCallbacks(gestureRender);
+                stopRenderForGesture();
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                // A render that started while the fingers were resting is out of date again
+                stopRenderForGesture();
+                // Move the point under the fingers along with them, then scale around it
+                gestureMatrix.postTranslate(detector.getFocusX() - gestureFocusX, detector.getFocusY() - gestureFocusY);
+                gestureMatrix.postScale(detector.getScaleFactor(), detector.getScaleFactor(),
+                        detector.getFocusX(), detector.getFocusY());
+                gestureFocusX = detector.getFocusX();
+                gestureFocusY = detector.getFocusY();
+                invalidate();
+
+                removeCallbacks(gestureRender);
+                postDelayed(gestureRender, GESTURE_RENDER_DELAY);
+                return true;
+            }
+
+            @Override
+            public void onScaleEnd(ScaleGestureDetector detector) {
+                removeCallbacks(gestureRender);
+                post(gestureRender);
+            }
+        });
     }
 
     /**
-     * The real value in the complex field represented by a device pixel in {@code scaledBitmap}.
+     * The real value in the complex field represented by a device pixel of the view.
      *
      * @param x The x position of the device pixel from which to retrieve the real value
      * @return The real value in the complex field
@@ -500,7 +947,7 @@ public class FractalView extends View {
     }
 
     /**
-     * The imaginary value in the complex field represented by a device pixel in {@code scaledBitmap}.
+     * The imaginary value in the complex field represented by a device pixel of the view.
      *
      * @param y The y position of the device pixel from which to retrieve the imaginary value
      * @return The imaginary value in the complex field
@@ -509,10 +956,32 @@ public class FractalView extends View {
         return backupStartImg - y / getHeight() * backupRangeImg;
     }
 
+    /**
+     * The distance in the complex field between the left side of the view and a device pixel.
+     *
+     * @param x The x position of the device pixel
+     * @return The difference between the real value of the device pixel and {@code backupStartReal}
+     */
+    protected double relativeRealValue(float x) {
+        return x / getWidth() * backupRangeReal;
+    }
+
+    /**
+     * The distance in the complex field between the top side of the view and a device pixel.
+     *
+     * @param y The y position of the device pixel
+     * @return The difference between the imaginary value of the device pixel and {@code backupStartImg}
+     */
+    protected double relativeImaginaryValue(float y) {
+        return -y / getHeight() * backupRangeImg;
+    }
+
     public void restoreZoom() {
         startReal = -2;
         rangeReal = rangeImg = 4;
         startImg = 2;
+        preciseStartReal = BigDecimal.valueOf(-2);
+        preciseStartImg = BigDecimal.valueOf(2);
 
         int oldSizes = Math.min(getWidth(), getHeight());
         applyDimensions(getWidth(), getHeight(), oldSizes, oldSizes);
@@ -562,6 +1031,141 @@ public class FractalView extends View {
         this.currentFractal = currentFractal;
     }
 
+    public boolean isJulia() {
+        return julia;
+    }
+
+    /**
+     * Switches between the fractal and the Julia set of the last point picked from the
+     * preview. Takes effect on the next {@link #recalculate()}.
+     */
+    public void setJulia(boolean julia) {
+        this.julia = julia;
+        if (julia) juliaPreviewBitmap = null;
+    }
+
+    /**
+     * Renders the Julia sets of c = {@code real + img * i} from now on.
+     */
+    public void setJulia(double real, double img) {
+        this.julia = true;
+        this.juliaReal = real;
+        this.juliaImg = img;
+        juliaPreviewBitmap = null;
+    }
+
+    public double getJuliaReal() {
+        return juliaReal;
+    }
+
+    public double getJuliaImg() {
+        return juliaImg;
+    }
+
+    /**
+     * Renders the Julia previews and keeps the recent ones, e.g. to read how long they take.
+     */
+    public JuliaPreview getJuliaPreview() {
+        return juliaPreview;
+    }
+
+    /**
+     * The exponent of {@link #MULTIBROT}.
+     */
+    public double getExponent() {
+        return exponent;
+    }
+
+    public void setExponent(double exponent) {
+        this.exponent = exponent;
+    }
+
+    public boolean isInteriorDetection() {
+        return interiorDetection;
+    }
+
+    public void setInteriorDetection(boolean interiorDetection) {
+        this.interiorDetection = interiorDetection;
+    }
+
+    public int getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * @param renderMode {@link RenderParams#MODE_BRUTE_FORCE} or {@link RenderParams#MODE_SUBDIVISION}
+     */
+    public void setRenderMode(int renderMode) {
+        this.renderMode = renderMode;
+    }
+
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    public boolean isSmooth() {
+        return smooth;
+    }
+
+    /**
+     * Whether to color with continuous iteration counts, without bands. Turning it on takes
+     * effect on the next {@link #recalculate()}; turning it off can be done with {@link #recolor()}.
+     */
+    public void setSmooth(boolean smooth) {
+        this.smooth = smooth;
+    }
+
+    public boolean isDistanceEstimation() {
+        return distanceEstimation;
+    }
+
+    /**
+     * Whether to estimate the distance of every pixel to the boundary of the set and draw the
+     * boundary with it, so that filaments thinner than a pixel stay visible. Like
+     * {@link #setSmooth}, turning it on takes effect on the next {@link #recalculate()}.
+     */
+    public void setDistanceEstimation(boolean distanceEstimation) {
+        this.distanceEstimation = distanceEstimation;
+    }
+
+    /**
+     * @param onPassFinishedListener Listener that is notified of the timing of every pass of a
+     *                               progressive render. It is invoked on the calculating thread.
+     */
+    public void setOnPassFinishedListener(FractalEngine.OnPassFinishedListener onPassFinishedListener) {
+        this.onPassFinishedListener = onPassFinishedListener;
+    }
+
+    /**
+     * The timings and counts of the last finished render, or null if there isn't one yet.
+     */
+    public RenderStats getRenderStats() {
+        return renderStats;
+    }
+
+    public boolean isShowStats() {
+        return showStats;
+    }
+
+    /**
+     * Whether to show the stats of the last finished render on top of the fractal.
+     */
+    public void setShowStats(boolean showStats) {
+        this.showStats = showStats;
+        invalidate();
+    }
+
+    /**
+     * The cache that keeps the iteration counts of earlier renders, e.g. to read its hit rate.
+     */
+    public IterationCache getIterationCache() {
+        return iterationCache;
+    }
+
     public void setUseColor(boolean useColor) {
         this.useColor = useColor;
     }
@@ -1,7 +1,11 @@
 package com.teinvdlugt.android.fractals;
 
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Environment;
 import android.support.v4.view.GravityCompat;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.AppCompatActivity;
@@ -14,13 +18,26 @@ import android.widget.CheckBox;
 import android.widget.CompoundButton;
 import android.widget.EditText;
 import android.widget.Spinner;
+import android.widget.Toast;
+
+import com.teinvdlugt.fractals.engine.ColorScheme;
+import com.teinvdlugt.fractals.engine.DeepViewport;
+import com.teinvdlugt.fractals.engine.PosterExport;
+import com.teinvdlugt.fractals.engine.RenderParams;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 
 public class MainActivity extends AppCompatActivity {
 
     FractalView fractalView;
-    EditText resolutionET, precisionET, escapeValueET, maxColorIterationsET, colorDistributionET;
+    FractalMapView fractalMapView;
+    EditText resolutionET, precisionET, escapeValueET, exponentET, maxColorIterationsET, colorDistributionET, posterWidthET;
     DrawerLayout drawerLayout;
-    CheckBox colorCB;
+    View exponentLayout;
+    CheckBox colorCB, smoothCB, distanceEstimationCB, juliaCB, interiorDetectionCB, subdivisionCB, progressiveCB, statsCB, mapCB;
     Spinner fractalSpinner;
 
     @Override
@@ -33,6 +50,7 @@ public class MainActivity extends AppCompatActivity {
         resolutionET.setText(fractalView.getResolution() + "");
         precisionET.setText(fractalView.getPrecision() + "");
         escapeValueET.setText(fractalView.getEscapeValue() + "");
+        exponentET.setText(fractalView.getExponent() + "");
         maxColorIterationsET.setText(fractalView.getMaxColorIterations() + "");
         colorDistributionET.setText(fractalView.getColorDistribution() + "");
 
@@ -44,17 +62,30 @@ public class MainActivity extends AppCompatActivity {
     private void initViews() {
         drawerLayout = (DrawerLayout) findViewById(R.id.drawerLayout);
         fractalView = (FractalView) findViewById(R.id.fractalView);
+        fractalMapView = (FractalMapView) findViewById(R.id.fractalMapView);
         resolutionET = (EditText) findViewById(R.id.resolution);
         precisionET = (EditText) findViewById(R.id.precision);
         escapeValueET = (EditText) findViewById(R.id.escapeValue);
+        exponentET = (EditText) findViewById(R.id.exponent);
+        exponentLayout = findViewById(R.id.exponentLayout);
         colorCB = (CheckBox) findViewById(R.id.colorCheckbox);
+        smoothCB = (CheckBox) findViewById(R.id.smoothCheckbox);
+        distanceEstimationCB = (CheckBox) findViewById(R.id.distanceEstimationCheckbox);
+        juliaCB = (CheckBox) findViewById(R.id.juliaCheckbox);
+        interiorDetectionCB = (CheckBox) findViewById(R.id.interiorDetectionCheckbox);
+        subdivisionCB = (CheckBox) findViewById(R.id.subdivisionCheckbox);
+        progressiveCB = (CheckBox) findViewById(R.id.progressiveCheckbox);
+        statsCB = (CheckBox) findViewById(R.id.statsCheckbox);
+        mapCB = (CheckBox) findViewById(R.id.mapCheckbox);
         fractalSpinner = (Spinner) findViewById(R.id.fractalSpinner);
         maxColorIterationsET = (EditText) findViewById(R.id.maxColorIterations_editText);
         colorDistributionET = (EditText) findViewById(R.id.colorDistribution_editText);
+        posterWidthET = (EditText) findViewById(R.id.posterWidth);
     }
 
     private void setSpinnerAdapter() {
-        String[] strings = {"Mandelbrot set", "Tricorn", "Burning ship", "Multibrot set (3)", "Multibrot set (4)"};
+        String[] strings = {"Mandelbrot set", "Tricorn", "Burning ship", "Multibrot set (3)", "Multibrot set (4)",
+                "Multibrot set (any exponent)"};
         ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, strings);
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         fractalSpinner.setAdapter(adapter);
@@ -63,6 +94,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 fractalView.setCurrentFractal(position);
+                exponentLayout.setVisibility(position == FractalView.MULTIBROT ? View.VISIBLE : View.GONE);
             }
 
             public void onNothingSelected(AdapterView<?> parent) {/*ignored*/}
@@ -77,8 +109,61 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
                 fractalView.setUseColor(isChecked);
+                fractalView.recolor();
+            }
+        });
+        smoothCB.setChecked(fractalView.isSmooth());
+        smoothCB.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                fractalView.setSmooth(isChecked);
+                if (!isChecked) fractalView.recolor();
+            }
+        });
+        distanceEstimationCB.setChecked(fractalView.isDistanceEstimation());
+        distanceEstimationCB.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                fractalView.setDistanceEstimation(isChecked);
+                if (!isChecked) fractalView.recolor();
+            }
+        });
+        juliaCB.setChecked(fractalView.isJulia());
+        juliaCB.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                fractalView.setJulia(isChecked);
+            }
+        });
+        interiorDetectionCB.setChecked(fractalView.isInteriorDetection());
+        interiorDetectionCB.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                fractalView.setInteriorDetection(isChecked);
+            }
+        });
+        subdivisionCB.setChecked(fractalView.getRenderMode() == RenderParams.MODE_SUBDIVISION);
+        subdivisionCB.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                fractalView.setRenderMode(isChecked ? RenderParams.MODE_SUBDIVISION : RenderParams.MODE_BRUTE_FORCE);
+            }
+        });
+        progressiveCB.setChecked(fractalView.isProgressive());
+        progressiveCB.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                fractalView.setProgressive(isChecked);
+            }
+        });
+        statsCB.setChecked(fractalView.isShowStats());
+        statsCB.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                fractalView.setShowStats(isChecked);
             }
         });
+        mapCB.setChecked(fractalMapView.getVisibility() == View.VISIBLE);
     }
 
     private void setTextWatchers() {
@@ -115,10 +200,22 @@ public class MainActivity extends AppCompatActivity {
 
             public void afterTextChanged(Editable s) {/*ignored*/}
         });
+        exponentET.addTextChangedListener(new TextWatcher() {
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                try {
+                    fractalView.setExponent(Double.parseDouble(exponentET.getText().toString()));
+                } catch (NumberFormatException ignored) {/*ignored*/}
+            }
+
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {/*ignored*/}
+
+            public void afterTextChanged(Editable s) {/*ignored*/}
+        });
         maxColorIterationsET.addTextChangedListener(new TextWatcher() {
             public void onTextChanged(CharSequence s, int start, int before, int count) {
                 try {
                     fractalView.setMaxColorIterations(Double.parseDouble(maxColorIterationsET.getText().toString()));
+                    fractalView.recolor();
                 } catch (NumberFormatException ignored) {/*ignored*/}
             }
 
@@ -130,6 +227,7 @@ public class MainActivity extends AppCompatActivity {
             public void onTextChanged(CharSequence s, int start, int before, int count) {
                 try {
                     fractalView.setColorDistribution(Double.parseDouble(colorDistributionET.getText().toString()));
+                    fractalView.recolor();
                 } catch (NumberFormatException ignored) {/*ignored*/}
             }
 
@@ -142,7 +240,110 @@ public class MainActivity extends AppCompatActivity {
     public void onClickApply(View view) {
         applyValues();
         drawerLayout.closeDrawer(GravityCompat.START);
-        fractalView.recalculate();
+        if (mapCB.isChecked()) {
+            showMap();
+        } else {
+            fractalMapView.setVisibility(View.GONE);
+            fractalView.setVisibility(View.VISIBLE);
+            fractalView.recalculate();
+        }
+    }
+
+    /**
+     * Shows the map viewer instead of the fractal view, with the settings of the fractal view.
+     */
+    private void showMap() {
+        fractalView.cancel();
+        fractalView.setVisibility(View.GONE);
+        fractalMapView.setVisibility(View.VISIBLE);
+
+        fractalMapView.setParams(fractalView.createRenderParams(), fractalView.createColorScheme());
+    }
+
+    public void onClickExportPoster(View view) {
+        applyValues();
+        try {
+            int width = Integer.parseInt(posterWidthET.getText().toString());
+            if (width <= 0) return;
+            drawerLayout.closeDrawer(GravityCompat.START);
+            new PosterTask(width).execute();
+        } catch (NumberFormatException ignored) {/*ignored*/}
+    }
+
+    /**
+     * Exports the viewport of the fractal view as a PNG in the pictures directory of the app,
+     * strip by strip, so that it can be much larger than the screen.
+     */
+    private class PosterTask extends AsyncTask<Void, Integer, File> {
+        final PosterExport export = new PosterExport();
+        final DeepViewport viewport;
+        final RenderParams params;
+        final ColorScheme colorScheme;
+        final boolean smooth;
+        final File file;
+        ProgressDialog dialog;
+        IOException error;
+
+        PosterTask(int width) {
+            viewport = fractalView.getViewport(width);
+            params = fractalView.createRenderParams();
+            // The previews of a progressive render would only be thrown away
+            params.setProgressive(false);
+            colorScheme = fractalView.createColorScheme();
+            smooth = fractalView.isSmooth();
+            File directory = getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+            if (directory == null) directory = getFilesDir();
+            file = new File(directory, "fractal-" + System.currentTimeMillis() + ".png");
+        }
+
+        @Override
+        protected void onPreExecute() {
+            dialog = new ProgressDialog(MainActivity.this);
+            dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+            dialog.setMessage(getString(R.string.exporting_poster, viewport.getWidth(), viewport.getHeight()));
+            dialog.setMax(viewport.getHeight());
+            dialog.setCancelable(false);
+            dialog.setButton(DialogInterface.BUTTON_NEGATIVE, getString(R.string.cancel), new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface d, int which) {
+                    export.cancel();
+                }
+            });
+            dialog.show();
+        }
+
+        @Override
+        protected File doInBackground(Void... params) {
+            try {
+                boolean finished = export.export(viewport, this.params, colorScheme, smooth,
+                        new BufferedOutputStream(new FileOutputStream(file), 64 * 1024),
+                        new PosterExport.OnProgressListener() {
+                            @Override
+                            public void onProgress(int rowsWritten, int height) {
+                                publishProgress(rowsWritten);
+                            }
+                        });
+                if (finished) return file;
+            } catch (IOException e) {
+                error = e;
+            }
+            file.delete();
+            return null;
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... rowsWritten) {
+            dialog.setProgress(rowsWritten[0]);
+        }
+
+        @Override
+        protected void onPostExecute(File result) {
+            dialog.dismiss();
+            String message = result != null ? getString(R.string.poster_exported, result.getPath())
+                    : error != null ? getString(R.string.poster_failed, error.getMessage())
+                    : getString(R.string.poster_cancelled);
+            Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+        }
     }
 
     public void applyValues() {
@@ -158,6 +359,10 @@ public class MainActivity extends AppCompatActivity {
             double escapeValue = Double.parseDouble(escapeValueET.getText().toString());
             fractalView.setEscapeValue(escapeValue);
         } catch (NumberFormatException ignored) {/*ignored*/}
+        try {
+            double exponent = Double.parseDouble(exponentET.getText().toString());
+            fractalView.setExponent(exponent);
+        } catch (NumberFormatException ignored) {/*ignored*/}
         try {
             double maxColorIterations = Double.parseDouble(maxColorIterationsET.getText().toString());
             fractalView.setMaxColorIterations(maxColorIterations);
@@ -179,6 +384,8 @@ public class MainActivity extends AppCompatActivity {
     }
 
     public void onClickSettings(View view) {
+        // Tapping the Julia preview switches to Julia mode without the checkbox
+        juliaCB.setChecked(fractalView.isJulia());
         drawerLayout.openDrawer(GravityCompat.START);
     }
 
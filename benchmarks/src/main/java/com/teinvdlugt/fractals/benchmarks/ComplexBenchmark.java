@@ -0,0 +1,57 @@
+package com.teinvdlugt.fractals.benchmarks;
+
+import com.teinvdlugt.fractals.engine.Complex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Mandelbrot iteration z = z * z + c with the {@link Complex} helpers, which allocate a
+ * new object for every operation, and with plain doubles. The score is the time per iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ComplexBenchmark {
+
+    static final int ITERATIONS = 1000;
+
+    // A point inside the set, so that the orbit never escapes
+    public double cReal = -0.2, cImg = 0.1;
+
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public double complexHelpers() {
+        Complex c = new Complex(cReal, cImg);
+        Complex z = new Complex(0, 0);
+        for (int i = 0; i < ITERATIONS; i++) {
+            z = Complex.add(Complex.multiply(z, z), c);
+        }
+        return z.getReal() + z.getImaginary();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public double primitives() {
+        double real = 0, img = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            double newReal = real * real - img * img + cReal;
+            img = 2 * real * img + cImg;
+            real = newReal;
+        }
+        return real + img;
+    }
+}
@@ -0,0 +1,194 @@
+package com.teinvdlugt.fractals.benchmarks;
+
+import com.teinvdlugt.fractals.engine.EscapeTime;
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.FractalKernel;
+import com.teinvdlugt.fractals.engine.FractalKernels;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterates a {@code SIZE x SIZE} grid of pixels of a view with every fractal, both with the
+ * switch-in-loop {@link EscapeTime} and with the specialised {@link FractalKernel}s. The score
+ * is in pixels per second; the {@code iterations} counter is in iterations per second, so
+ * 1e9 divided by it is the time per iteration in nanoseconds.
+ * <p/>
+ * Before measuring, every kernel iterates the view once, as a Julia set too, like in the app
+ * after switching fractals. Code that the JIT only inlines while a single kernel is in use is
+ * then as slow here as it is in the app.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EscapeTimeBenchmark {
+
+    static final int SIZE = 64;
+    static final int PIXELS = SIZE * SIZE;
+    static final int PRECISION = 1000;
+    static final double ESCAPE_VALUE = 2;
+
+    @Param({"mandelbrot", "tricorn", "burning-ship", "multibrot3", "multibrot4"})
+    public String fractal;
+
+    @Param({"full", "seahorse", "deep-minibrot", "interior"})
+    public String view;
+
+    private int fractalId;
+    private FractalKernel kernel;
+    private double[] real, img;
+    private int[] row;
+
+    /**
+     * The number of iterations done in the current measurement iteration. Pixels that
+     * interior detection stops early count as {@code PRECISION} iterations.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long iterations;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            iterations = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        fractalId = fractalId(fractal);
+        kernel = FractalKernels.forFractal(fractalId);
+        row = new int[SIZE];
+        Viewport viewport = view(view);
+        real = new double[SIZE];
+        img = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            real[i] = viewport.realValue(i);
+            img[i] = viewport.imaginaryValue(i);
+        }
+        for (int fractal = FractalEngine.MANDELBROT_SET; fractal <= FractalEngine.MULTIBROT_4; fractal++) {
+            RenderParams params = new RenderParams(fractal, PRECISION, ESCAPE_VALUE);
+            iterateRows(FractalKernels.forParams(params), false);
+            iterateRows(FractalKernels.forParams(params), true);
+            params.setJulia(-0.123, 0.745);
+            iterateRows(FractalKernels.forParams(params), false);
+            iterateRows(FractalKernels.forParams(params), true);
+        }
+    }
+
+    /**
+     * {@link EscapeTime#iterate}, which switches on the fractal inside the iteration loop.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public long switchInLoop(Counters counters) {
+        long total = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                total += EscapeTime.iterate(fractalId, real[x], img[y], ESCAPE_VALUE, PRECISION);
+            }
+        }
+        counters.iterations += total;
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public long interiorDetection(Counters counters) {
+        long total = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int result = EscapeTime.iterateWithInteriorDetection(fractalId, real[x], img[y], ESCAPE_VALUE, PRECISION);
+                total += result == EscapeTime.INTERIOR ? PRECISION : result;
+            }
+        }
+        counters.iterations += total;
+        return total;
+    }
+
+    /**
+     * The specialised {@link FractalKernel} of the fractal, one row at a time.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public long kernelRows(Counters counters) {
+        long total = iterateRows(kernel, false);
+        counters.iterations += total;
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public long kernelRowsWithInteriorDetection(Counters counters) {
+        long total = iterateRows(kernel, true);
+        counters.iterations += total;
+        return total;
+    }
+
+    /**
+     * The rows are iterated from here both in {@link #setUp} and in the benchmarks, so that the
+     * call to the kernel has seen all kernels, like the one in {@link FractalEngine}.
+     */
+    private long iterateRows(FractalKernel kernel, boolean interiorDetection) {
+        long total = 0;
+        for (int y = 0; y < SIZE; y++) {
+            kernel.iterateRow(real, img[y], row, 0, SIZE, ESCAPE_VALUE, PRECISION, interiorDetection);
+            for (int x = 0; x < SIZE; x++) {
+                total += row[x];
+            }
+        }
+        return total;
+    }
+
+    static int fractalId(String name) {
+        switch (name) {
+            case "mandelbrot":
+                return FractalEngine.MANDELBROT_SET;
+            case "tricorn":
+                return FractalEngine.TRICORN;
+            case "burning-ship":
+                return FractalEngine.BURNING_SHIP;
+            case "multibrot3":
+                return FractalEngine.MULTIBROT_3;
+            case "multibrot4":
+                return FractalEngine.MULTIBROT_4;
+            default:
+                throw new IllegalArgumentException("Unknown fractal: " + name);
+        }
+    }
+
+    static Viewport view(String name) {
+        switch (name) {
+            case "full":
+                return Viewport.defaultViewport(SIZE, SIZE);
+            case "seahorse":
+                return Viewport.centered(-0.745, 0.1, 0.05, SIZE, SIZE);
+            case "deep-minibrot":
+                return Viewport.centered(-1.9855403715, 0, 1e-9, SIZE, SIZE);
+            case "interior":
+                // Inside the main cardioid of the Mandelbrot set
+                return Viewport.centered(-0.2, 0, 0.2, SIZE, SIZE);
+            default:
+                throw new IllegalArgumentException("Unknown view: " + name);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.teinvdlugt.fractals.benchmarks;
+
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.FractalKernel;
+import com.teinvdlugt.fractals.engine.FractalKernels;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the generic z^d + c kernel with the hand-written kernels of d = 2, 3 and 4, on a
+ * {@code SIZE x SIZE} grid around the origin. The score is in pixels per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultibrotBenchmark {
+
+    static final int SIZE = 64;
+    static final int PIXELS = SIZE * SIZE;
+    static final int PRECISION = 1000;
+    static final double ESCAPE_VALUE = 2;
+
+    @State(Scope.Thread)
+    public static class Generic {
+        @Param({"2", "3", "4", "8", "16", "2.5"})
+        public double exponent;
+
+        Grid grid;
+        FractalKernel kernel;
+
+        @Setup
+        public void setUp() {
+            RenderParams params = new RenderParams(FractalEngine.MULTIBROT, PRECISION, ESCAPE_VALUE);
+            params.setExponent(exponent);
+            kernel = FractalKernels.forParams(params);
+            grid = new Grid();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class HandWritten {
+        @Param({"2", "3", "4"})
+        public int exponent;
+
+        Grid grid;
+        FractalKernel kernel;
+
+        @Setup
+        public void setUp() {
+            kernel = FractalKernels.forFractal(exponent == 2 ? FractalEngine.MANDELBROT_SET
+                    : exponent == 3 ? FractalEngine.MULTIBROT_3 : FractalEngine.MULTIBROT_4);
+            grid = new Grid();
+        }
+    }
+
+    static class Grid {
+        final double[] real = new double[SIZE], img = new double[SIZE];
+        final int[] row = new int[SIZE];
+
+        Grid() {
+            Viewport viewport = Viewport.centered(0, 0, 3, SIZE, SIZE);
+            for (int i = 0; i < SIZE; i++) {
+                real[i] = viewport.realValue(i);
+                img[i] = viewport.imaginaryValue(i);
+            }
+        }
+
+        long iterate(FractalKernel kernel) {
+            long total = 0;
+            for (int y = 0; y < SIZE; y++) {
+                kernel.iterateRow(real, img[y], row, 0, SIZE, ESCAPE_VALUE, PRECISION, false);
+                for (int x = 0; x < SIZE; x++) {
+                    total += row[x];
+                }
+            }
+            return total;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public long generic(Generic state) {
+        return state.grid.iterate(state.kernel);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public long handWritten(HandWritten state) {
+        return state.grid.iterate(state.kernel);
+    }
+}
@@ -0,0 +1,113 @@
+package com.teinvdlugt.fractals.benchmarks;
+
+import com.teinvdlugt.fractals.engine.FractalKernel;
+import com.teinvdlugt.fractals.engine.FractalKernels;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterates the rows of a view with the scalar kernels and with the kernels of the
+ * {@code vector} module, on a single thread, so the scores are in pixels per second per core.
+ * {@link #floatRows} iterates with floats, which the engine only does for views with large
+ * pixels; its counts aren't checked, because they aren't the same as those of doubles.
+ * Needs JDK 16 or later; the forked JVM is started with {@code --add-modules jdk.incubator.vector}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class VectorKernelBenchmark {
+
+    static final int SIZE = EscapeTimeBenchmark.SIZE;
+    static final int PIXELS = SIZE * SIZE;
+
+    @Param({"mandelbrot", "tricorn", "burning-ship"})
+    public String fractal;
+
+    @Param({"full", "seahorse", "deep-minibrot", "interior"})
+    public String view;
+
+    private FractalKernel scalar, vector, floatVector;
+    private double[] real, img;
+    private int[] row;
+
+    @Setup
+    public void setUp() {
+        int fractalId = EscapeTimeBenchmark.fractalId(fractal);
+        scalar = FractalKernels.forFractal(fractalId);
+        vector = FractalKernels.vectorized(fractalId);
+        floatVector = FractalKernels.forFloatRows(new RenderParams(fractalId, EscapeTimeBenchmark.PRECISION,
+                EscapeTimeBenchmark.ESCAPE_VALUE));
+        if (vector == null || floatVector == null) {
+            throw new IllegalStateException("The Vector API isn't available, it needs JDK 16 or later");
+        }
+        row = new int[SIZE];
+        Viewport viewport = EscapeTimeBenchmark.view(view);
+        real = new double[SIZE];
+        img = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            real[i] = viewport.realValue(i);
+            img[i] = viewport.imaginaryValue(i);
+        }
+
+        // The vectorised kernels have to give the same counts
+        int[] expected = new int[SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            scalar.iterateRow(real, img[y], expected, 0, SIZE, EscapeTimeBenchmark.ESCAPE_VALUE,
+                    EscapeTimeBenchmark.PRECISION, false);
+            vector.iterateRow(real, img[y], row, 0, SIZE, EscapeTimeBenchmark.ESCAPE_VALUE,
+                    EscapeTimeBenchmark.PRECISION, false);
+            if (!Arrays.equals(expected, row)) {
+                throw new IllegalStateException("The vectorised counts of row " + y + " are different");
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public long scalarRows() {
+        return iterate(scalar);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public long vectorRows() {
+        return iterate(vector);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public long floatRows() {
+        return iterate(floatVector);
+    }
+
+    private long iterate(FractalKernel kernel) {
+        long total = 0;
+        for (int y = 0; y < SIZE; y++) {
+            kernel.iterateRow(real, img[y], row, 0, SIZE, EscapeTimeBenchmark.ESCAPE_VALUE,
+                    EscapeTimeBenchmark.PRECISION, false);
+            for (int x = 0; x < SIZE; x++) {
+                total += row[x];
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,55 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+/**
+ * Compares rendering with and without interior detection for every fractal at
+ * precision 400, 2000 and 10000, and checks that both give the same iteration counts.
+ * <pre>
+ *     java com.teinvdlugt.fractals.cli.InteriorDetectionBenchmark [width] [height]
+ * </pre>
+ */
+public class InteriorDetectionBenchmark {
+
+    private static final int[] PRECISIONS = {400, 2000, 10000};
+    private static final String[] FRACTAL_NAMES = {"mandelbrot", "tricorn", "burning-ship", "multibrot3", "multibrot4"};
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 540;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 540;
+        Viewport viewport = Viewport.defaultViewport(width, height);
+
+        System.out.println("fractal\tprecision\tplain ms\tdetection ms\tspeedup\tearly exits\tmismatches");
+        for (int fractal = 0; fractal < FRACTAL_NAMES.length; fractal++) {
+            for (int precision : PRECISIONS) {
+                RenderParams plain = new RenderParams(fractal, precision, 2);
+                RenderParams detection = new RenderParams(fractal, precision, 2);
+                detection.setInteriorDetection(true);
+
+                // Warm up
+                new FractalEngine().render(viewport, plain);
+                new FractalEngine().render(viewport, detection);
+
+                long start = System.nanoTime();
+                int[] expected = new FractalEngine().render(viewport, plain);
+                double plainMillis = (System.nanoTime() - start) / 1e6;
+
+                FractalEngine engine = new FractalEngine();
+                start = System.nanoTime();
+                int[] actual = engine.render(viewport, detection);
+                double detectionMillis = (System.nanoTime() - start) / 1e6;
+
+                int mismatches = 0;
+                for (int i = 0; i < expected.length; i++) {
+                    if (expected[i] != actual[i]) mismatches++;
+                }
+
+                System.out.printf("%s\t%d\t%.1f\t%.1f\t%.2fx\t%d\t%d%n", FRACTAL_NAMES[fractal], precision,
+                        plainMillis, detectionMillis, plainMillis / detectionMillis,
+                        engine.getStats().getEarlyExitPixels(), mismatches);
+            }
+        }
+    }
+}
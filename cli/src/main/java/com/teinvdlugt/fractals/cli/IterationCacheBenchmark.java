@@ -0,0 +1,65 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.IterationCache;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+/**
+ * Pans and zooms around seahorse valley, rendering every view with and without an
+ * {@link IterationCache}, and prints the timings, the number of pixels that came from the
+ * cache and how many pixels differ from the render without the cache.
+ * <pre>
+ *     java com.teinvdlugt.fractals.cli.IterationCacheBenchmark [width] [height] [precision]
+ * </pre>
+ */
+public class IterationCacheBenchmark {
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 540;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 540;
+        int precision = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        double centerReal = -0.745, centerImg = 0.1, range = 0.05;
+        double step = range / width;
+        String[] names = {"start", "pan right 1/4", "pan down 1/4", "zoom in 2x", "zoom in 3x", "back to start"};
+        Viewport[] viewports = {
+                Viewport.centered(centerReal, centerImg, range, width, height),
+                Viewport.centered(centerReal + step * (width / 4), centerImg, range, width, height),
+                Viewport.centered(centerReal + step * (width / 4), centerImg - step * (height / 4), range, width, height),
+                Viewport.centered(centerReal + step * (width / 4), centerImg - step * (height / 4), range / 2, width, height),
+                Viewport.centered(centerReal + step * (width / 4), centerImg - step * (height / 4), range / 6, width, height),
+                Viewport.centered(centerReal, centerImg, range, width, height)
+        };
+        RenderParams params = new RenderParams(FractalEngine.MANDELBROT_SET, precision, 2);
+
+        // Warm up
+        new FractalEngine().render(viewports[0], params);
+
+        IterationCache cache = new IterationCache(64 * 1024 * 1024);
+        System.out.println("view\tuncached ms\tcached ms\tcache hits\toutput\thit %\tmismatches");
+        for (int i = 0; i < viewports.length; i++) {
+            long start = System.nanoTime();
+            int[] expected = new FractalEngine().render(viewports[i], params);
+            double uncachedMillis = (System.nanoTime() - start) / 1e6;
+
+            FractalEngine engine = new FractalEngine();
+            engine.setIterationCache(cache);
+            start = System.nanoTime();
+            int[] actual = engine.render(viewports[i], params);
+            double cachedMillis = (System.nanoTime() - start) / 1e6;
+
+            int mismatches = 0;
+            for (int j = 0; j < expected.length; j++) {
+                if (expected[j] != actual[j]) mismatches++;
+            }
+
+            long hits = engine.getStats().getCacheHits();
+            long output = engine.getStats().getOutputPixels();
+            System.out.printf("%s\t%.1f\t%.1f\t%d\t%d\t%.1f%%\t%d%n", names[i], uncachedMillis, cachedMillis,
+                    hits, output, 100. * hits / output, mismatches);
+        }
+        System.out.printf("Overall hit rate: %.1f%%, %d KB of %d KB used%n", cache.getHitRate() * 100,
+                cache.getSizeBytes() / 1024, cache.getMaxBytes() / 1024);
+    }
+}
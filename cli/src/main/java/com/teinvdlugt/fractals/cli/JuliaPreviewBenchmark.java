@@ -0,0 +1,52 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.JuliaPreview;
+import com.teinvdlugt.fractals.engine.RenderParams;
+
+import java.util.Arrays;
+
+/**
+ * Renders the Julia preview thumbnails of points along a drag across the Mandelbrot set,
+ * like picking c with a finger, and prints how long the thumbnails took. They have to
+ * take less than a frame (16 ms) to be rendered on the UI thread. Then drags along the same
+ * points again, which should only hit the cache.
+ * <pre>
+ *     java com.teinvdlugt.fractals.cli.JuliaPreviewBenchmark [size] [precision] [points]
+ * </pre>
+ */
+public class JuliaPreviewBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : JuliaPreview.DEFAULT_SIZE;
+        int precision = args.length > 1 ? Integer.parseInt(args[1]) : JuliaPreview.DEFAULT_PRECISION;
+        int points = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        JuliaPreview preview = new JuliaPreview(size, precision);
+        RenderParams params = new RenderParams(FractalEngine.MANDELBROT_SET, precision, 2);
+        // Warm up on points that aren't on the drag
+        for (int i = 0; i < points; i++) {
+            preview.render(params, -2 + 2.5 * i / points, -1);
+        }
+
+        long[] nanos = new long[points];
+        for (int i = 0; i < points; i++) {
+            double t = (double) i / points;
+            preview.render(params, -2 + 2.5 * t, Math.sin(t * Math.PI) * .8);
+            nanos[i] = preview.getLastRenderNanos();
+        }
+        long hitsBefore = preview.getHits();
+        // The cache keeps the most recent thumbnails
+        int cached = Math.min(points, 32);
+        for (int i = points - cached; i < points; i++) {
+            double t = (double) i / points;
+            preview.render(params, -2 + 2.5 * t, Math.sin(t * Math.PI) * .8);
+        }
+
+        Arrays.sort(nanos);
+        System.out.printf("%dx%d thumbnails at precision %d%n", size, size, precision);
+        System.out.printf("median: %.2f ms, 95th percentile: %.2f ms, max: %.2f ms%n",
+                nanos[points / 2] / 1e6, nanos[points * 95 / 100] / 1e6, nanos[points - 1] / 1e6);
+        System.out.println("cache hits when dragging back: " + (preview.getHits() - hitsBefore) + "/" + cached);
+    }
+}
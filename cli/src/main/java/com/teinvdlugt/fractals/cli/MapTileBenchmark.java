@@ -0,0 +1,79 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.ColorScheme;
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.MapTile;
+import com.teinvdlugt.fractals.engine.MapTileScheduler;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.TileRenderer;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+/**
+ * Pans across the Mandelbrot set the way FractalMapView does, a number of device pixels at a
+ * time, and waits for the scheduler to render the tiles after every step. Compares the tiles
+ * it renders with rendering the whole screen again after every step, which is what
+ * FractalView does.
+ * <pre>
+ *     java com.teinvdlugt.fractals.cli.MapTileBenchmark [screen width] [screen height] [zoom] [steps] [step px]
+ * </pre>
+ */
+public class MapTileBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1080;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1920;
+        int zoom = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int steps = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int stepPixels = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+
+        RenderParams params = new RenderParams(FractalEngine.MANDELBROT_SET, 400, 2);
+        ColorScheme colorScheme = new ColorScheme(true, 400, 30);
+        MapTileScheduler<int[]> scheduler = new MapTileScheduler<>(new MapTileScheduler.TileFactory<int[]>() {
+            @Override
+            public int[] create(MapTile tile, int[] colors) {
+                return colors.clone();
+            }
+        }, TileRenderer.availableProcessors(), 256);
+        scheduler.setParams(params, colorScheme);
+
+        double tilesWide = (double) width / MapTile.SIZE, tilesHigh = (double) height / MapTile.SIZE;
+        // Start left of the set, so that it moves across the screen
+        double left = MapTile.tileX(-3.2, zoom), top = MapTile.tileY(0, zoom) - tilesHigh / 2;
+        long start = System.nanoTime();
+        scheduler.update(zoom, left, top, left + tilesWide, top + tilesHigh, 0, 0);
+        scheduler.awaitIdle(Long.MAX_VALUE);
+        long firstNanos = System.nanoTime() - start;
+        long firstTiles = scheduler.getRenderedTiles();
+
+        start = System.nanoTime();
+        for (int step = 0; step < steps; step++) {
+            left += (double) stepPixels / MapTile.SIZE;
+            scheduler.update(zoom, left, top, left + tilesWide, top + tilesHigh, 1, 0);
+            scheduler.awaitIdle(Long.MAX_VALUE);
+        }
+        long panNanos = System.nanoTime() - start;
+        long panTiles = scheduler.getRenderedTiles() - firstTiles;
+        scheduler.shutdown();
+
+        // FractalView renders the whole screen again after each step
+        Viewport viewport = new Viewport(MapTile.realValue(left, zoom), MapTile.imaginaryValue(top, zoom),
+                MapTile.range(zoom) * tilesWide, MapTile.range(zoom) * tilesHigh, width, height);
+        FractalEngine engine = new FractalEngine();
+        int[] iterations = new int[width * height];
+        engine.render(viewport, params, iterations, null, null, null);
+        long frameNanos = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            long frameStart = System.nanoTime();
+            engine.render(viewport, params, iterations, null, null, null);
+            frameNanos = Math.min(frameNanos, System.nanoTime() - frameStart);
+        }
+
+        System.out.printf("%dx%d screen at zoom %d, %d steps of %d px, %d threads%n", width, height, zoom,
+                steps, stepPixels, TileRenderer.availableProcessors());
+        System.out.printf("First screen: %d tiles in %.1f ms%n", firstTiles, firstNanos / 1e6);
+        System.out.printf("Panning:      %d tiles (%.1f per step, %d pixels) in %.1f ms%n", panTiles,
+                (double) panTiles / steps, panTiles * MapTile.SIZE * MapTile.SIZE, panNanos / 1e6);
+        System.out.printf("Full frames:  %d frames (%d pixels) in %.1f ms%n", steps,
+                (long) steps * width * height, steps * frameNanos / 1e6);
+    }
+}
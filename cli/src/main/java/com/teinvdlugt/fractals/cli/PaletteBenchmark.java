@@ -0,0 +1,55 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.ColorScheme;
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.Palette;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+/**
+ * Colors a rendered frame by calculating the color of every pixel, and by looking it up
+ * in a {@link Palette}, and prints the timings and whether the colors are the same.
+ * <pre>
+ *     java com.teinvdlugt.fractals.cli.PaletteBenchmark [width] [height] [precision] [runs]
+ * </pre>
+ */
+public class PaletteBenchmark {
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1080;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+        int precision = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        RenderParams params = new RenderParams(FractalEngine.MANDELBROT_SET, precision, 2);
+        params.setInteriorDetection(true);
+        int[] iterations = new FractalEngine().render(Viewport.centered(-0.745, 0.1, 0.05, width, height), params);
+        ColorScheme colorScheme = new ColorScheme(true, precision, 30);
+        int[] expected = new int[iterations.length];
+        int[] actual = new int[iterations.length];
+
+        long perPixel = Long.MAX_VALUE, lookup = Long.MAX_VALUE, build = Long.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations.length; i++) {
+                expected[i] = colorScheme.calculateColor(iterations[i], precision);
+            }
+            perPixel = Math.min(perPixel, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            Palette palette = Palette.build(colorScheme, precision);
+            build = Math.min(build, System.nanoTime() - start);
+            palette.color(iterations, actual, width, 0, 0, width, height);
+            lookup = Math.min(lookup, System.nanoTime() - start);
+        }
+
+        int mismatches = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) mismatches++;
+        }
+        System.out.printf("per pixel: %.2f ms%n", perPixel / 1e6);
+        System.out.printf("palette:   %.2f ms (of which %.2f ms building the %d colors)%n",
+                lookup / 1e6, build / 1e6, precision + 1);
+        System.out.println("mismatches: " + mismatches);
+    }
+}
@@ -0,0 +1,124 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.ColorScheme;
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.TileRenderer;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Renders the default Mandelbrot view the way FractalView shows it while it's being calculated:
+ * every {@code updateRows} rows of pixels, the frame is scaled up to the size of the screen.
+ * Compares scaling the whole frame every time, which made a render cost O(frame^2 / updateRows),
+ * with scaling only the tiles that finished since the last update, for smaller and smaller
+ * values of updateRows. Java 2D's nearest neighbour scaling stands in for the Canvas of Android.
+ * <pre>
+ *     java com.teinvdlugt.fractals.cli.ProgressiveBlitBenchmark [width] [height] [screen width] [screen height] [runs]
+ * </pre>
+ */
+public class ProgressiveBlitBenchmark {
+
+    private static final int[] UPDATE_ROWS = {100, 50, 20, 10, 5, 2, 1};
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 540;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 960;
+        int screenWidth = args.length > 2 ? Integer.parseInt(args[2]) : 1080;
+        int screenHeight = args.length > 3 ? Integer.parseInt(args[3]) : 1920;
+        int runs = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+
+        Viewport viewport = Viewport.defaultViewport(width, height);
+        RenderParams params = new RenderParams(FractalEngine.MANDELBROT_SET, 400, 2);
+        ColorScheme colorScheme = new ColorScheme(true, 400, 30);
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        BufferedImage screen = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_RGB);
+        int[] iterations = new int[width * height];
+
+        // Warm up the JIT before measuring
+        render(viewport, params, colorScheme, iterations, frame, screen, 10, false);
+        render(viewport, params, colorScheme, iterations, frame, screen, 10, true);
+
+        System.out.printf("%dx%d on a %dx%d screen, %d threads%n", width, height, screenWidth, screenHeight,
+                TileRenderer.availableProcessors());
+        System.out.println("updateRows\tupdates\tfull rescale ms\tdirty region ms");
+        for (int updateRows : UPDATE_ROWS) {
+            long full = Long.MAX_VALUE, dirty = Long.MAX_VALUE;
+            int updates = 0;
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                updates = render(viewport, params, colorScheme, iterations, frame, screen, updateRows, false);
+                full = Math.min(full, System.nanoTime() - start);
+                start = System.nanoTime();
+                render(viewport, params, colorScheme, iterations, frame, screen, updateRows, true);
+                dirty = Math.min(dirty, System.nanoTime() - start);
+            }
+            System.out.printf("%d\t%d\t%.1f\t%.1f%n", updateRows, updates, full / 1e6, dirty / 1e6);
+        }
+    }
+
+    /**
+     * @param dirtyOnly Whether to scale only the tiles that finished since the last update
+     * @return The number of updates
+     */
+    private static int render(Viewport viewport, RenderParams params, final ColorScheme colorScheme,
+                              final int[] iterations, final BufferedImage frame, BufferedImage screen,
+                              int updateRows, final boolean dirtyOnly) {
+        final int width = viewport.getWidth(), height = viewport.getHeight();
+        final int precision = params.getPrecision();
+        final int screenWidth = screen.getWidth(), screenHeight = screen.getHeight();
+        final int updatePixels = updateRows * width;
+        // The colors go straight into the frame, like setPixels does on Android
+        final int[] colors = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        final Graphics2D graphics = screen.createGraphics();
+        final Rectangle region = new Rectangle();
+        final int[] updates = new int[1];
+
+        TileRenderer.TileCalculator colorer = new TileRenderer.TileCalculator() {
+            @Override
+            public void calculateTile(int left, int top, int tileWidth, int tileHeight) {
+                colorScheme.color(iterations, colors, precision, width, left, top, tileWidth, tileHeight);
+            }
+        };
+        TileRenderer.OnTileFinishedListener listener = new TileRenderer.OnTileFinishedListener() {
+            int pixelsSinceUpdate = 0;
+
+            @Override
+            public void onTileFinished(int left, int top, int tileWidth, int tileHeight) {
+                Rectangle tile = new Rectangle(left, top, tileWidth, tileHeight);
+                if (region.isEmpty()) region.setBounds(tile);
+                else region.add(tile);
+
+                pixelsSinceUpdate += tileWidth * tileHeight;
+                if (pixelsSinceUpdate >= updatePixels) {
+                    pixelsSinceUpdate = 0;
+                    if (!dirtyOnly) region.setBounds(0, 0, width, height);
+                    drawScaled(graphics, frame, region, screenWidth, screenHeight);
+                    region.setSize(0, 0);
+                    updates[0]++;
+                }
+            }
+        };
+
+        new FractalEngine().render(viewport, params, iterations, null, colorer, listener);
+        region.setBounds(0, 0, width, height);
+        drawScaled(graphics, frame, region, screenWidth, screenHeight);
+        graphics.dispose();
+        return updates[0] + 1;
+    }
+
+    /**
+     * Scales a region of the frame onto the screen, nearest neighbour.
+     */
+    private static void drawScaled(Graphics2D graphics, BufferedImage frame, Rectangle region,
+                                   int screenWidth, int screenHeight) {
+        int width = frame.getWidth(), height = frame.getHeight();
+        graphics.drawImage(frame, region.x * screenWidth / width, region.y * screenHeight / height,
+                (region.x + region.width) * screenWidth / width, (region.y + region.height) * screenHeight / height,
+                region.x, region.y, region.x + region.width, region.y + region.height, null);
+    }
+}
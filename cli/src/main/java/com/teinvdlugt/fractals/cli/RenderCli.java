@@ -0,0 +1,425 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.BufferPool;
+import com.teinvdlugt.fractals.engine.ColorScheme;
+import com.teinvdlugt.fractals.engine.DeepViewport;
+import com.teinvdlugt.fractals.engine.DiskBlockStore;
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.FractalKernels;
+import com.teinvdlugt.fractals.engine.Gradient;
+import com.teinvdlugt.fractals.engine.IterationCache;
+import com.teinvdlugt.fractals.engine.PngWriter;
+import com.teinvdlugt.fractals.engine.PosterExport;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.StopGradient;
+import com.teinvdlugt.fractals.engine.TileRenderer;
+import com.teinvdlugt.fractals.engine.Viewport;
+import com.teinvdlugt.fractals.engine.ZoomAnimation;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders a fractal without Android and writes it to a PNG file.
+ */
+public class RenderCli {
+
+    private static final String USAGE = "Usage: fractals [options]\n"
+            + "  --fractal <name>                mandelbrot, tricorn, burning-ship, multibrot3, multibrot4 or multibrot\n"
+            + "  --exponent <d>                  exponent of multibrot, z^d + c, may be fractional (2)\n"
+            + "  --julia-real, --julia-img       render the Julia set of c = julia-real + julia-img * i\n"
+            + "  --width <px>, --height <px>     resolution (540 x width)\n"
+            + "  --start-real, --start-img       top left corner in the complex plane (-2, 2)\n"
+            + "  --range-real, --range-img       size of the view in the complex plane (4, range-real * height / width)\n"
+            + "  --center-real, --center-img     center of the view with any number of digits, instead of the start\n"
+            + "  --precision <n>                 maximum number of iterations (400)\n"
+            + "  --escape <value>                escape value (2)\n"
+            + "  --interior-detection            stop iterating points as soon as they are known to be in the set\n"
+            + "  --subdivision                   fill rectangles with a uniform border without iterating them\n"
+            + "  --progressive                   render in passes of 1/8, 1/4, 1/2 and full resolution and print their timings\n"
+            + "  --smooth                        continuous iteration counts, colored without bands\n"
+            + "  --distance-estimation           estimate the distance to the boundary and draw the boundary with it,\n"
+            + "                                  anti-aliased and with the filaments that fall between the pixels\n"
+            + "  --boundary-width <px>           distance from the boundary over which it is blended in (1)\n"
+            + "  --no-color                      draw escaped points white\n"
+            + "  --gradient <name>               classic, grayscale or fire (classic)\n"
+            + "  --max-color-iterations <n>      (400)\n"
+            + "  --color-distribution <value>    (30)\n"
+            + "  --no-vector                     don't use the Vector API kernels, even if they are available\n"
+            + "  --float                         iterate zoomed out views with floats when the Vector API kernels are\n"
+            + "                                  used, which is faster but changes a few hundred pixels\n"
+            + "  --threads <n>                   worker threads (number of processors)\n"
+            + "  --repeat <n>                    render n times and print the timings\n"
+            + "  --cache-mb <n>                  keep the iteration counts between repeats in a cache of n MB\n"
+            + "  --disk-cache <file>             keep the iteration counts in a file, e.g. to seed the cache of the app\n"
+            + "  --disk-cache-mb <n>             size of the disk cache file (64)\n"
+            + "  --stats <file>                  write the timings and counts of every render as CSV, or JSON if the\n"
+            + "                                  file ends with .json (upload and scale are only measured by the app)\n"
+            + "  --poster                        render strip by strip straight into the PNG, with memory that doesn't\n"
+            + "                                  grow with the size of the image (e.g. --width 16384); Ctrl-C cancels\n"
+            + "  --zoom-frames <n>               render an animation of n frames that zooms from the view into its center\n"
+            + "  --zoom-end-range <d>            real range of the last frame of the animation (range-real / 1e6)\n"
+            + "  --frames <dir>                  directory for the numbered PNG frames of the animation (frames)\n"
+            + "  --raw-frames <file>             write the frames of the animation as raw RGB24 instead, - for stdout,\n"
+            + "                                  e.g. for ffmpeg -f rawvideo -pix_fmt rgb24 -s <width>x<height> -i -\n"
+            + "  --out <file>                    PNG file to write (fractal.png)";
+
+    public static void main(String[] args) throws IOException {
+        Arguments arguments = new Arguments(args);
+        if (arguments.has("help")) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        DeepViewport deepViewport = parseDeepViewport(arguments);
+        Viewport viewport = deepViewport == null ? parseViewport(arguments) : deepViewport.toViewport();
+        RenderParams params = parseRenderParams(arguments);
+        ColorScheme colorScheme = new ColorScheme(!arguments.has("no-color"),
+                arguments.getDouble("max-color-iterations", 400),
+                arguments.getDouble("color-distribution", 30));
+        colorScheme.setGradient(parseGradient(arguments.getString("gradient", "classic")));
+        colorScheme.setBoundaryWidth(arguments.getDouble("boundary-width", 1));
+        if (arguments.has("no-vector")) FractalKernels.setVectorEnabled(false);
+        int threads = arguments.getInt("threads", TileRenderer.availableProcessors());
+        if (arguments.has("poster")) {
+            exportPoster(new File(arguments.getString("out", "fractal.png")), viewport, deepViewport, params,
+                    colorScheme, arguments.has("smooth"), threads);
+            return;
+        }
+        if (arguments.has("zoom-frames")) {
+            renderAnimation(arguments, viewport, deepViewport, params, colorScheme, threads);
+            return;
+        }
+        int repeat = arguments.getInt("repeat", 1);
+        IterationCache cache = arguments.has("cache-mb") || arguments.has("disk-cache")
+                ? new IterationCache(arguments.getInt("cache-mb", 16) * 1024L * 1024) : null;
+        DiskBlockStore diskStore = null;
+        if (arguments.has("disk-cache")) {
+            diskStore = DiskBlockStore.open(new File(arguments.getString("disk-cache", "fractals.cache")),
+                    arguments.getInt("disk-cache-mb", 64) * 1024L * 1024);
+            cache.setDiskStore(diskStore);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // Every repeat reuses the buffers of the one before
+        BufferPool buffers = new BufferPool(2);
+        int[] iterations = null, colors = null;
+        float[] smooth = null, distances = null;
+        StatsExport stats = arguments.has("stats") ? new StatsExport() : null;
+        try {
+            for (int i = 0; i < repeat; i++) {
+                FractalEngine engine = new FractalEngine(new TileRenderer(executor, threads, TileRenderer.DEFAULT_TILE_SIZE));
+                engine.setIterationCache(cache);
+                if (params.isProgressive()) {
+                    engine.setOnPassFinishedListener(new FractalEngine.OnPassFinishedListener() {
+                        @Override
+                        public void onPassFinished(int step, long elapsedNanos) {
+                            System.out.printf("  pass 1/%d: %.1f ms%n", step, elapsedNanos / 1e6);
+                        }
+                    });
+                }
+                buffers.release(iterations);
+                buffers.release(colors);
+                buffers.release(smooth);
+                buffers.release(distances);
+                long allocations = buffers.getAllocations();
+                long start = System.nanoTime();
+                iterations = buffers.obtainInts(viewport.getWidth() * viewport.getHeight());
+                smooth = arguments.has("smooth") ? buffers.obtainFloats(iterations.length) : null;
+                distances = arguments.has("distance-estimation") ? buffers.obtainFloats(iterations.length) : null;
+                if (deepViewport != null) {
+                    engine.render(deepViewport, params, iterations, smooth, distances, null, null);
+                } else {
+                    engine.render(viewport, params, iterations, smooth, distances, null, null);
+                }
+                long nanos = System.nanoTime() - start;
+                colors = buffers.obtainInts(iterations.length);
+                if (smooth != null) {
+                    engine.color(smooth, colors, viewport.getWidth(), viewport.getHeight(), params.getPrecision(), colorScheme);
+                } else {
+                    engine.color(iterations, colors, viewport.getWidth(), viewport.getHeight(), params.getPrecision(), colorScheme);
+                }
+                if (distances != null) {
+                    engine.shade(distances, colors, viewport.getWidth(), viewport.getHeight(), params.getPrecision(), colorScheme);
+                }
+                if (stats != null) stats.add(i + 1, viewport, params, engine.getStats());
+                if (repeat > 1) {
+                    System.out.printf("render %d: %.1f ms, %d buffers allocated%n", i + 1, nanos / 1e6,
+                            buffers.getAllocations() - allocations);
+                }
+                if (i == repeat - 1) {
+                    System.out.println("Arithmetic: " + FractalEngine.arithmeticName(engine.getStats().getArithmetic()));
+                }
+                if (i == repeat - 1 && params.isInteriorDetection()) {
+                    System.out.println("Early exits: " + engine.getStats().getEarlyExitPixels() + " pixels");
+                }
+                if (i == repeat - 1 && engine.getStats().getRebases() > 0) {
+                    System.out.println("Rebased " + engine.getStats().getRebases() + " times");
+                }
+                if (i == repeat - 1 && params.getRenderMode() == RenderParams.MODE_SUBDIVISION) {
+                    System.out.println("Iterated " + engine.getStats().getIteratedPixels() + " of "
+                            + engine.getStats().getOutputPixels() + " pixels");
+                }
+                if (i == repeat - 1 && cache != null) {
+                    System.out.printf("Cache hit rate: %.1f%% (%d KB)%n", cache.getHitRate() * 100,
+                            cache.getSizeBytes() / 1024);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            if (diskStore != null) {
+                cache.flush();
+                diskStore.close();
+            }
+        }
+        if (diskStore != null) {
+            System.out.printf("Disk cache: %d blocks read, %d written, %d of %d slots used%n", diskStore.getReads(),
+                    diskStore.getWrites(), diskStore.getBlockCount(), diskStore.getCapacity());
+        }
+
+        String out = arguments.getString("out", "fractal.png");
+        writePng(new File(out), colors, viewport.getWidth(), viewport.getHeight());
+        System.out.println("Wrote " + out);
+        if (stats != null) {
+            stats.write(new File(arguments.getString("stats", "stats.csv")));
+            System.out.println("Wrote " + arguments.getString("stats", "stats.csv"));
+        }
+    }
+
+    /**
+     * Renders the image with a {@link PosterExport}, printing its progress. When the JVM is
+     * stopped (e.g. with Ctrl-C), the export is cancelled and the incomplete file deleted.
+     */
+    static void exportPoster(File file, Viewport viewport, DeepViewport deepViewport, RenderParams params,
+                             ColorScheme colorScheme, boolean smooth, int threads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final PosterExport export = new PosterExport(new FractalEngine(new TileRenderer(executor, threads,
+                TileRenderer.DEFAULT_TILE_SIZE)), PosterExport.DEFAULT_STRIP_PIXELS);
+        Thread cancelHook = addCancelHook(new Runnable() {
+            @Override
+            public void run() {
+                export.cancel();
+            }
+        });
+
+        PosterExport.OnProgressListener listener = new PosterExport.OnProgressListener() {
+            int lastPercent = -1;
+
+            @Override
+            public void onProgress(int rowsWritten, int height) {
+                int percent = (int) (100L * rowsWritten / height);
+                if (percent != lastPercent) System.out.print("\rExporting: " + percent + "%");
+                lastPercent = percent;
+            }
+        };
+        long start = System.nanoTime();
+        boolean finished;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024)) {
+            finished = deepViewport != null
+                    ? export.export(deepViewport, params, colorScheme, smooth, out, listener)
+                    : export.export(viewport, params, colorScheme, smooth, out, listener);
+        } finally {
+            executor.shutdown();
+        }
+        System.out.println();
+        if (!finished) {
+            if (file.delete()) System.out.println("Cancelled, deleted " + file);
+            return;
+        }
+        removeCancelHook(cancelHook);
+        System.out.printf("Wrote %s (%dx%d) in %.1f s%n", file, viewport.getWidth(), viewport.getHeight(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Renders a {@link ZoomAnimation} into numbered PNGs or a raw video stream, and prints the
+     * number of frames per minute.
+     */
+    static void renderAnimation(Arguments arguments, Viewport viewport, DeepViewport deepViewport,
+                                RenderParams params, ColorScheme colorScheme, int threads) throws IOException {
+        BigDecimal centerReal = deepViewport != null ? deepViewport.getCenterReal()
+                : new BigDecimal(viewport.getStartReal() + viewport.getRangeReal() / 2);
+        BigDecimal centerImg = deepViewport != null ? deepViewport.getCenterImg()
+                : new BigDecimal(viewport.getStartImg() - viewport.getRangeImg() / 2);
+        int frames = arguments.getInt("zoom-frames", 100);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final ZoomAnimation animation = new ZoomAnimation(
+                new FractalEngine(new TileRenderer(executor, threads, TileRenderer.DEFAULT_TILE_SIZE)),
+                centerReal, centerImg, viewport.getRangeReal(),
+                arguments.getDouble("zoom-end-range", viewport.getRangeReal() / 1e6),
+                frames, viewport.getWidth(), viewport.getHeight());
+
+        String raw = arguments.has("raw-frames") ? arguments.getString("raw-frames", "-") : null;
+        // Raw frames may go to stdout, so the progress goes to stderr then
+        final PrintStream log = "-".equals(raw) ? System.err : System.out;
+        final OutputStream rawOut = raw == null ? null : new BufferedOutputStream(
+                "-".equals(raw) ? System.out : new FileOutputStream(raw), 1 << 20);
+        final File directory = new File(arguments.getString("frames", "frames"));
+        if (raw == null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        ZoomAnimation.FrameSink sink = new ZoomAnimation.FrameSink() {
+            byte[] rgb;
+
+            @Override
+            public void writeFrame(int frame, int[] colors, int width, int height) throws IOException {
+                if (rawOut != null) {
+                    if (rgb == null) rgb = new byte[width * height * 3];
+                    for (int i = 0, j = 0; i < width * height; i++) {
+                        rgb[j++] = (byte) (colors[i] >> 16);
+                        rgb[j++] = (byte) (colors[i] >> 8);
+                        rgb[j++] = (byte) colors[i];
+                    }
+                    rawOut.write(rgb);
+                } else {
+                    File file = new File(directory, String.format("frame-%05d.png", frame + 1));
+                    try (PngWriter writer = new PngWriter(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024),
+                            width, height, Deflater.BEST_SPEED)) {
+                        writer.writeRows(colors, 0, height);
+                        writer.finish();
+                    }
+                }
+                log.print("\rFrame " + (frame + 1) + "/" + animation.getFrames());
+            }
+        };
+
+        Thread cancelHook = addCancelHook(new Runnable() {
+            @Override
+            public void run() {
+                animation.cancel();
+            }
+        });
+        long start = System.nanoTime();
+        boolean finished;
+        try {
+            finished = animation.render(params, colorScheme, sink);
+        } finally {
+            executor.shutdown();
+            if (rawOut != null) rawOut.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.println();
+        if (!finished) {
+            log.println("Cancelled");
+            return;
+        }
+        removeCancelHook(cancelHook);
+        long keyframePixels = animation.getCalculatedPixels() + animation.getReusedPixels();
+        log.printf("Rendered %d frames from %d keyframes (%.0f%% of the keyframe pixels reused) in %.1f s: "
+                        + "%.0f frames per minute%n", frames, animation.getKeyframes(),
+                100.0 * animation.getReusedPixels() / keyframePixels, seconds, frames / seconds * 60);
+        log.println("Wrote " + (raw != null ? raw : directory.getPath()));
+    }
+
+    /**
+     * Cancels a render when the JVM is stopped, e.g. with Ctrl-C, and gives the main thread some
+     * time to clean up before it exits.
+     */
+    private static Thread addCancelHook(final Runnable cancel) {
+        final Thread mainThread = Thread.currentThread();
+        Thread hook = new Thread() {
+            @Override
+            public void run() {
+                cancel.run();
+                try {
+                    mainThread.join(10000);
+                } catch (InterruptedException ignored) {/*ignored*/}
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    private static void removeCancelHook(Thread hook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException ignored) {/*already shutting down*/}
+    }
+
+    static Viewport parseViewport(Arguments arguments) {
+        int width = arguments.getInt("width", 540);
+        int height = arguments.getInt("height", width);
+        double rangeReal = arguments.getDouble("range-real", 4);
+        double rangeImg = arguments.getDouble("range-img", rangeReal * height / width);
+        return new Viewport(arguments.getDouble("start-real", -2), arguments.getDouble("start-img", 2),
+                rangeReal, rangeImg, width, height);
+    }
+
+    /**
+     * @return The viewport around --center-real and --center-img, or null if they weren't given
+     */
+    static DeepViewport parseDeepViewport(Arguments arguments) {
+        if (!arguments.has("center-real") && !arguments.has("center-img")) return null;
+        int width = arguments.getInt("width", 540);
+        int height = arguments.getInt("height", width);
+        return DeepViewport.centered(new BigDecimal(arguments.getString("center-real", "0")),
+                new BigDecimal(arguments.getString("center-img", "0")),
+                arguments.getDouble("range-real", 4), width, height);
+    }
+
+    static RenderParams parseRenderParams(Arguments arguments) {
+        RenderParams params = new RenderParams(parseFractal(arguments.getString("fractal", "mandelbrot")),
+                arguments.getInt("precision", 400), arguments.getDouble("escape", 2));
+        params.setExponent(arguments.getDouble("exponent", 2));
+        if (arguments.has("julia-real") || arguments.has("julia-img")) {
+            params.setJulia(arguments.getDouble("julia-real", 0), arguments.getDouble("julia-img", 0));
+        }
+        params.setInteriorDetection(arguments.has("interior-detection"));
+        if (arguments.has("subdivision")) params.setRenderMode(RenderParams.MODE_SUBDIVISION);
+        params.setProgressive(arguments.has("progressive"));
+        params.setFloatArithmetic(arguments.has("float"));
+        return params;
+    }
+
+    static int parseFractal(String name) {
+        switch (name) {
+            case "mandelbrot":
+                return FractalEngine.MANDELBROT_SET;
+            case "tricorn":
+                return FractalEngine.TRICORN;
+            case "burning-ship":
+                return FractalEngine.BURNING_SHIP;
+            case "multibrot3":
+                return FractalEngine.MULTIBROT_3;
+            case "multibrot4":
+                return FractalEngine.MULTIBROT_4;
+            case "multibrot":
+                return FractalEngine.MULTIBROT;
+            default:
+                throw new IllegalArgumentException("Unknown fractal: " + name);
+        }
+    }
+
+    static Gradient parseGradient(String name) {
+        switch (name) {
+            case "classic":
+                return Gradient.CLASSIC;
+            case "grayscale":
+                return StopGradient.grayscale();
+            case "fire":
+                return StopGradient.fire();
+            default:
+                throw new IllegalArgumentException("Unknown gradient: " + name);
+        }
+    }
+
+    /**
+     * @param colors The colors of the frame, row by row
+     */
+    static void writePng(File file, int[] colors, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, colors, 0, width);
+        ImageIO.write(image, "png", file);
+    }
+}
@@ -0,0 +1,63 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.ColorScheme;
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+/**
+ * Compares rendering and coloring the default view with integer and with continuous
+ * iteration counts, for every fractal, and checks that the integer counts of both are the same.
+ * <pre>
+ *     java com.teinvdlugt.fractals.cli.SmoothBenchmark [width] [height] [precision] [runs]
+ * </pre>
+ */
+public class SmoothBenchmark {
+
+    private static final String[] FRACTAL_NAMES = {"mandelbrot", "tricorn", "burning-ship", "multibrot3", "multibrot4"};
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 540;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 540;
+        int precision = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        Viewport viewport = Viewport.defaultViewport(width, height);
+        ColorScheme colorScheme = new ColorScheme(true, precision, 30);
+
+        System.out.println("fractal\tinteger ms\tsmooth ms\toverhead\tcolor ms\tsmooth color ms\tmismatches");
+        for (int fractal = 0; fractal < FRACTAL_NAMES.length; fractal++) {
+            RenderParams params = new RenderParams(fractal, precision, 2);
+            int[] expected = new int[width * height], actual = new int[width * height];
+            float[] smooth = new float[width * height];
+            int[] colors = new int[width * height];
+
+            long integer = Long.MAX_VALUE, smoothed = Long.MAX_VALUE;
+            long integerColor = Long.MAX_VALUE, smoothColor = Long.MAX_VALUE;
+            for (int run = 0; run < runs; run++) {
+                FractalEngine engine = new FractalEngine();
+                long start = System.nanoTime();
+                engine.render(viewport, params, expected, null, null, null);
+                integer = Math.min(integer, System.nanoTime() - start);
+                start = System.nanoTime();
+                engine.color(expected, colors, width, height, precision, colorScheme);
+                integerColor = Math.min(integerColor, System.nanoTime() - start);
+
+                engine = new FractalEngine();
+                start = System.nanoTime();
+                engine.render(viewport, params, actual, smooth, null, null);
+                smoothed = Math.min(smoothed, System.nanoTime() - start);
+                start = System.nanoTime();
+                engine.color(smooth, colors, width, height, precision, colorScheme);
+                smoothColor = Math.min(smoothColor, System.nanoTime() - start);
+            }
+
+            int mismatches = 0;
+            for (int i = 0; i < expected.length; i++) {
+                if (expected[i] != actual[i]) mismatches++;
+            }
+            System.out.printf("%s\t%.2f\t%.2f\t%+.1f%%\t%.2f\t%.2f\t%d%n", FRACTAL_NAMES[fractal],
+                    integer / 1e6, smoothed / 1e6, (smoothed - integer) * 100. / integer,
+                    integerColor / 1e6, smoothColor / 1e6, mismatches);
+        }
+    }
+}
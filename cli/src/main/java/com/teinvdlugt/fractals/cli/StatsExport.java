@@ -0,0 +1,99 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.RenderStats;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects the {@link RenderStats} of the renders of the CLI and writes them as CSV, or as JSON
+ * if the file name ends with .json, so that they can be compared across versions.
+ */
+class StatsExport {
+
+    private static final String[] FRACTAL_NAMES = {"mandelbrot", "tricorn", "burning-ship", "multibrot3",
+            "multibrot4", "multibrot"};
+    private static final String[] COLUMNS = {"render", "fractal", "width", "height", "precision", "arithmetic",
+            "threads", "wall_ms", "iterate_ms", "color_ms", "upload_ms", "scale_ms", "iterations",
+            "output_pixels", "escaped_pixels", "interior_pixels", "pixels_per_second"};
+    /**
+     * Whether the values of the columns are strings, which are quoted in JSON.
+     */
+    private static final boolean[] STRING_COLUMNS = {false, true, false, false, false, true,
+            false, false, false, false, false, false, false, false, false, false, false};
+
+    private final List<String[]> rows = new ArrayList<>();
+
+    void add(int render, Viewport viewport, RenderParams params, RenderStats stats) {
+        rows.add(new String[]{
+                Integer.toString(render),
+                FRACTAL_NAMES[params.getFractal()],
+                Integer.toString(viewport.getWidth()),
+                Integer.toString(viewport.getHeight()),
+                Integer.toString(params.getPrecision()),
+                FractalEngine.arithmeticName(stats.getArithmetic()),
+                Integer.toString(stats.getThreads()),
+                millis(stats.getWallNanos()),
+                millis(stats.getIterateNanos()),
+                millis(stats.getColorNanos()),
+                millis(stats.getUploadNanos()),
+                millis(stats.getScaleNanos()),
+                Long.toString(stats.getIterations()),
+                Long.toString(stats.getOutputPixels()),
+                Long.toString(stats.getEscapedPixels()),
+                Long.toString(stats.getInteriorPixels()),
+                String.format(Locale.ROOT, "%.0f", stats.getPixelsPerSecond())});
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    void write(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            if (file.getName().endsWith(".json")) writeJson(writer);
+            else writeCsv(writer);
+        }
+    }
+
+    private void writeCsv(PrintWriter writer) {
+        writer.println(join(COLUMNS));
+        for (String[] row : rows) {
+            writer.println(join(row));
+        }
+    }
+
+    private static String join(String[] values) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(values[i]);
+        }
+        return builder.toString();
+    }
+
+    private void writeJson(PrintWriter writer) {
+        writer.println("[");
+        for (int row = 0; row < rows.size(); row++) {
+            StringBuilder builder = new StringBuilder("  {");
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) builder.append(", ");
+                builder.append('"').append(COLUMNS[i]).append("\": ");
+                if (STRING_COLUMNS[i]) builder.append('"').append(rows.get(row)[i]).append('"');
+                else builder.append(rows.get(row)[i]);
+            }
+            builder.append(row < rows.size() - 1 ? "}," : "}");
+            writer.println(builder);
+        }
+        writer.println("]");
+    }
+}
@@ -0,0 +1,93 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+/**
+ * Renders a few views with brute force and with subdivision, and prints how many pixels
+ * subdivision had to iterate and how many pixels differ from brute force. Subdivision is a
+ * heuristic, so a few pixels may differ, but if more than {@link #MAX_MISMATCHES_PER_MILLION}
+ * of the pixels of any view do, it exits with status 1. {@code ./gradlew :cli:check} runs it.
+ * <pre>
+ *     java com.teinvdlugt.fractals.cli.SubdivisionBenchmark [width] [height] [precision]
+ * </pre>
+ */
+public class SubdivisionBenchmark {
+
+    /**
+     * The most pixels per million that may differ from brute force in any view. Pixels are
+     * lost behind filaments that pass between two pixels of a border; seahorse valley has the
+     * most of these views, about 115 per million at 540 x 540 and 55 at 1080 x 1080.
+     */
+    static final int MAX_MISMATCHES_PER_MILLION = 200;
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 540;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 540;
+        int precision = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+
+        String[] names = {"default", "seahorse valley", "deep seahorse", "deep minibrot",
+                "burning ship", "burning ship armada", "tricorn", "multibrot 3",
+                "rabbit julia set", "julia set dust"};
+        Viewport[] viewports = {
+                Viewport.defaultViewport(width, height),
+                Viewport.centered(-0.745, 0.1, 0.05, width, height),
+                Viewport.centered(-0.743643887037151, 0.131825904205330, 1e-7, width, height),
+                Viewport.centered(-1.9855403715, 0, 1e-9, width, height),
+                Viewport.defaultViewport(width, height),
+                Viewport.centered(-1.755, -0.03, 0.08, width, height),
+                Viewport.defaultViewport(width, height),
+                Viewport.defaultViewport(width, height),
+                Viewport.centered(0, 0, 3.5, width, height),
+                Viewport.centered(0, 0, 3.5, width, height)
+        };
+        int[] fractals = {FractalEngine.MANDELBROT_SET, FractalEngine.MANDELBROT_SET,
+                FractalEngine.MANDELBROT_SET, FractalEngine.MANDELBROT_SET,
+                FractalEngine.BURNING_SHIP, FractalEngine.BURNING_SHIP, FractalEngine.TRICORN,
+                FractalEngine.MULTIBROT_3, FractalEngine.MANDELBROT_SET, FractalEngine.MANDELBROT_SET};
+        double[][] juliaValues = {null, null, null, null, null, null, null, null,
+                {-0.123, 0.745}, {-0.75, 0.11}};
+
+        boolean failed = false;
+        System.out.println("view\tbrute ms\tsubdivision ms\titerated\toutput\titerated %\tmismatches");
+        for (int i = 0; i < viewports.length; i++) {
+            RenderParams bruteForce = new RenderParams(fractals[i], precision, 2);
+            RenderParams subdivision = new RenderParams(fractals[i], precision, 2);
+            subdivision.setRenderMode(RenderParams.MODE_SUBDIVISION);
+            if (juliaValues[i] != null) {
+                bruteForce.setJulia(juliaValues[i][0], juliaValues[i][1]);
+                subdivision.setJulia(juliaValues[i][0], juliaValues[i][1]);
+            }
+
+            // Warm up
+            new FractalEngine().render(viewports[i], bruteForce);
+            new FractalEngine().render(viewports[i], subdivision);
+
+            long start = System.nanoTime();
+            int[] expected = new FractalEngine().render(viewports[i], bruteForce);
+            double bruteForceMillis = (System.nanoTime() - start) / 1e6;
+
+            FractalEngine engine = new FractalEngine();
+            start = System.nanoTime();
+            int[] actual = engine.render(viewports[i], subdivision);
+            double subdivisionMillis = (System.nanoTime() - start) / 1e6;
+
+            int mismatches = 0;
+            for (int j = 0; j < expected.length; j++) {
+                if (expected[j] != actual[j]) mismatches++;
+            }
+
+            long iterated = engine.getStats().getIteratedPixels();
+            long output = engine.getStats().getOutputPixels();
+            System.out.printf("%s\t%.1f\t%.1f\t%d\t%d\t%.1f%%\t%d%n", names[i], bruteForceMillis, subdivisionMillis,
+                    iterated, output, 100. * iterated / output, mismatches);
+            if ((long) mismatches * 1000000 > (long) MAX_MISMATCHES_PER_MILLION * expected.length) {
+                System.err.println(names[i] + ": " + mismatches + " of " + expected.length
+                        + " pixels differ from brute force, more than " + MAX_MISMATCHES_PER_MILLION + " per million");
+                failed = true;
+            }
+        }
+        if (failed) System.exit(1);
+    }
+}
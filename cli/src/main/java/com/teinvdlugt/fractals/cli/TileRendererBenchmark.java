@@ -0,0 +1,58 @@
+package com.teinvdlugt.fractals.cli;
+
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.RenderParams;
+import com.teinvdlugt.fractals.engine.TileRenderer;
+import com.teinvdlugt.fractals.engine.Viewport;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the default Mandelbrot view with {@link FractalEngine} on 1 up to N threads
+ * and prints the throughput for each thread count. Runs on a plain JVM:
+ * <pre>
+ *     java com.teinvdlugt.fractals.cli.TileRendererBenchmark [width] [height] [precision] [runs]
+ * </pre>
+ */
+public class TileRendererBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 540;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 540;
+        int precision = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int maxThreads = TileRenderer.availableProcessors();
+
+        Viewport viewport = Viewport.defaultViewport(width, height);
+        RenderParams params = new RenderParams(FractalEngine.MANDELBROT_SET, precision, 2);
+        int[] iterations = new int[width * height];
+
+        System.out.printf("%dx%d, precision %d, %d processors%n", width, height, precision, maxThreads);
+        System.out.println("threads\tbest ms\tMpixels/s\tspeedup");
+
+        double singleThreadMillis = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            FractalEngine engine = new FractalEngine(new TileRenderer(executor, threads, TileRenderer.DEFAULT_TILE_SIZE));
+
+            // Warm up the JIT before measuring
+            engine.render(viewport, params, iterations, null, null);
+
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                engine.render(viewport, params, iterations, null, null);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+
+            double millis = best / 1e6;
+            if (threads == 1) singleThreadMillis = millis;
+            System.out.printf("%d\t%.1f\t%.2f\t%.2fx%n", threads, millis,
+                    width * height / (millis * 1000), singleThreadMillis / millis);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * Turns iteration counts into ARGB colors (the same format as {@code android.graphics.Color}).
+ * The colors are looked up in a {@link Palette}, which is built again when a setting changes.
+ */
+public class ColorScheme {
+
+    public static final int BLACK = 0xFF000000;
+    public static final int WHITE = 0xFFFFFFFF;
+
+    private boolean useColor = true;
+    private double maxColorIterations = 400d;
+    private double colorDistribution = 30;
+    private Gradient gradient = Gradient.CLASSIC;
+    private double boundaryWidth = 1;
+    private volatile Palette palette;
+
+    public ColorScheme() {
+    }
+
+    public ColorScheme(boolean useColor, double maxColorIterations, double colorDistribution) {
+        this.useColor = useColor;
+        this.maxColorIterations = maxColorIterations;
+        this.colorDistribution = colorDistribution;
+    }
+
+    /**
+     * @param iterations The iteration count of the pixel
+     * @param precision  The precision the iteration count was calculated with; pixels
+     *                   with this many iterations are in the set and drawn black.
+     */
+    public int color(int iterations, int precision) {
+        return getPalette(precision).color(iterations);
+    }
+
+    /**
+     * Colors the pixels of a rectangular region of {@code iterations} into {@code colors}.
+     * Both arrays are laid out row by row with the given stride.
+     */
+    public void color(int[] iterations, int[] colors, int precision, int stride,
+                      int left, int top, int width, int height) {
+        getPalette(precision).color(iterations, colors, stride, left, top, width, height);
+    }
+
+    /**
+     * Colors the pixels of a rectangular region of continuous iteration counts into {@code colors}.
+     *
+     * @see Palette#color(float[], int[], int, int, int, int, int)
+     */
+    public void color(float[] smooth, int[] colors, int precision, int stride,
+                      int left, int top, int width, int height) {
+        getPalette(precision).color(smooth, colors, stride, left, top, width, height);
+    }
+
+    /**
+     * Blends the colors of a rectangular region with the color of the set by the estimated distances
+     * of the pixels to its boundary, in pixels (see {@link FractalEngine#render(Viewport, RenderParams,
+     * int[], float[], float[], TileRenderer.TileCalculator, TileRenderer.OnTileFinishedListener)}).
+     *
+     * @see Palette#shade(float[], int[], double, int, int, int, int, int)
+     */
+    public void shade(float[] distances, int[] colors, int precision, int stride,
+                      int left, int top, int width, int height) {
+        getPalette(precision).shade(distances, colors, boundaryWidth, stride, left, top, width, height);
+    }
+
+    /**
+     * Calculates the color of an iteration count without the palette.
+     *
+     * @see #color(int, int)
+     */
+    public int calculateColor(int iterations, int precision) {
+        return iterations == precision ? BLACK :
+                useColor ? resolveColor(iterations) : WHITE;
+    }
+
+    protected int resolveColor(int iterations) {
+        double value = 1 - Math.pow(1 - iterations / maxColorIterations, colorDistribution);
+
+        if (value >= 1.) return WHITE;
+
+        return gradient.color(value);
+    }
+
+    /**
+     * The palette for a precision, which is built on the calling thread if it isn't there yet.
+     */
+    public Palette getPalette(int precision) {
+        Palette palette = this.palette;
+        if (palette == null || palette.getPrecision() != precision) {
+            palette = Palette.build(this, precision);
+            this.palette = palette;
+        }
+        return palette;
+    }
+
+    /**
+     * Builds the palette for a precision on the worker threads of a renderer, if it isn't there yet.
+     *
+     * @return false if the renderer was cancelled
+     */
+    public boolean preparePalette(int precision, TileRenderer renderer) {
+        Palette palette = this.palette;
+        if (palette == null || palette.getPrecision() != precision) {
+            palette = Palette.build(this, precision, renderer);
+            if (palette == null) return false;
+            this.palette = palette;
+        }
+        return true;
+    }
+
+    public static int rgb(int red, int green, int blue) {
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    public boolean isUseColor() {
+        return useColor;
+    }
+
+    public void setUseColor(boolean useColor) {
+        this.useColor = useColor;
+        palette = null;
+    }
+
+    public double getMaxColorIterations() {
+        return maxColorIterations;
+    }
+
+    public void setMaxColorIterations(double maxColorIterations) {
+        this.maxColorIterations = maxColorIterations;
+        palette = null;
+    }
+
+    public double getColorDistribution() {
+        return colorDistribution;
+    }
+
+    public void setColorDistribution(double colorDistribution) {
+        this.colorDistribution = colorDistribution;
+        palette = null;
+    }
+
+    public Gradient getGradient() {
+        return gradient;
+    }
+
+    public void setGradient(Gradient gradient) {
+        this.gradient = gradient;
+        palette = null;
+    }
+
+    /**
+     * The distance in pixels from the boundary of the set at which {@link #shade} stops blending
+     * the colors with the color of the set.
+     */
+    public double getBoundaryWidth() {
+        return boundaryWidth;
+    }
+
+    public void setBoundaryWidth(double boundaryWidth) {
+        this.boundaryWidth = boundaryWidth;
+    }
+}
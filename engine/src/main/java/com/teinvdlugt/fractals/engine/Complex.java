@@ -0,0 +1,116 @@
+package com.teinvdlugt.fractals.engine;
+
+public class Complex {
+
+    private double real, imaginary;
+
+    public Complex(double real, double imaginary) {
+        this.real = real;
+        this.imaginary = imaginary;
+    }
+
+    public static Complex multiply(Complex c1, Complex c2) {
+        double real = c1.real * c2.real - c1.imaginary * c2.imaginary;
+        double img = c1.real * c2.imaginary + c1.imaginary * c2.real;
+        return new Complex(real, img);
+    }
+
+    public static Complex add(Complex c1, Complex c2) {
+        return new Complex(c1.real + c2.real, c1.imaginary + c2.imaginary);
+    }
+
+    public Complex set(double real, double imaginary) {
+        this.real = real;
+        this.imaginary = imaginary;
+        return this;
+    }
+
+    /**
+     * Adds {@code real + imaginary * i} to this number, without allocating.
+     *
+     * @return This number
+     */
+    public Complex add(double real, double imaginary) {
+        this.real += real;
+        this.imaginary += imaginary;
+        return this;
+    }
+
+    /**
+     * Multiplies this number by {@code real + imaginary * i}, without allocating.
+     *
+     * @return This number
+     */
+    public Complex multiplyBy(double real, double imaginary) {
+        double newReal = this.real * real - this.imaginary * imaginary;
+        this.imaginary = this.real * imaginary + this.imaginary * real;
+        this.real = newReal;
+        return this;
+    }
+
+    /**
+     * Squares this number, without allocating.
+     *
+     * @return This number
+     */
+    public Complex square() {
+        double newReal = real * real - imaginary * imaginary;
+        imaginary = 2 * real * imaginary;
+        real = newReal;
+        return this;
+    }
+
+    /**
+     * Raises this number to a non-negative integer power by repeated squaring, without allocating.
+     * The bits of the exponent are handled from the highest to the lowest, so z^2 is a single
+     * squaring and z^4 two of them, about as cheap as writing the polynomial out.
+     *
+     * @return This number
+     */
+    public Complex pow(int exponent) {
+        if (exponent == 0) return set(1, 0);
+        double baseReal = real, baseImg = imaginary;
+        for (int bit = Integer.highestOneBit(exponent) >> 1; bit != 0; bit >>= 1) {
+            square();
+            if ((exponent & bit) != 0) multiplyBy(baseReal, baseImg);
+        }
+        return this;
+    }
+
+    /**
+     * Raises this number to a real power in polar form, without allocating. The angle of the
+     * number is taken between -pi and pi, so for fractional powers the result is the principal value.
+     *
+     * @return This number
+     */
+    public Complex pow(double exponent) {
+        double modulus = Math.pow(real * real + imaginary * imaginary, exponent / 2);
+        double angle = Math.atan2(imaginary, real) * exponent;
+        real = modulus * Math.cos(angle);
+        imaginary = modulus * Math.sin(angle);
+        return this;
+    }
+
+    /**
+     * The square of the absolute value.
+     */
+    public double abs2() {
+        return real * real + imaginary * imaginary;
+    }
+
+    public double getReal() {
+        return real;
+    }
+
+    public void setReal(double real) {
+        this.real = real;
+    }
+
+    public double getImaginary() {
+        return imaginary;
+    }
+
+    public void setImaginary(double imaginary) {
+        this.imaginary = imaginary;
+    }
+}
@@ -0,0 +1,215 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * A {@link Viewport} of which the position is stored with arbitrary precision, for zooming in
+ * further than a {@code double} can resolve (a range of about 1e-13). The ranges are still
+ * doubles, which are fine down to about 1e-300: their exponent is all that gets small.
+ * <p/>
+ * Like a {@link Viewport}, a viewport that is derived from another one ({@link #strip} and
+ * {@link #zoomedIn}) has pixels on the grid of pixels of that one, so that the pixels they share
+ * have exactly the same values. It also keeps its center, which is the point the pixels of a
+ * {@link Perturbation} are relative to.
+ */
+public class DeepViewport {
+
+    /**
+     * The start of the grid of pixels and the first column and row of this viewport in it (see
+     * {@link Viewport}), and the center of the viewport this one was derived from and its
+     * column and row in this one.
+     */
+    private final BigDecimal startReal, startImg;
+    private final long left, top;
+    private final double pixelReal, pixelImg;
+    private final BigDecimal centerReal, centerImg;
+    private final double centerColumn, centerRow;
+    /**
+     * This viewport rounded to doubles, see {@link #toViewport()}.
+     */
+    private final Viewport rounded;
+    private final double rangeReal, rangeImg;
+    private final int width, height;
+
+    /**
+     * The center is the point at column {@code width / 2} and row {@code height / 2}, which
+     * is {@code rangeReal / 2} and {@code rangeImg / 2} away from the start up to the rounding
+     * of the size of the pixels.
+     */
+    public DeepViewport(BigDecimal startReal, BigDecimal startImg, double rangeReal, double rangeImg, int width, int height) {
+        this(startReal, startImg, 0, 0, rangeReal / width, rangeImg / height,
+                startReal.add(new BigDecimal(rangeReal / width / 2).multiply(BigDecimal.valueOf(width))),
+                startImg.subtract(new BigDecimal(rangeImg / height / 2).multiply(BigDecimal.valueOf(height))),
+                width / 2.0, height / 2.0,
+                new Viewport(startReal.doubleValue(), startImg.doubleValue(), rangeReal, rangeImg, width, height));
+    }
+
+    /**
+     * @param rounded This viewport rounded to doubles, which also has its ranges and size
+     */
+    private DeepViewport(BigDecimal startReal, BigDecimal startImg, long left, long top, double pixelReal,
+                         double pixelImg, BigDecimal centerReal, BigDecimal centerImg, double centerColumn,
+                         double centerRow, Viewport rounded) {
+        this.startReal = startReal;
+        this.startImg = startImg;
+        this.left = left;
+        this.top = top;
+        this.pixelReal = pixelReal;
+        this.pixelImg = pixelImg;
+        this.centerReal = centerReal;
+        this.centerImg = centerImg;
+        this.centerColumn = centerColumn;
+        this.centerRow = centerRow;
+        this.rounded = rounded;
+        this.rangeReal = rounded.getRangeReal();
+        this.rangeImg = rounded.getRangeImg();
+        this.width = rounded.getWidth();
+        this.height = rounded.getHeight();
+    }
+
+    /**
+     * A viewport around a center point, with square pixels. The center is exactly the point
+     * of {@link #getCenterReal()}, and stays so in the viewports {@link #zoomedIn} from it.
+     */
+    public static DeepViewport centered(BigDecimal centerReal, BigDecimal centerImg, double rangeReal, int width, int height) {
+        double rangeImg = rangeReal * height / width;
+        // The start is half the pixels away from the center, not half the range, which is
+        // a bit different because the size of the pixels is rounded
+        BigDecimal halfWidth = new BigDecimal(rangeReal / width / 2).multiply(BigDecimal.valueOf(width));
+        BigDecimal halfHeight = new BigDecimal(rangeImg / height / 2).multiply(BigDecimal.valueOf(height));
+        return new DeepViewport(centerReal.subtract(halfWidth), centerImg.add(halfHeight),
+                rangeReal, rangeImg, width, height);
+    }
+
+    /**
+     * Enough significant digits to tell the pixels apart, with some to spare for the
+     * rounding errors that the iterations accumulate.
+     */
+    public MathContext getMathContext() {
+        double pixelSize = Math.min(pixelReal, pixelImg);
+        return new MathContext(Math.max(20, (int) Math.ceil(-Math.log10(pixelSize)) + 12));
+    }
+
+    /**
+     * The center of the viewport, or of the viewport that this one was derived from.
+     */
+    public BigDecimal getCenterReal() {
+        return centerReal;
+    }
+
+    /**
+     * @see #getCenterReal()
+     */
+    public BigDecimal getCenterImg() {
+        return centerImg;
+    }
+
+    /**
+     * The real distance between the {@link #getCenterReal center} and a column of pixels.
+     */
+    public double deltaReal(int column) {
+        return pixelReal * (column - centerColumn);
+    }
+
+    /**
+     * The imaginary distance between the {@link #getCenterImg center} and a row of pixels.
+     */
+    public double deltaImg(int row) {
+        return pixelImg * (centerRow - row);
+    }
+
+    /**
+     * Writes the real values of the columns as double-doubles: {@code hi[i] + lo[i]} is the
+     * value of column {@code i}.
+     */
+    void realValues(double[] hi, double[] lo) {
+        DoubleDouble.coordinates(startReal, pixelReal, left, hi, lo);
+    }
+
+    /**
+     * Writes the imaginary values of the rows as double-doubles.
+     *
+     * @see #realValues(double[], double[])
+     */
+    void imaginaryValues(double[] hi, double[] lo) {
+        DoubleDouble.coordinates(startImg, -pixelImg, top, hi, lo);
+    }
+
+    /**
+     * A band of rows of this viewport, with the same pixels.
+     *
+     * @see Viewport#strip(int, int)
+     */
+    public DeepViewport strip(int top, int rows) {
+        return new DeepViewport(startReal, startImg, left, this.top + top, pixelReal, pixelImg,
+                centerReal, centerImg, centerColumn, centerRow - top, rounded.strip(top, rows));
+    }
+
+    /**
+     * The center of this viewport, zoomed in 2x, with the same number of pixels. If the width
+     * and the height are multiples of 4, the pixels in its even columns and rows are exactly
+     * the pixels of the center of this one, so it can be {@link FractalEngine#refine refined}
+     * from them with the same result as rendering it all.
+     * <p/>
+     * Its grid starts at its top left pixel, which is exactly on the grid of this one, so the
+     * columns and rows are counted from 0 however often it is zoomed in.
+     */
+    public DeepViewport zoomedIn() {
+        double pixelReal = this.pixelReal / 2, pixelImg = this.pixelImg / 2;
+        BigDecimal startReal = this.startReal.add(
+                new BigDecimal(pixelReal).multiply(BigDecimal.valueOf(2 * left + width / 2)));
+        BigDecimal startImg = this.startImg.subtract(
+                new BigDecimal(pixelImg).multiply(BigDecimal.valueOf(2 * top + height / 2)));
+        return new DeepViewport(startReal, startImg, 0, 0, pixelReal, pixelImg, centerReal, centerImg,
+                2 * centerColumn - width / 2.0, 2 * centerRow - height / 2.0, rounded.zoomedIn());
+    }
+
+    /**
+     * Whether all pixels of a viewport are pixels of this one, like those of a {@link #strip}.
+     */
+    public boolean contains(DeepViewport viewport) {
+        return viewport.pixelReal == pixelReal && viewport.pixelImg == pixelImg
+                && viewport.startReal.compareTo(startReal) == 0 && viewport.startImg.compareTo(startImg) == 0
+                && viewport.left >= left && viewport.left + viewport.width <= left + width
+                && viewport.top >= top && viewport.top + viewport.height <= top + height;
+    }
+
+    /**
+     * This viewport with its position rounded to doubles. The viewports derived from it are
+     * rounded on the same grid, so their shared pixels have the same values in doubles too.
+     */
+    public Viewport toViewport() {
+        return rounded;
+    }
+
+    /**
+     * The top left pixel.
+     */
+    public BigDecimal getStartReal() {
+        return left == 0 ? startReal : startReal.add(new BigDecimal(pixelReal).multiply(BigDecimal.valueOf(left)));
+    }
+
+    /**
+     * @see #getStartReal()
+     */
+    public BigDecimal getStartImg() {
+        return top == 0 ? startImg : startImg.subtract(new BigDecimal(pixelImg).multiply(BigDecimal.valueOf(top)));
+    }
+
+    public double getRangeReal() {
+        return rangeReal;
+    }
+
+    public double getRangeImg() {
+        return rangeImg;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,306 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the blocks of an {@link IterationCache} in a memory-mapped file, so that they survive
+ * the process and a viewport that was seen before (like the default one) can be read instead
+ * of iterated. The headless renderer can fill a file in advance.
+ * <p/>
+ * The file has a fixed number of slots, one per block. A block is stored with 16 bits per
+ * point, so blocks of renders with a precision of {@link #MAX_PRECISION} or more aren't
+ * stored. When all slots are taken, the least recently used block makes room. The file is
+ * little-endian on every platform, so it can be copied between machines.
+ * <pre>
+ *     header: magic, version, block size, slot count (4 ints, padded to 16 bytes)
+ *     index:  slot count entries of {@link #ENTRY_BYTES} bytes, see {@link #writeEntry}
+ *     data:   slot count blocks of BLOCK_SIZE * BLOCK_SIZE chars
+ * </pre>
+ */
+public class DiskBlockStore implements Closeable {
+
+    private static final int MAGIC = 0x46524331; // "FRC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 96;
+    private static final int POINTS = IterationCache.BLOCK_SIZE * IterationCache.BLOCK_SIZE;
+    private static final int BLOCK_BYTES = POINTS * 2;
+    /**
+     * Counts are stored as chars, and 0xFFFF stands for a point that wasn't calculated.
+     */
+    public static final int MAX_PRECISION = 0xFFFF;
+    private static final char EMPTY = 0xFFFF;
+    private static final int FREE = -1;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    /**
+     * The slots of the stored blocks, the least recently used one first.
+     */
+    private final LinkedHashMap<IterationCache.BlockKey, Integer> slots =
+            new LinkedHashMap<IterationCache.BlockKey, Integer>(16, .75f, true);
+    private final List<Integer> freeSlots = new ArrayList<>();
+    private final Map<IterationCache.Level, Integer> levels = new HashMap<>();
+    private final char[] scratch = new char[POINTS];
+    private long clock;
+    private long reads, writes, evictions;
+
+    private DiskBlockStore(RandomAccessFile file, MappedByteBuffer buffer, int slotCount) {
+        this.file = file;
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * Opens the store in a file, or creates it. A file that was made with a different size or
+     * version is emptied.
+     *
+     * @param maxBytes The size of the file, which determines the number of blocks it can hold
+     */
+    public static DiskBlockStore open(File path, long maxBytes) throws IOException {
+        int slotCount = (int) Math.min(Integer.MAX_VALUE / (ENTRY_BYTES + BLOCK_BYTES),
+                Math.max(1, (maxBytes - HEADER_BYTES) / (ENTRY_BYTES + BLOCK_BYTES)));
+        long size = HEADER_BYTES + (long) slotCount * (ENTRY_BYTES + BLOCK_BYTES);
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            boolean fresh = file.length() != size;
+            file.setLength(size);
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            DiskBlockStore store = new DiskBlockStore(file, buffer, slotCount);
+            if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getInt(8) != IterationCache.BLOCK_SIZE || buffer.getInt(12) != slotCount) {
+                store.format();
+            } else {
+                store.readIndex();
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void format() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, IterationCache.BLOCK_SIZE);
+        buffer.putInt(12, slotCount);
+        for (int slot = 0; slot < slotCount; slot++) {
+            buffer.putInt(entryOffset(slot), FREE);
+            freeSlots.add(slot);
+        }
+    }
+
+    private void readIndex() {
+        final long[] lastUsed = new long[slotCount];
+        List<Integer> used = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (buffer.getInt(entryOffset(slot)) == FREE) {
+                freeSlots.add(slot);
+            } else {
+                used.add(slot);
+                lastUsed[slot] = buffer.getLong(entryOffset(slot) + 80);
+                clock = Math.max(clock, lastUsed[slot] + 1);
+            }
+        }
+        Collections.sort(used, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return lastUsed[a] < lastUsed[b] ? -1 : lastUsed[a] == lastUsed[b] ? 0 : 1;
+            }
+        });
+        for (int slot : used) {
+            IterationCache.BlockKey key = readKey(slot);
+            slots.put(key, slot);
+            addLevel(key.level);
+        }
+    }
+
+    /**
+     * The counts of a stored block, or null if it isn't stored.
+     */
+    synchronized int[] read(IterationCache.Level level, long blockX, long blockY) {
+        Integer slot = slots.get(new IterationCache.BlockKey(level, blockX, blockY));
+        if (slot == null) return null;
+        touch(slot);
+        ByteBuffer data = slice(slot);
+        data.asCharBuffer().get(scratch);
+        int[] counts = new int[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            counts[i] = scratch[i] == EMPTY ? -1 : scratch[i];
+        }
+        reads++;
+        return counts;
+    }
+
+    /**
+     * Stores a block, in place of the least recently used one if the file is full.
+     *
+     * @param counts The counts of the block, -1 for points that weren't calculated
+     * @return false if the block wasn't stored, because its precision is too high
+     */
+    synchronized boolean write(IterationCache.Level level, long blockX, long blockY, int[] counts) {
+        if (level.precision >= MAX_PRECISION) return false;
+        IterationCache.BlockKey key = new IterationCache.BlockKey(level, blockX, blockY);
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            if (freeSlots.isEmpty()) {
+                Iterator<Map.Entry<IterationCache.BlockKey, Integer>> eldest = slots.entrySet().iterator();
+                Map.Entry<IterationCache.BlockKey, Integer> entry = eldest.next();
+                eldest.remove();
+                removeLevel(entry.getKey().level);
+                freeSlots.add(entry.getValue());
+                evictions++;
+            }
+            slot = freeSlots.remove(freeSlots.size() - 1);
+            // Until the new entry is written, the slot doesn't belong to the block it held before either
+            buffer.putInt(entryOffset(slot), FREE);
+            slots.put(key, slot);
+            addLevel(level);
+        }
+        for (int i = 0; i < POINTS; i++) {
+            scratch[i] = counts[i] < 0 ? EMPTY : (char) counts[i];
+        }
+        slice(slot).asCharBuffer().put(scratch);
+        // The entry is written after the data, so a slot never has the key of a block it doesn't hold
+        writeEntry(slot, key);
+        touch(slot);
+        writes++;
+        return true;
+    }
+
+    /**
+     * The levels of which blocks are stored, so that new viewports can be snapped to them.
+     */
+    synchronized Set<IterationCache.Level> levels() {
+        return new HashSet<>(levels.keySet());
+    }
+
+    /**
+     * Index entry of a slot:
+     * <pre>
+     *      0 int fractal, or FREE    4 int precision    8 int julia    12 unused
+     *     16 double escapeValue     24 double exponent     32 double juliaReal   40 double juliaImg
+     *     48 double stepReal        56 double stepImg      64 long blockX        72 long blockY
+     *     80 long lastUsed          88 unused
+     * </pre>
+     */
+    private void writeEntry(int slot, IterationCache.BlockKey key) {
+        int offset = entryOffset(slot);
+        IterationCache.Level level = key.level;
+        buffer.putInt(offset, level.fractal);
+        buffer.putInt(offset + 4, level.precision);
+        buffer.putInt(offset + 8, level.julia ? 1 : 0);
+        buffer.putDouble(offset + 16, level.escapeValue);
+        buffer.putDouble(offset + 24, level.exponent);
+        buffer.putDouble(offset + 32, level.juliaReal);
+        buffer.putDouble(offset + 40, level.juliaImg);
+        buffer.putDouble(offset + 48, level.stepReal);
+        buffer.putDouble(offset + 56, level.stepImg);
+        buffer.putLong(offset + 64, key.blockX);
+        buffer.putLong(offset + 72, key.blockY);
+    }
+
+    private IterationCache.BlockKey readKey(int slot) {
+        int offset = entryOffset(slot);
+        IterationCache.Level level = new IterationCache.Level(buffer.getInt(offset), buffer.getInt(offset + 4),
+                buffer.getDouble(offset + 16), buffer.getDouble(offset + 24), buffer.getInt(offset + 8) != 0,
+                buffer.getDouble(offset + 32), buffer.getDouble(offset + 40),
+                buffer.getDouble(offset + 48), buffer.getDouble(offset + 56));
+        return new IterationCache.BlockKey(level, buffer.getLong(offset + 64), buffer.getLong(offset + 72));
+    }
+
+    private void touch(int slot) {
+        buffer.putLong(entryOffset(slot) + 80, clock++);
+    }
+
+    private ByteBuffer slice(int slot) {
+        ByteBuffer data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int offset = HEADER_BYTES + slotCount * ENTRY_BYTES + slot * BLOCK_BYTES;
+        data.position(offset);
+        data.limit(offset + BLOCK_BYTES);
+        return data.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int entryOffset(int slot) {
+        return HEADER_BYTES + slot * ENTRY_BYTES;
+    }
+
+    private void addLevel(IterationCache.Level level) {
+        Integer count = levels.get(level);
+        levels.put(level, count == null ? 1 : count + 1);
+    }
+
+    private void removeLevel(IterationCache.Level level) {
+        Integer count = levels.get(level);
+        if (count == null || count <= 1) levels.remove(level);
+        else levels.put(level, count - 1);
+    }
+
+    /**
+     * Forgets all blocks.
+     */
+    public synchronized void clear() {
+        slots.clear();
+        levels.clear();
+        freeSlots.clear();
+        format();
+    }
+
+    /**
+     * Writes the changes to the storage device. Without it they are written whenever the
+     * operating system decides to, which is enough to survive the process but not a crash
+     * of the device.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    public synchronized int getBlockCount() {
+        return slots.size();
+    }
+
+    public int getCapacity() {
+        return slotCount;
+    }
+
+    /**
+     * The number of blocks that were read from the file, since it was opened.
+     */
+    public synchronized long getReads() {
+        return reads;
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,343 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.math.BigDecimal;
+
+/**
+ * Deep zoom rendering by iterating every pixel with double-double numbers: unevaluated sums
+ * {@code hi + lo} of two doubles, where lo holds the rounding error of hi. They have about
+ * 32 significant digits, enough for pixels down to about 1e-28 (deeper pixels are rendered
+ * with them anyway, and start to look blocky).
+ * <p/>
+ * It is about ten times slower than iterating with doubles, and slower than {@link Perturbation}
+ * for the Mandelbrot set, but it works for every fractal with a fixed formula and for
+ * Julia sets. The arithmetic follows the "sloppy" double-double algorithms of Dekker and Knuth,
+ * without fused multiply-add, which Java 7 doesn't have.
+ */
+public class DoubleDouble {
+
+    /**
+     * 2^27 + 1, splits a double into two halves of 26 bits that can be multiplied exactly.
+     */
+    private static final double SPLITTER = 134217729;
+
+    private final int fractal, precision;
+    private final double escapeValue;
+    private final boolean julia;
+    private final double juliaReal, juliaImg;
+
+    /**
+     * The coordinates of the columns and rows of pixels.
+     */
+    private final double[] realHi, realLo, imgHi, imgLo;
+
+    /**
+     * @param params The fractal has to be one with a fixed formula, not {@link FractalEngine#MULTIBROT}
+     */
+    public DoubleDouble(DeepViewport viewport, RenderParams params) {
+        if (!supports(params)) {
+            throw new IllegalArgumentException("No double-double iteration for fractal " + params.getFractal());
+        }
+        this.fractal = params.getFractal();
+        this.precision = params.getPrecision();
+        this.escapeValue = params.getEscapeValue();
+        this.julia = params.isJulia();
+        this.juliaReal = params.getJuliaReal();
+        this.juliaImg = params.getJuliaImg();
+
+        realHi = new double[viewport.getWidth()];
+        realLo = new double[viewport.getWidth()];
+        viewport.realValues(realHi, realLo);
+        imgHi = new double[viewport.getHeight()];
+        imgLo = new double[viewport.getHeight()];
+        viewport.imaginaryValues(imgHi, imgLo);
+    }
+
+    /**
+     * Whether the params can be rendered with double-doubles.
+     */
+    public static boolean supports(RenderParams params) {
+        return params.getFractal() >= FractalEngine.MANDELBROT_SET && params.getFractal() <= FractalEngine.MULTIBROT_4;
+    }
+
+    /**
+     * {@code hi[i] + lo[i] = start + (first + i) * step}, rounded to the nearest double-double. The
+     * values are exact before they are rounded, so a pixel gets the same double-double in every
+     * viewport that it is in, whatever the start of the grid of that viewport.
+     */
+    static void coordinates(BigDecimal start, double step, long first, double[] hi, double[] lo) {
+        BigDecimal bigStep = new BigDecimal(step);
+        BigDecimal value = start.add(bigStep.multiply(BigDecimal.valueOf(first)));
+        for (int i = 0; i < hi.length; i++) {
+            hi[i] = value.doubleValue();
+            lo[i] = value.subtract(new BigDecimal(hi[i])).doubleValue();
+            value = value.add(bigStep);
+        }
+    }
+
+    /**
+     * @param column The column of the pixel in the viewport
+     * @param row    The row of the pixel in the viewport
+     * @return The number of iterations after which the pixel escaped, or {@code precision}
+     */
+    public int iterate(int column, int row) {
+        double zRealHi, zRealLo, zImgHi, zImgLo, cRealHi, cRealLo, cImgHi, cImgLo;
+        if (julia) {
+            zRealHi = realHi[column];
+            zRealLo = realLo[column];
+            zImgHi = imgHi[row];
+            zImgLo = imgLo[row];
+            cRealHi = juliaReal;
+            cImgHi = juliaImg;
+            cRealLo = cImgLo = 0;
+        } else {
+            zRealHi = zRealLo = zImgHi = zImgLo = 0;
+            cRealHi = realHi[column];
+            cRealLo = realLo[column];
+            cImgHi = imgHi[row];
+            cImgLo = imgLo[row];
+        }
+
+        // The formula is chosen once per pixel; every fractal has its own loop
+        switch (fractal) {
+            case FractalEngine.TRICORN:
+                return iterateTricorn(zRealHi, zRealLo, zImgHi, zImgLo, cRealHi, cRealLo, cImgHi, cImgLo);
+            case FractalEngine.BURNING_SHIP:
+                return iterateBurningShip(zRealHi, zRealLo, zImgHi, zImgLo, cRealHi, cRealLo, cImgHi, cImgLo);
+            case FractalEngine.MULTIBROT_3:
+                return iterateMultibrot3(zRealHi, zRealLo, zImgHi, zImgLo, cRealHi, cRealLo, cImgHi, cImgLo);
+            case FractalEngine.MULTIBROT_4:
+                return iterateMultibrot4(zRealHi, zRealLo, zImgHi, zImgLo, cRealHi, cRealLo, cImgHi, cImgLo);
+            default:
+                return iterateMandelbrot(zRealHi, zRealLo, zImgHi, zImgLo, cRealHi, cRealLo, cImgHi, cImgLo);
+        }
+    }
+
+    /**
+     * {@code z^2 + c}
+     */
+    private int iterateMandelbrot(double zRealHi, double zRealLo, double zImgHi, double zImgLo,
+                                  double cRealHi, double cRealLo, double cImgHi, double cImgLo) {
+        double escape2 = escapeValue * escapeValue;
+        int iterations = 0;
+        while (iterations < precision) {
+            // x^2, y^2 and xy, not normalised
+            double xx = zRealHi * zRealHi, xxLo = productError(zRealHi, zRealHi, xx) + 2 * zRealHi * zRealLo;
+            double yy = zImgHi * zImgHi, yyLo = productError(zImgHi, zImgHi, yy) + 2 * zImgHi * zImgLo;
+            if (xx + yy > escape2) break;
+            double xy = zRealHi * zImgHi, xyLo = productError(zRealHi, zImgHi, xy) + zRealHi * zImgLo + zRealLo * zImgHi;
+
+            // w = z^2 = x^2 - y^2 + 2xy i
+            double s = xx - yy, sLo = sumError(xx, -yy, s) + xxLo - yyLo;
+            double wRealHi = s + sLo, wRealLo = sLo - (wRealHi - s);
+            s = 2 * xy;
+            sLo = 2 * xyLo;
+            double wImgHi = s + sLo, wImgLo = sLo - (wImgHi - s);
+
+            // z = w + c
+            s = wRealHi + cRealHi;
+            sLo = sumError(wRealHi, cRealHi, s) + wRealLo + cRealLo;
+            zRealHi = s + sLo;
+            zRealLo = sLo - (zRealHi - s);
+            s = wImgHi + cImgHi;
+            sLo = sumError(wImgHi, cImgHi, s) + wImgLo + cImgLo;
+            zImgHi = s + sLo;
+            zImgLo = sLo - (zImgHi - s);
+            iterations++;
+        }
+        return iterations;
+    }
+
+    /**
+     * {@code conj(z)^2 + c}
+     */
+    private int iterateTricorn(double zRealHi, double zRealLo, double zImgHi, double zImgLo,
+                               double cRealHi, double cRealLo, double cImgHi, double cImgLo) {
+        double escape2 = escapeValue * escapeValue;
+        int iterations = 0;
+        while (iterations < precision) {
+            // x^2, y^2 and xy, not normalised
+            double xx = zRealHi * zRealHi, xxLo = productError(zRealHi, zRealHi, xx) + 2 * zRealHi * zRealLo;
+            double yy = zImgHi * zImgHi, yyLo = productError(zImgHi, zImgHi, yy) + 2 * zImgHi * zImgLo;
+            if (xx + yy > escape2) break;
+            double xy = zRealHi * zImgHi, xyLo = productError(zRealHi, zImgHi, xy) + zRealHi * zImgLo + zRealLo * zImgHi;
+
+            // w = z^2 = x^2 - y^2 + 2xy i
+            double s = xx - yy, sLo = sumError(xx, -yy, s) + xxLo - yyLo;
+            double wRealHi = s + sLo, wRealLo = sLo - (wRealHi - s);
+            s = 2 * xy;
+            sLo = 2 * xyLo;
+            double wImgHi = s + sLo, wImgLo = sLo - (wImgHi - s);
+
+            // conj(z)^2 = conj(z^2)
+            wImgHi = -wImgHi;
+            wImgLo = -wImgLo;
+
+            // z = w + c
+            s = wRealHi + cRealHi;
+            sLo = sumError(wRealHi, cRealHi, s) + wRealLo + cRealLo;
+            zRealHi = s + sLo;
+            zRealLo = sLo - (zRealHi - s);
+            s = wImgHi + cImgHi;
+            sLo = sumError(wImgHi, cImgHi, s) + wImgLo + cImgLo;
+            zImgHi = s + sLo;
+            zImgLo = sLo - (zImgHi - s);
+            iterations++;
+        }
+        return iterations;
+    }
+
+    /**
+     * {@code (|Re z| + i |Im z|)^2 + c}
+     */
+    private int iterateBurningShip(double zRealHi, double zRealLo, double zImgHi, double zImgLo,
+                                   double cRealHi, double cRealLo, double cImgHi, double cImgLo) {
+        double escape2 = escapeValue * escapeValue;
+        int iterations = 0;
+        while (iterations < precision) {
+            // x^2, y^2 and xy, not normalised
+            double xx = zRealHi * zRealHi, xxLo = productError(zRealHi, zRealHi, xx) + 2 * zRealHi * zRealLo;
+            double yy = zImgHi * zImgHi, yyLo = productError(zImgHi, zImgHi, yy) + 2 * zImgHi * zImgLo;
+            if (xx + yy > escape2) break;
+            double xy = zRealHi * zImgHi, xyLo = productError(zRealHi, zImgHi, xy) + zRealHi * zImgLo + zRealLo * zImgHi;
+
+            // w = z^2 = x^2 - y^2 + 2xy i
+            double s = xx - yy, sLo = sumError(xx, -yy, s) + xxLo - yyLo;
+            double wRealHi = s + sLo, wRealLo = sLo - (wRealHi - s);
+            s = 2 * xy;
+            sLo = 2 * xyLo;
+            double wImgHi = s + sLo, wImgLo = sLo - (wImgHi - s);
+
+            // (|x| + i |y|)^2 = x^2 - y^2 + 2|xy| i
+            if (wImgHi < 0) {
+                wImgHi = -wImgHi;
+                wImgLo = -wImgLo;
+            }
+
+            // z = w + c
+            s = wRealHi + cRealHi;
+            sLo = sumError(wRealHi, cRealHi, s) + wRealLo + cRealLo;
+            zRealHi = s + sLo;
+            zRealLo = sLo - (zRealHi - s);
+            s = wImgHi + cImgHi;
+            sLo = sumError(wImgHi, cImgHi, s) + wImgLo + cImgLo;
+            zImgHi = s + sLo;
+            zImgLo = sLo - (zImgHi - s);
+            iterations++;
+        }
+        return iterations;
+    }
+
+    /**
+     * {@code z^3 + c}
+     */
+    private int iterateMultibrot3(double zRealHi, double zRealLo, double zImgHi, double zImgLo,
+                                  double cRealHi, double cRealLo, double cImgHi, double cImgLo) {
+        double escape2 = escapeValue * escapeValue;
+        int iterations = 0;
+        while (iterations < precision) {
+            // x^2, y^2 and xy, not normalised
+            double xx = zRealHi * zRealHi, xxLo = productError(zRealHi, zRealHi, xx) + 2 * zRealHi * zRealLo;
+            double yy = zImgHi * zImgHi, yyLo = productError(zImgHi, zImgHi, yy) + 2 * zImgHi * zImgLo;
+            if (xx + yy > escape2) break;
+            double xy = zRealHi * zImgHi, xyLo = productError(zRealHi, zImgHi, xy) + zRealHi * zImgLo + zRealLo * zImgHi;
+
+            // w = z^2 = x^2 - y^2 + 2xy i
+            double s = xx - yy, sLo = sumError(xx, -yy, s) + xxLo - yyLo;
+            double wRealHi = s + sLo, wRealLo = sLo - (wRealHi - s);
+            s = 2 * xy;
+            sLo = 2 * xyLo;
+            double wImgHi = s + sLo, wImgLo = sLo - (wImgHi - s);
+
+            // w = z^3 = z^2 * z
+            double rr = wRealHi * zRealHi, rrLo = productError(wRealHi, zRealHi, rr) + wRealHi * zRealLo + wRealLo * zRealHi;
+            double ii = wImgHi * zImgHi, iiLo = productError(wImgHi, zImgHi, ii) + wImgHi * zImgLo + wImgLo * zImgHi;
+            double ri = wRealHi * zImgHi, riLo = productError(wRealHi, zImgHi, ri) + wRealHi * zImgLo + wRealLo * zImgHi;
+            double ir = wImgHi * zRealHi, irLo = productError(wImgHi, zRealHi, ir) + wImgHi * zRealLo + wImgLo * zRealHi;
+            s = rr - ii;
+            sLo = sumError(rr, -ii, s) + rrLo - iiLo;
+            wRealHi = s + sLo;
+            wRealLo = sLo - (wRealHi - s);
+            s = ri + ir;
+            sLo = sumError(ri, ir, s) + riLo + irLo;
+            wImgHi = s + sLo;
+            wImgLo = sLo - (wImgHi - s);
+
+            // z = w + c
+            s = wRealHi + cRealHi;
+            sLo = sumError(wRealHi, cRealHi, s) + wRealLo + cRealLo;
+            zRealHi = s + sLo;
+            zRealLo = sLo - (zRealHi - s);
+            s = wImgHi + cImgHi;
+            sLo = sumError(wImgHi, cImgHi, s) + wImgLo + cImgLo;
+            zImgHi = s + sLo;
+            zImgLo = sLo - (zImgHi - s);
+            iterations++;
+        }
+        return iterations;
+    }
+
+    /**
+     * {@code z^4 + c}
+     */
+    private int iterateMultibrot4(double zRealHi, double zRealLo, double zImgHi, double zImgLo,
+                                  double cRealHi, double cRealLo, double cImgHi, double cImgLo) {
+        double escape2 = escapeValue * escapeValue;
+        int iterations = 0;
+        while (iterations < precision) {
+            // x^2, y^2 and xy, not normalised
+            double xx = zRealHi * zRealHi, xxLo = productError(zRealHi, zRealHi, xx) + 2 * zRealHi * zRealLo;
+            double yy = zImgHi * zImgHi, yyLo = productError(zImgHi, zImgHi, yy) + 2 * zImgHi * zImgLo;
+            if (xx + yy > escape2) break;
+            double xy = zRealHi * zImgHi, xyLo = productError(zRealHi, zImgHi, xy) + zRealHi * zImgLo + zRealLo * zImgHi;
+
+            // w = z^2 = x^2 - y^2 + 2xy i
+            double s = xx - yy, sLo = sumError(xx, -yy, s) + xxLo - yyLo;
+            double wRealHi = s + sLo, wRealLo = sLo - (wRealHi - s);
+            s = 2 * xy;
+            sLo = 2 * xyLo;
+            double wImgHi = s + sLo, wImgLo = sLo - (wImgHi - s);
+
+            // w = z^4 = (z^2)^2
+            double rr = wRealHi * wRealHi, rrLo = productError(wRealHi, wRealHi, rr) + 2 * wRealHi * wRealLo;
+            double ii = wImgHi * wImgHi, iiLo = productError(wImgHi, wImgHi, ii) + 2 * wImgHi * wImgLo;
+            double ri = wRealHi * wImgHi, riLo = productError(wRealHi, wImgHi, ri) + wRealHi * wImgLo + wRealLo * wImgHi;
+            s = rr - ii;
+            sLo = sumError(rr, -ii, s) + rrLo - iiLo;
+            wRealHi = s + sLo;
+            wRealLo = sLo - (wRealHi - s);
+            s = 2 * ri;
+            sLo = 2 * riLo;
+            wImgHi = s + sLo;
+            wImgLo = sLo - (wImgHi - s);
+
+            // z = w + c
+            s = wRealHi + cRealHi;
+            sLo = sumError(wRealHi, cRealHi, s) + wRealLo + cRealLo;
+            zRealHi = s + sLo;
+            zRealLo = sLo - (zRealHi - s);
+            s = wImgHi + cImgHi;
+            sLo = sumError(wImgHi, cImgHi, s) + wImgLo + cImgLo;
+            zImgHi = s + sLo;
+            zImgLo = sLo - (zImgHi - s);
+            iterations++;
+        }
+        return iterations;
+    }
+
+    /**
+     * The rounding error of {@code s = a + b}, so that a + b = s + error exactly (Knuth's TwoSum).
+     */
+    private static double sumError(double a, double b, double s) {
+        double bVirtual = s - a;
+        return (a - (s - bVirtual)) + (b - bVirtual);
+    }
+
+    /**
+     * The rounding error of {@code p = a * b}, so that a * b = p + error exactly (Dekker's TwoProduct).
+     */
+    private static double productError(double a, double b, double p) {
+        double aSplit = SPLITTER * a, aHi = aSplit - (aSplit - a), aLo = a - aHi;
+        double bSplit = SPLITTER * b, bHi = bSplit - (bSplit - b), bLo = b - bHi;
+        return ((aHi * bHi - p) + aHi * bLo + aLo * bHi) + aLo * bLo;
+    }
+}
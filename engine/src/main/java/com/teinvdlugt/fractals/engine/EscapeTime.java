@@ -0,0 +1,212 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * The escape-time iteration of the different fractals, switching on the fractal inside the
+ * loop. The engine renders with the specialised {@link FractalKernel}s instead; these methods
+ * are kept as the reference that the kernels are checked and benchmarked against.
+ */
+public class EscapeTime {
+
+    /**
+     * Returned by {@link #iterateWithInteriorDetection} for points that were found to be
+     * in the set before {@code precision} iterations were done.
+     */
+    public static final int INTERIOR = -1;
+
+    /**
+     * How close the orbit has to come back to an earlier point to be considered periodic.
+     */
+    static final double PERIODICITY_EPSILON = 1e-14;
+
+    private EscapeTime() {
+    }
+
+    /**
+     * Iterates the point {@code cReal + cImg * i}, starting at z = 0.
+     *
+     * @return The number of iterations after which |z| exceeded {@code escapeValue},
+     * or {@code precision} if it didn't escape.
+     */
+    public static int iterate(int fractal, double cReal, double cImg, double escapeValue, int precision) {
+        double zReal = 0, zImg = 0;
+
+        int iterations = 0;
+        switch (fractal) {
+            case FractalEngine.MANDELBROT_SET:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                    zImg = 2 * zReal * zImg + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+                }
+                break;
+            case FractalEngine.BURNING_SHIP:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                    zImg = Math.abs(2 * zReal * zImg) + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+                }
+                break;
+            case FractalEngine.TRICORN:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                    zImg = 2 * zReal * -zImg + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+                }
+                break;
+            case FractalEngine.MULTIBROT_3:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    double zRealNew = zReal * zReal * zReal - zImg * zImg * zReal - 2 * zImg * zImg * zReal + cReal;
+                    zImg = zReal * zReal * zImg - zImg * zImg * zImg + 2 * zReal * zReal * zImg + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+                }
+                break;
+            case FractalEngine.MULTIBROT_4:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    // (zReal*zReal*zReal - zImg*zImg*zReal - 2*zImg*zImg*zReal + i*zReal*zReal*zImg - i*zImg*zImg*zImg + i*2*zReal*zReal*zImg)*
+                    //                                      (zReal + i*zImg) =
+                    // zReal^4 - zImg^2*zReal^2 - 2*zImg^2*zReal^2 - zReal^2*zImg^2 + zImg^4 - 2*zReal^2*zImg^2
+                    //                          + i*zImg*zReal^3 - i*zImg^3*zReal - i*2*zImg^3*zReal + i*zReal^3*zImg - i*zImg^3*zReal + i*2*zReal^3*zImg =
+                    // zReal^2*zImg^2*(-1 - 2 - 1 - 2) + zReal^4 + zImg^4 +
+                    //                          + i*(zImg^3*zReal*-4 + zImg*zReal^3*4)
+
+                    double zRealNew = -6 * zReal * zReal * zImg * zImg + zReal * zReal * zReal * zReal + zImg * zImg * zImg * zImg + cReal;
+                    zImg = -4 * zImg * zImg * zImg * zReal + 4 * zReal * zReal * zReal * zImg + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+                }
+                break;
+        }
+
+        return iterations;
+    }
+
+    /**
+     * Like {@link #iterate}, but returns {@link #INTERIOR} as soon as the point is known
+     * not to escape. For the Mandelbrot set the main cardioid and the period-2 bulb are
+     * recognised without iterating at all. For every fractal, the orbit is checked for
+     * periodicity with Brent's method: z is saved at iterations 1, 2, 4, 8, ... and when
+     * the orbit comes back to the saved point it is stuck in a cycle and stays bounded.
+     */
+    public static int iterateWithInteriorDetection(int fractal, double cReal, double cImg, double escapeValue, int precision) {
+        // Points in the set never get further than 2 from the origin, so with
+        // a smaller escape value they can still escape.
+        if (fractal == FractalEngine.MANDELBROT_SET && escapeValue >= 2 && isInMainCardioidOrBulb(cReal, cImg)) {
+            return INTERIOR;
+        }
+
+        double zReal = 0, zImg = 0;
+        double savedReal = 0, savedImg = 0;
+        int savedPeriod = 1, sinceSaved = 0;
+
+        int iterations = 0;
+        switch (fractal) {
+            case FractalEngine.MANDELBROT_SET:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                    zImg = 2 * zReal * zImg + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+
+                    if (Math.abs(zReal - savedReal) < PERIODICITY_EPSILON && Math.abs(zImg - savedImg) < PERIODICITY_EPSILON) {
+                        return INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+                break;
+            case FractalEngine.BURNING_SHIP:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                    zImg = Math.abs(2 * zReal * zImg) + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+
+                    if (Math.abs(zReal - savedReal) < PERIODICITY_EPSILON && Math.abs(zImg - savedImg) < PERIODICITY_EPSILON) {
+                        return INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+                break;
+            case FractalEngine.TRICORN:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                    zImg = 2 * zReal * -zImg + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+
+                    if (Math.abs(zReal - savedReal) < PERIODICITY_EPSILON && Math.abs(zImg - savedImg) < PERIODICITY_EPSILON) {
+                        return INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+                break;
+            case FractalEngine.MULTIBROT_3:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    double zRealNew = zReal * zReal * zReal - zImg * zImg * zReal - 2 * zImg * zImg * zReal + cReal;
+                    zImg = zReal * zReal * zImg - zImg * zImg * zImg + 2 * zReal * zReal * zImg + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+
+                    if (Math.abs(zReal - savedReal) < PERIODICITY_EPSILON && Math.abs(zImg - savedImg) < PERIODICITY_EPSILON) {
+                        return INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+                break;
+            case FractalEngine.MULTIBROT_4:
+                while (zReal * zReal + zImg * zImg <= escapeValue * escapeValue && iterations < precision) {
+                    double zRealNew = -6 * zReal * zReal * zImg * zImg + zReal * zReal * zReal * zReal + zImg * zImg * zImg * zImg + cReal;
+                    zImg = -4 * zImg * zImg * zImg * zReal + 4 * zReal * zReal * zReal * zImg + cImg;
+                    zReal = zRealNew;
+                    iterations++;
+
+                    if (Math.abs(zReal - savedReal) < PERIODICITY_EPSILON && Math.abs(zImg - savedImg) < PERIODICITY_EPSILON) {
+                        return INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+                break;
+        }
+
+        return iterations;
+    }
+
+    /**
+     * Whether c lies in the main cardioid or the period-2 bulb of the Mandelbrot set,
+     * which together make up most of its area.
+     */
+    public static boolean isInMainCardioidOrBulb(double cReal, double cImg) {
+        double cImg2 = cImg * cImg;
+        double q = (cReal - .25) * (cReal - .25) + cImg2;
+        if (q * (q + (cReal - .25)) <= .25 * cImg2) return true;
+        return (cReal + 1) * (cReal + 1) + cImg2 <= 1. / 16;
+    }
+}
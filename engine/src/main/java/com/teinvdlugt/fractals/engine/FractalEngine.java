@@ -0,0 +1,881 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * Calculates the iteration counts of a viewport, without depending on Android.
+ * An engine renders one frame at a time and can't be reused after it has been cancelled.
+ */
+public class FractalEngine {
+
+    public static final int MANDELBROT_SET = 0;
+    public static final int TRICORN = 1;
+    public static final int BURNING_SHIP = 2;
+    public static final int MULTIBROT_3 = 3;
+    public static final int MULTIBROT_4 = 4;
+    /**
+     * z^d + c with the exponent d of {@link RenderParams#getExponent()}, which may be any real number.
+     */
+    public static final int MULTIBROT = 5;
+
+    /**
+     * The arithmetic of a render, see {@link RenderStats#getArithmetic()}. Chosen by the engine
+     * from the pixel size:
+     * <p/>
+     * Floats, only if the params {@link RenderParams#isFloatArithmetic() allow them}, for pixels
+     * that are at least {@link #FLOAT_ULPS_PER_PIXEL} times as large as the precision of a float at
+     * the coordinates of the viewport. They don't give the same image as doubles: near the boundary
+     * of the set both rounding the points to floats and iterating the orbits in floats change the
+     * counts, and some pixels flip between inside and outside the set (on the default view at
+     * precision 400, 320 pixels get other counts and 36 of them flip). Only used if there are
+     * {@link FractalKernels#forFloatRows vectorised float kernels}, which iterate twice as many
+     * pixels at a time as the double ones, and for renders that iterate whole rows (without
+     * subdivision, progressive passes, interior detection, smoothing or an iteration cache).
+     * The app doesn't use them.
+     */
+    public static final int ARITHMETIC_FLOAT = 0;
+    /**
+     * Doubles, down to pixels of 1e-14 (see {@link #needsPerturbation}).
+     */
+    public static final int ARITHMETIC_DOUBLE = 1;
+    /**
+     * {@link DoubleDouble}s, for the deep viewports of the fractals that {@link Perturbation} doesn't support.
+     */
+    public static final int ARITHMETIC_DOUBLE_DOUBLE = 2;
+    /**
+     * {@link Perturbation}, for deep viewports of the Mandelbrot set.
+     */
+    public static final int ARITHMETIC_PERTURBATION = 3;
+
+    /**
+     * Pixels smaller than this can't be told apart well enough by doubles
+     * (which have a precision of about 2e-16 around 1).
+     */
+    private static final double PERTURBATION_PIXEL_SIZE = 1e-14;
+    /**
+     * See {@link #ARITHMETIC_FLOAT}.
+     */
+    private static final int FLOAT_ULPS_PER_PIXEL = 1024;
+    /**
+     * Larger escape values overflow floats: |z|^2 can get to about escapeValue^4 before it escapes.
+     */
+    private static final double FLOAT_MAX_ESCAPE_VALUE = 1e8;
+
+    /**
+     * The grid size of the first pass of a progressive render.
+     */
+    private static final int PROGRESSIVE_FIRST_STEP = 8;
+
+    private final TileRenderer renderer;
+    private final RenderStats stats = new RenderStats();
+    private OnPassFinishedListener onPassFinishedListener;
+    private IterationCache iterationCache;
+    /**
+     * The perturbation of the last deep render, of which the reference orbit is reused by the
+     * next one if it zooms into the same point.
+     */
+    private Perturbation reference;
+
+    /**
+     * Invoked on the rendering thread when a pass of a progressive render is finished.
+     */
+    public interface OnPassFinishedListener {
+        /**
+         * @param step         The grid size of the pass: 8, 4, 2 and finally 1
+         * @param elapsedNanos The time since the render started
+         */
+        void onPassFinished(int step, long elapsedNanos);
+    }
+
+    public FractalEngine() {
+        this(new TileRenderer());
+    }
+
+    public FractalEngine(TileRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Renders a viewport and waits for the result.
+     *
+     * @return The iteration count of every pixel, row by row, or null if the render was cancelled
+     */
+    public int[] render(Viewport viewport, RenderParams params) {
+        int[] iterations = new int[viewport.getWidth() * viewport.getHeight()];
+        return render(viewport, params, iterations, null, null) ? iterations : null;
+    }
+
+    /**
+     * Renders a viewport into {@code iterations} and waits for the result.
+     *
+     * @param iterations    The buffer to write the iteration counts to, row by row
+     * @param tileProcessor Invoked on the worker thread right after the iteration counts of
+     *                      a tile have been calculated (e.g. to color them), may be null
+     * @param listener      Invoked on the calling thread for every finished tile, may be null
+     * @return false if the render was cancelled
+     */
+    public boolean render(Viewport viewport, RenderParams params, int[] iterations,
+                          TileRenderer.TileCalculator tileProcessor,
+                          TileRenderer.OnTileFinishedListener listener) {
+        return render(viewport, params, iterations, null, tileProcessor, listener);
+    }
+
+    /**
+     * Like {@link #render(Viewport, RenderParams, int[], TileRenderer.TileCalculator, TileRenderer.OnTileFinishedListener)},
+     * but also writes the continuous iteration counts (see {@link FractalKernel#iterateSmooth}) to
+     * {@code smooth}, for coloring without bands. The integer counts are the same as without it.
+     * The iteration cache isn't used for smooth renders, because it only keeps the integer counts.
+     *
+     * @param smooth The buffer to write the continuous iteration counts to, row by row, or null
+     */
+    public boolean render(Viewport viewport, RenderParams params, int[] iterations, float[] smooth,
+                          TileRenderer.TileCalculator tileProcessor,
+                          TileRenderer.OnTileFinishedListener listener) {
+        return render(viewport, params, iterations, smooth, null, tileProcessor, listener);
+    }
+
+    /**
+     * Like {@link #render(Viewport, RenderParams, int[], float[], TileRenderer.TileCalculator, TileRenderer.OnTileFinishedListener)},
+     * but also writes the estimated distance from every pixel to the boundary of the set, in pixels,
+     * to {@code distances} (see {@link FractalKernel#iterateDistance}). {@link ColorScheme#shade}
+     * draws the boundary with it, including the filaments that are too thin to be hit by any pixel.
+     * With {@link RenderParams#MODE_SUBDIVISION} a rectangle with a uniform border of escaped pixels
+     * is only filled if the distances of the border show that the set doesn't pass through it,
+     * so that no filaments are lost. The iteration cache isn't used for these renders.
+     *
+     * @param distances The buffer to write the distances to, row by row, or null
+     */
+    public boolean render(Viewport viewport, RenderParams params, int[] iterations, float[] smooth,
+                          float[] distances, TileRenderer.TileCalculator tileProcessor,
+                          TileRenderer.OnTileFinishedListener listener) {
+        long start = System.nanoTime();
+        int arithmetic = iterationCache == null && smooth == null && distances == null
+                ? chooseArithmetic(viewport, params) : ARITHMETIC_DOUBLE;
+        return render(start, viewport, arithmetic, null, null, params, iterations, smooth, distances,
+                tileProcessor, listener, 0);
+    }
+
+    /**
+     * Renders a viewport that may be zoomed in further than doubles can resolve. If it is, the
+     * Mandelbrot set is rendered with {@link Perturbation} and the other fractals and Julia sets
+     * with {@link DoubleDouble}s, except {@link #MULTIBROT}, which is rendered at the viewport
+     * rounded to doubles. Interior detection isn't used by the deep renderers.
+     *
+     * @see #render(Viewport, RenderParams, int[], TileRenderer.TileCalculator, TileRenderer.OnTileFinishedListener)
+     */
+    public boolean render(DeepViewport viewport, RenderParams params, int[] iterations,
+                          TileRenderer.TileCalculator tileProcessor,
+                          TileRenderer.OnTileFinishedListener listener) {
+        return render(viewport, params, iterations, null, tileProcessor, listener);
+    }
+
+    /**
+     * Renders a deep viewport with continuous iteration counts. The pixels rendered with
+     * {@link Perturbation} or {@link DoubleDouble}s get integer counts.
+     *
+     * @see #render(Viewport, RenderParams, int[], float[], TileRenderer.TileCalculator, TileRenderer.OnTileFinishedListener)
+     */
+    public boolean render(DeepViewport viewport, RenderParams params, int[] iterations, float[] smooth,
+                          TileRenderer.TileCalculator tileProcessor,
+                          TileRenderer.OnTileFinishedListener listener) {
+        return render(viewport, params, iterations, smooth, null, tileProcessor, listener, 0);
+    }
+
+    /**
+     * Renders a deep viewport with distance estimation. The pixels rendered with {@link Perturbation}
+     * or {@link DoubleDouble}s get no estimate, which is a distance of {@link Float#POSITIVE_INFINITY}.
+     *
+     * @see #render(Viewport, RenderParams, int[], float[], float[], TileRenderer.TileCalculator, TileRenderer.OnTileFinishedListener)
+     */
+    public boolean render(DeepViewport viewport, RenderParams params, int[] iterations, float[] smooth,
+                          float[] distances, TileRenderer.TileCalculator tileProcessor,
+                          TileRenderer.OnTileFinishedListener listener) {
+        return render(viewport, params, iterations, smooth, distances, tileProcessor, listener, 0);
+    }
+
+    /**
+     * Renders a deep viewport of which the iteration counts of the pixels in the even rows and
+     * columns are already in {@code iterations}, e.g. because they were copied from the center
+     * of a render of twice the size with the same pixels. Only the other three quarters of the
+     * pixels are calculated. The tile processor is invoked for all pixels.
+     *
+     * @see #render(DeepViewport, RenderParams, int[], TileRenderer.TileCalculator, TileRenderer.OnTileFinishedListener)
+     */
+    public boolean refine(DeepViewport viewport, RenderParams params, int[] iterations,
+                          TileRenderer.TileCalculator tileProcessor,
+                          TileRenderer.OnTileFinishedListener listener) {
+        return render(viewport, params, iterations, null, null, tileProcessor, listener, 2);
+    }
+
+    /**
+     * @param knownStep The grid size of the pixels that are already calculated, or 0
+     */
+    private boolean render(DeepViewport viewport, RenderParams params, int[] iterations, float[] smooth,
+                           float[] distances, TileRenderer.TileCalculator tileProcessor,
+                           TileRenderer.OnTileFinishedListener listener, int knownStep) {
+        long start = System.nanoTime();
+        if (!needsPerturbation(viewport.getRangeReal(), viewport.getWidth())) {
+            int arithmetic = iterationCache == null && smooth == null && distances == null && knownStep == 0
+                    ? chooseArithmetic(viewport.toViewport(), params) : ARITHMETIC_DOUBLE;
+            return render(start, viewport.toViewport(), arithmetic, null, null, params, iterations, smooth,
+                    distances, tileProcessor, listener, knownStep);
+        }
+        Perturbation perturbation = null;
+        DoubleDouble doubleDouble = null;
+        int arithmetic;
+        if (params.getFractal() == MANDELBROT_SET && !params.isJulia()) {
+            arithmetic = ARITHMETIC_PERTURBATION;
+            Perturbation reference = this.reference;
+            perturbation = reference != null && reference.canReuseFor(viewport, params.getPrecision(), params.getEscapeValue())
+                    ? new Perturbation(viewport, reference)
+                    : new Perturbation(viewport, params.getPrecision(), params.getEscapeValue());
+            this.reference = perturbation;
+            if (renderer.isCancelled()) return false;
+        } else if (DoubleDouble.supports(params)) {
+            arithmetic = ARITHMETIC_DOUBLE_DOUBLE;
+            doubleDouble = new DoubleDouble(viewport, params);
+        } else {
+            arithmetic = ARITHMETIC_DOUBLE;
+        }
+        return render(start, viewport.toViewport(), arithmetic, perturbation, doubleDouble, params, iterations,
+                smooth, distances, tileProcessor, listener, knownStep);
+    }
+
+    /**
+     * @param start     The {@link System#nanoTime()} at which the render started, for the wall time in the stats
+     * @param knownStep The grid size of the pixels that are already calculated, or 0
+     */
+    private boolean render(long start, Viewport viewport, int arithmetic, Perturbation perturbation,
+                           DoubleDouble doubleDouble, RenderParams params, int[] iterations, float[] smooth,
+                           float[] distances, TileRenderer.TileCalculator tileProcessor,
+                           TileRenderer.OnTileFinishedListener listener, int knownStep) {
+        stats.setArithmetic(arithmetic);
+        stats.setThreads(renderer.getThreads());
+        try {
+            return renderTiles(start, viewport, arithmetic, perturbation, doubleDouble, params, iterations, smooth,
+                    distances, tileProcessor, listener, knownStep);
+        } finally {
+            stats.setWallNanos(System.nanoTime() - start);
+        }
+    }
+
+    private boolean renderTiles(long start, final Viewport viewport, final int arithmetic,
+                                final Perturbation perturbation, final DoubleDouble doubleDouble,
+                                final RenderParams params, final int[] iterations, final float[] smooth,
+                                final float[] distances, final TileRenderer.TileCalculator tileProcessor,
+                                TileRenderer.OnTileFinishedListener listener, final int knownStep) {
+        final IterationCache.Lattice lattice = iterationCache != null && perturbation == null
+                && doubleDouble == null && smooth == null && distances == null
+                ? iterationCache.lattice(viewport, params) : null;
+        if (!params.isProgressive() && knownStep == 0) {
+            return renderer.render(viewport.getWidth(), viewport.getHeight(), new TileRenderer.TileCalculator() {
+                @Override
+                public void calculateTile(int left, int top, int width, int height) {
+                    TileCalculation calculation = new TileCalculation(viewport, params, iterations, smooth,
+                            distances, arithmetic, perturbation, doubleDouble, lattice);
+                    long tileStart = System.nanoTime();
+                    boolean finished = FractalEngine.this.calculateTile(calculation, params, left, top, width, height);
+                    long iterated = System.nanoTime();
+                    stats.addIterateNanos(iterated - tileStart);
+                    if (finished && tileProcessor != null) {
+                        tileProcessor.calculateTile(left, top, width, height);
+                        stats.addColorNanos(System.nanoTime() - iterated);
+                    }
+                }
+            }, listener);
+        }
+
+        // Every pass calculates the pixels on a grid twice as fine as the previous one, skipping
+        // the pixels that the previous passes already did, and fills the rest of the grid cell
+        // with the same value as a preview. Together the passes calculate every pixel once.
+        // Pixels that are known before the render are skipped like those of a previous pass.
+        // With subdivision the last pass subdivides the tiles instead, around the known pixels.
+        final int firstStep = knownStep != 0 ? knownStep / 2 : PROGRESSIVE_FIRST_STEP;
+        for (int step = firstStep; step >= 1; step /= 2) {
+            final int finalStep = step;
+            boolean finished = renderer.render(viewport.getWidth(), viewport.getHeight(), new TileRenderer.TileCalculator() {
+                @Override
+                public void calculateTile(int left, int top, int width, int height) {
+                    TileCalculation calculation = new TileCalculation(viewport, params, iterations, smooth,
+                            distances, arithmetic, perturbation, doubleDouble, lattice);
+                    long tileStart = System.nanoTime();
+                    boolean finished;
+                    int skipStep = finalStep == firstStep && knownStep == 0 ? 0 : finalStep * 2;
+                    try {
+                        if (finalStep == 1 && params.getRenderMode() == RenderParams.MODE_SUBDIVISION) {
+                            calculation.setKnownPixels(left, top, skipStep);
+                            finished = calculation.subdivide(left, top, width, height);
+                        } else {
+                            finished = calculation.calculateGrid(left, top, width, height, finalStep, skipStep);
+                        }
+                        // Only the last pass has the final counts
+                        if (finished && finalStep == 1) calculation.countEscaped(left, top, width, height);
+                    } finally {
+                        calculation.addCounts();
+                    }
+                    long iterated = System.nanoTime();
+                    stats.addIterateNanos(iterated - tileStart);
+                    if (finished && tileProcessor != null) {
+                        tileProcessor.calculateTile(left, top, width, height);
+                        stats.addColorNanos(System.nanoTime() - iterated);
+                    }
+                }
+            }, listener);
+            if (!finished) return false;
+            if (onPassFinishedListener != null) {
+                onPassFinishedListener.onPassFinished(step, System.nanoTime() - start);
+            }
+        }
+        stats.addOutputPixels(viewport.getWidth() * viewport.getHeight());
+        return true;
+    }
+
+    /**
+     * Colors a frame that has already been rendered, on the worker threads, and waits for
+     * the result. Changing the color scheme doesn't require rendering the frame again.
+     *
+     * @param iterations The iteration counts of the frame, row by row
+     * @param colors     The buffer to write the colors to, row by row
+     * @param precision  The precision the frame was rendered with
+     * @return false if the coloring was cancelled
+     */
+    public boolean color(final int[] iterations, final int[] colors, final int width, int height,
+                         final int precision, final ColorScheme colorScheme) {
+        if (!colorScheme.preparePalette(precision, renderer)) return false;
+        return renderer.render(width, height, new TileRenderer.TileCalculator() {
+            @Override
+            public void calculateTile(int left, int top, int tileWidth, int tileHeight) {
+                long start = System.nanoTime();
+                colorScheme.color(iterations, colors, precision, width, left, top, tileWidth, tileHeight);
+                stats.addColorNanos(System.nanoTime() - start);
+            }
+        }, null);
+    }
+
+    /**
+     * Colors a frame with continuous iteration counts, interpolating between the colors of
+     * the integer counts.
+     *
+     * @param smooth The continuous iteration counts of the frame, row by row
+     * @see #color(int[], int[], int, int, int, ColorScheme)
+     */
+    public boolean color(final float[] smooth, final int[] colors, final int width, int height,
+                         final int precision, final ColorScheme colorScheme) {
+        if (!colorScheme.preparePalette(precision, renderer)) return false;
+        return renderer.render(width, height, new TileRenderer.TileCalculator() {
+            @Override
+            public void calculateTile(int left, int top, int tileWidth, int tileHeight) {
+                long start = System.nanoTime();
+                colorScheme.color(smooth, colors, precision, width, left, top, tileWidth, tileHeight);
+                stats.addColorNanos(System.nanoTime() - start);
+            }
+        }, null);
+    }
+
+    /**
+     * Blends the colors of a frame with the color of the set by the distances of the pixels to its
+     * boundary (see {@link ColorScheme#shade}), on the worker threads, and waits for the result.
+     *
+     * @param distances The distances to the boundary of the frame in pixels, row by row
+     * @param colors    The colors of the frame, which are changed in place
+     * @return false if the shading was cancelled
+     */
+    public boolean shade(final float[] distances, final int[] colors, final int width, int height,
+                         final int precision, final ColorScheme colorScheme) {
+        return renderer.render(width, height, new TileRenderer.TileCalculator() {
+            @Override
+            public void calculateTile(int left, int top, int tileWidth, int tileHeight) {
+                long start = System.nanoTime();
+                colorScheme.shade(distances, colors, precision, width, left, top, tileWidth, tileHeight);
+                stats.addColorNanos(System.nanoTime() - start);
+            }
+        }, null);
+    }
+
+    /**
+     * The arithmetic to render a viewport with, {@link #ARITHMETIC_FLOAT} or {@link #ARITHMETIC_DOUBLE}.
+     */
+    static int chooseArithmetic(Viewport viewport, RenderParams params) {
+        double magnitude = Math.max(
+                Math.max(Math.abs(viewport.getStartReal()), Math.abs(viewport.getStartReal() + viewport.getRangeReal())),
+                Math.max(Math.abs(viewport.getStartImg()), Math.abs(viewport.getStartImg() - viewport.getRangeImg())));
+        double pixelSize = Math.min(viewport.getRangeReal() / viewport.getWidth(),
+                viewport.getRangeImg() / viewport.getHeight());
+        boolean rows = params.getRenderMode() == RenderParams.MODE_BRUTE_FORCE && !params.isProgressive()
+                && !params.isInteriorDetection();
+        if (params.isFloatArithmetic() && rows && pixelSize >= FLOAT_ULPS_PER_PIXEL * Math.ulp((float) magnitude)
+                && params.getEscapeValue() <= FLOAT_MAX_ESCAPE_VALUE && FractalKernels.forFloatRows(params) != null) {
+            return ARITHMETIC_FLOAT;
+        }
+        return ARITHMETIC_DOUBLE;
+    }
+
+    /**
+     * The name of an arithmetic, for showing it to the user.
+     */
+    public static String arithmeticName(int arithmetic) {
+        switch (arithmetic) {
+            case ARITHMETIC_FLOAT:
+                return "float";
+            case ARITHMETIC_DOUBLE:
+                return "double";
+            case ARITHMETIC_DOUBLE_DOUBLE:
+                return "double-double";
+            case ARITHMETIC_PERTURBATION:
+                return "perturbation";
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * Whether a viewport is zoomed in too far to be rendered with doubles.
+     */
+    public static boolean needsPerturbation(double rangeReal, int width) {
+        return rangeReal / width < PERTURBATION_PIXEL_SIZE;
+    }
+
+    /**
+     * Calculates the iteration counts of a rectangular region of the viewport.
+     *
+     * @return false if the render was cancelled before the region was finished
+     */
+    public boolean calculateTile(Viewport viewport, RenderParams params, int[] iterations,
+                                 int left, int top, int width, int height) {
+        return calculateTile(new TileCalculation(viewport, params, iterations, null, null, ARITHMETIC_DOUBLE,
+                        null, null, null),
+                params, left, top, width, height);
+    }
+
+    private boolean calculateTile(TileCalculation calculation, RenderParams params,
+                                  int left, int top, int width, int height) {
+        try {
+            boolean finished;
+            if (params.getRenderMode() == RenderParams.MODE_SUBDIVISION) {
+                finished = calculation.subdivide(left, top, width, height);
+            } else {
+                finished = calculation.calculateRect(left, top, width, height);
+            }
+            if (finished) calculation.countEscaped(left, top, width, height);
+            return finished;
+        } finally {
+            calculation.addCounts();
+            stats.addOutputPixels(width * height);
+        }
+    }
+
+    private class TileCalculation {
+        /**
+         * Rectangles with a side this short or shorter aren't subdivided any further.
+         */
+        static final int MIN_SUBDIVISION_SIZE = 4;
+        /**
+         * The smallest estimated distance in pixels of the border of a rectangle of escaped pixels
+         * for it to be filled when rendering with distance estimation. The real distance is at
+         * least half of it, so the set can't pass between two pixels of the border.
+         */
+        static final float MIN_FILL_DISTANCE = 1;
+
+        final Viewport viewport;
+        final Perturbation perturbation;
+        final DoubleDouble doubleDouble;
+        final FractalKernel kernel;
+        /**
+         * The kernel for {@link #calculateRect}, which may be vectorised and use floats.
+         */
+        final FractalKernel rowKernel;
+        final IterationCache.Lattice lattice;
+        final int[] iterations;
+        /**
+         * The continuous iteration counts, or null to only calculate the integer ones.
+         */
+        final float[] smooth;
+        /**
+         * The estimated distances to the boundary in pixels, or null to render without distance estimation.
+         */
+        final float[] distances;
+        final double pixelSize;
+        final int stride, precision;
+        final double escapeValue;
+        final boolean interiorDetection;
+        /**
+         * Whether {@link #subdivide} may fill rectangles with a border of escaping pixels, which
+         * it doesn't for the fractals that aren't connected, and rectangles with a border of
+         * pixels that didn't escape, which it doesn't for Julia sets that are dust: those have
+         * no inside, and their pixels only don't escape because they escape slowly.
+         */
+        final boolean fillEscaped, fillInterior;
+        /**
+         * The grid of the pixels that were calculated before {@link #subdivide}, or 0, and its origin.
+         */
+        int knownStep, knownLeft, knownTop;
+        int earlyExits, iteratedPixels, cacheHits, escapedPixels, interiorPixels;
+        long iterationCount;
+
+        TileCalculation(Viewport viewport, RenderParams params, int[] iterations, float[] smooth, float[] distances,
+                        int arithmetic, Perturbation perturbation, DoubleDouble doubleDouble,
+                        IterationCache.Lattice lattice) {
+            this.viewport = viewport;
+            this.perturbation = perturbation;
+            this.doubleDouble = doubleDouble;
+            this.kernel = FractalKernels.forParams(params);
+            this.rowKernel = arithmetic == ARITHMETIC_FLOAT
+                    ? FractalKernels.forFloatRows(params) : FractalKernels.forRows(params);
+            this.lattice = lattice == null ? null : lattice.copy();
+            this.iterations = iterations;
+            this.smooth = smooth;
+            this.distances = distances;
+            this.pixelSize = viewport.getRangeReal() / viewport.getWidth();
+            this.stride = viewport.getWidth();
+            this.precision = params.getPrecision();
+            this.escapeValue = params.getEscapeValue();
+            this.interiorDetection = params.isInteriorDetection();
+            // A Julia set is connected if the orbit of the critical point 0 doesn't escape, that is
+            // if c is in the fractal itself, and dust otherwise. The burning ship isn't connected.
+            boolean juliaConnected = params.isJulia() && params.getFractal() != BURNING_SHIP
+                    && kernel.iterate(0, 0, params.getJuliaReal(), params.getJuliaImg(), escapeValue, precision) == precision;
+            this.fillEscaped = params.isJulia() ? juliaConnected : params.getFractal() != BURNING_SHIP;
+            this.fillInterior = !params.isJulia() || juliaConnected;
+        }
+
+        /**
+         * Makes {@link #subdivide} skip the pixels of which both coordinates relative to
+         * {@code (left, top)} are a multiple of {@code step}, because an earlier pass already
+         * calculated them, and only fill rectangles if the known pixels inside them match the border.
+         */
+        void setKnownPixels(int left, int top, int step) {
+            knownLeft = left;
+            knownTop = top;
+            knownStep = step;
+        }
+
+        /**
+         * Counts the escaped and the interior pixels of a finished region.
+         */
+        void countEscaped(int left, int top, int width, int height) {
+            int interior = 0;
+            for (int y = top; y < top + height; y++) {
+                for (int i = y * stride + left; i < y * stride + left + width; i++) {
+                    if (iterations[i] >= precision) interior++;
+                }
+            }
+            interiorPixels += interior;
+            escapedPixels += width * height - interior;
+        }
+
+        /**
+         * Adds the counts of this calculation to the stats of the engine.
+         */
+        void addCounts() {
+            stats.addEarlyExitPixels(earlyExits);
+            stats.addIteratedPixels(iteratedPixels);
+            stats.addCacheHits(cacheHits);
+            stats.addIterations(iterationCount);
+            stats.addEscapedPixels(escapedPixels);
+            stats.addInteriorPixels(interiorPixels);
+        }
+
+        /**
+         * Calculates the pixels of which both coordinates (relative to the tile) are a multiple
+         * of {@code step} and fills the {@code step x step} cell below and to the right of them
+         * with the same value. Pixels on the grid of {@code skipStep} are left alone.
+         */
+        boolean calculateGrid(int left, int top, int width, int height, int step, int skipStep) {
+            int right = left + width, bottom = top + height;
+            for (int y = top; y < bottom; y += step) {
+                if (renderer.isCancelled()) return false;
+                for (int x = left; x < right; x += step) {
+                    if (skipStep != 0 && (x - left) % skipStep == 0 && (y - top) % skipStep == 0) continue;
+                    calculatePixel(x, y);
+                    if (step > 1) {
+                        int value = iterations[y * stride + x];
+                        int cellRight = Math.min(x + step, right), cellBottom = Math.min(y + step, bottom);
+                        for (int cellY = y; cellY < cellBottom; cellY++) {
+                            for (int i = cellY * stride + x; i < cellY * stride + cellRight; i++) {
+                                iterations[i] = value;
+                            }
+                        }
+                        if (smooth != null) {
+                            float smoothValue = smooth[y * stride + x];
+                            for (int cellY = y; cellY < cellBottom; cellY++) {
+                                for (int i = cellY * stride + x; i < cellY * stride + cellRight; i++) {
+                                    smooth[i] = smoothValue;
+                                }
+                            }
+                        }
+                        if (distances != null) {
+                            float distance = distances[y * stride + x];
+                            for (int cellY = y; cellY < cellBottom; cellY++) {
+                                for (int i = cellY * stride + x; i < cellY * stride + cellRight; i++) {
+                                    distances[i] = distance;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        boolean calculateRect(int left, int top, int width, int height) {
+            if (lattice == null && perturbation == null && doubleDouble == null && distances == null) {
+                double[] realValues = new double[width];
+                for (int x = 0; x < width; x++) {
+                    realValues[x] = viewport.realValue(left + x);
+                }
+                for (int y = top; y < top + height; y++) {
+                    if (renderer.isCancelled()) return false;
+                    if (smooth != null) {
+                        earlyExits += rowKernel.iterateRow(realValues, viewport.imaginaryValue(y), iterations, smooth,
+                                y * stride + left, width, escapeValue, precision, interiorDetection);
+                    } else {
+                        earlyExits += rowKernel.iterateRow(realValues, viewport.imaginaryValue(y), iterations,
+                                y * stride + left, width, escapeValue, precision, interiorDetection);
+                    }
+                    for (int i = y * stride + left; i < y * stride + left + width; i++) {
+                        iterationCount += iterations[i];
+                    }
+                    iteratedPixels += width;
+                }
+                return true;
+            }
+
+            for (int y = top; y < top + height; y++) {
+                if (renderer.isCancelled()) return false;
+                for (int x = left; x < left + width; x++) {
+                    calculatePixel(x, y);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Mariani-Silver: calculates the border of the rectangle, and if all of it has the
+         * same iteration count, fills the inside with that count. Otherwise the rectangle is
+         * split in two and both halves are handled the same way.
+         * <p>
+         * This is a heuristic. The Mandelbrot set and the multibrot sets are connected, but a
+         * filament that passes between two pixels of a border isn't seen, and the part of the
+         * set behind it is filled with the count of the border. The burning ship and the Julia
+         * sets of a c outside the fractal aren't connected at all, so whole pieces of them can
+         * be inside a border of escaping pixels. For those, rectangles of escaping pixels aren't
+         * filled (see {@link #fillEscaped}). {@code SubdivisionBenchmark} in the cli module
+         * checks how many pixels differ from brute force.
+         */
+        boolean subdivide(int left, int top, int width, int height) {
+            int right = left + width - 1, bottom = top + height - 1;
+            for (int x = left; x <= right; x++) {
+                calculateUnknownPixel(x, top);
+                calculateUnknownPixel(x, bottom);
+            }
+            for (int y = top + 1; y < bottom; y++) {
+                calculateUnknownPixel(left, y);
+                calculateUnknownPixel(right, y);
+            }
+            return subdivideInside(left, top, width, height);
+        }
+
+        /**
+         * The recursive part of {@link #subdivide}, for rectangles of which the border
+         * has already been calculated.
+         */
+        boolean subdivideInside(int left, int top, int width, int height) {
+            if (renderer.isCancelled()) return false;
+            if (width <= 2 || height <= 2) return true;
+
+            int right = left + width - 1, bottom = top + height - 1;
+            int value = iterations[top * stride + left];
+            // The continuous counts inside a border of escaping points aren't uniform, only
+            // rectangles in the set can be filled. With distance estimation, rectangles of escaping
+            // points are only filled if the set doesn't come close enough to pass through the border.
+            if (hasUniformBorder(left, top, right, bottom) && hasUniformKnownPixels(left, top, right, bottom)
+                    && (value == precision ? fillInterior : fillEscaped && smooth == null
+                    && (distances == null || borderDistance(left, top, right, bottom) >= MIN_FILL_DISTANCE))) {
+                float distance = distances == null || value == precision ? 0 : borderDistance(left, top, right, bottom);
+                for (int y = top + 1; y < bottom; y++) {
+                    for (int i = y * stride + left + 1; i < y * stride + right; i++) {
+                        iterations[i] = value;
+                        if (smooth != null) smooth[i] = value;
+                        if (distances != null) distances[i] = distance;
+                    }
+                }
+                return true;
+            }
+
+            if (width <= MIN_SUBDIVISION_SIZE || height <= MIN_SUBDIVISION_SIZE) {
+                return calculateRect(left + 1, top + 1, width - 2, height - 2);
+            }
+
+            if (width >= height) {
+                int middle = left + width / 2;
+                for (int y = top + 1; y < bottom; y++) {
+                    calculateUnknownPixel(middle, y);
+                }
+                return subdivideInside(left, top, middle - left + 1, height)
+                        && subdivideInside(middle, top, right - middle + 1, height);
+            } else {
+                int middle = top + height / 2;
+                for (int x = left + 1; x < right; x++) {
+                    calculateUnknownPixel(x, middle);
+                }
+                return subdivideInside(left, top, width, middle - top + 1)
+                        && subdivideInside(left, middle, width, bottom - middle + 1);
+            }
+        }
+
+        boolean hasUniformBorder(int left, int top, int right, int bottom) {
+            int value = iterations[top * stride + left];
+            for (int x = left; x <= right; x++) {
+                if (iterations[top * stride + x] != value || iterations[bottom * stride + x] != value) {
+                    return false;
+                }
+            }
+            for (int y = top + 1; y < bottom; y++) {
+                if (iterations[y * stride + left] != value || iterations[y * stride + right] != value) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Whether the pixels inside a rectangle that were calculated before {@link #subdivide}
+         * have the same count as its top left corner.
+         */
+        boolean hasUniformKnownPixels(int left, int top, int right, int bottom) {
+            if (knownStep == 0) return true;
+            int value = iterations[top * stride + left];
+            // The first known pixels right of the left and below the top border
+            int firstX = left + 1 + (knownStep - (left + 1 - knownLeft) % knownStep) % knownStep;
+            int firstY = top + 1 + (knownStep - (top + 1 - knownTop) % knownStep) % knownStep;
+            for (int y = firstY; y < bottom; y += knownStep) {
+                for (int x = firstX; x < right; x += knownStep) {
+                    if (iterations[y * stride + x] != value) return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The smallest distance of the pixels on the border of a rectangle.
+         */
+        float borderDistance(int left, int top, int right, int bottom) {
+            float distance = Float.POSITIVE_INFINITY;
+            for (int x = left; x <= right; x++) {
+                distance = Math.min(distance, Math.min(distances[top * stride + x], distances[bottom * stride + x]));
+            }
+            for (int y = top + 1; y < bottom; y++) {
+                distance = Math.min(distance, Math.min(distances[y * stride + left], distances[y * stride + right]));
+            }
+            return distance;
+        }
+
+        /**
+         * Calculates a pixel for {@link #subdivide}, unless it was calculated before.
+         */
+        void calculateUnknownPixel(int x, int y) {
+            if (knownStep != 0 && (x - knownLeft) % knownStep == 0 && (y - knownTop) % knownStep == 0) return;
+            calculatePixel(x, y);
+        }
+
+        void calculatePixel(int x, int y) {
+            double cReal, cImg;
+            if (lattice != null) {
+                int cached = lattice.get(x, y);
+                if (cached >= 0) {
+                    iterations[y * stride + x] = cached;
+                    cacheHits++;
+                    return;
+                }
+                cReal = lattice.realValue(x);
+                cImg = lattice.imaginaryValue(y);
+            } else {
+                cReal = viewport.realValue(x);
+                cImg = viewport.imaginaryValue(y);
+            }
+            int result;
+            if (perturbation != null) {
+                result = perturbation.iterate(x, y, stats);
+                if (smooth != null) smooth[y * stride + x] = result;
+                if (distances != null) distances[y * stride + x] = Float.POSITIVE_INFINITY;
+            } else if (doubleDouble != null) {
+                result = doubleDouble.iterate(x, y);
+                if (smooth != null) smooth[y * stride + x] = result;
+                if (distances != null) distances[y * stride + x] = Float.POSITIVE_INFINITY;
+            } else if (distances != null) {
+                int index = y * stride + x;
+                double escape = kernel.iterateDistance(cReal, cImg, distances, index, escapeValue, precision,
+                        interiorDetection);
+                if (escape == EscapeTime.INTERIOR) {
+                    earlyExits++;
+                    escape = precision;
+                }
+                distances[index] /= pixelSize;
+                result = (int) escape;
+                if (smooth != null) smooth[index] = (float) escape;
+            } else if (smooth != null) {
+                double smoothResult = kernel.iterateSmooth(cReal, cImg, escapeValue, precision, interiorDetection);
+                if (smoothResult == EscapeTime.INTERIOR) {
+                    earlyExits++;
+                    smoothResult = precision;
+                }
+                result = (int) smoothResult;
+                smooth[y * stride + x] = (float) smoothResult;
+            } else if (interiorDetection) {
+                result = kernel.iterateWithInteriorDetection(cReal, cImg, escapeValue, precision);
+                if (result == EscapeTime.INTERIOR) {
+                    earlyExits++;
+                    result = precision;
+                }
+            } else {
+                result = kernel.iterate(cReal, cImg, escapeValue, precision);
+            }
+            iterations[y * stride + x] = result;
+            if (lattice != null) lattice.put(x, y, result);
+            iterationCount += result;
+            iteratedPixels++;
+        }
+    }
+
+    public void cancel() {
+        renderer.cancel();
+    }
+
+    public boolean isCancelled() {
+        return renderer.isCancelled();
+    }
+
+    public void setOnPassFinishedListener(OnPassFinishedListener onPassFinishedListener) {
+        this.onPassFinishedListener = onPassFinishedListener;
+    }
+
+    /**
+     * Makes the engine look up pixels in the cache before calculating them and store the
+     * ones it calculates. The viewport is snapped to the lattice of the cache, which moves
+     * it by less than a pixel. Viewports that need perturbation or double-doubles aren't cached,
+     * and renders with a cache don't use {@link #ARITHMETIC_FLOAT floats}.
+     */
+    public void setIterationCache(IterationCache iterationCache) {
+        this.iterationCache = iterationCache;
+    }
+
+    public IterationCache getIterationCache() {
+        return iterationCache;
+    }
+
+    /**
+     * Makes the next deep render reuse the reference orbit of a perturbation, if it zooms into the
+     * same point (see {@link Perturbation#canReuseFor}). Every deep render of the Mandelbrot set
+     * sets it to its own perturbation, so renders that zoom further into the same point share
+     * one orbit as long as it has enough digits. Calculate it for the deepest viewport first.
+     */
+    public void setReferenceOrbit(Perturbation reference) {
+        this.reference = reference;
+    }
+
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    public TileRenderer getRenderer() {
+        return renderer;
+    }
+}
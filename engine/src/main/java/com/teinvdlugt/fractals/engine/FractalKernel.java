@@ -0,0 +1,92 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * The escape-time iteration of one fractal. The engine picks the kernel once per render
+ * (see {@link FractalKernels#forFractal}), so the loops don't have to check which fractal
+ * they are iterating.
+ */
+public interface FractalKernel {
+
+    /**
+     * Iterates the pixel {@code cReal + cImg * i}, starting at z = 0 (or, for a Julia set,
+     * starting at the pixel with the fixed c of the set).
+     *
+     * @return The number of iterations after which |z| exceeded {@code escapeValue},
+     * or {@code precision} if it didn't escape.
+     */
+    int iterate(double cReal, double cImg, double escapeValue, int precision);
+
+    /**
+     * Iterates the point {@code cReal + cImg * i}, starting at {@code zReal + zImg * i}.
+     * Julia sets are rendered by starting at the pixel with a fixed c.
+     */
+    int iterate(double zReal, double zImg, double cReal, double cImg, double escapeValue, int precision);
+
+    /**
+     * Like {@link #iterate}, but returns {@link EscapeTime#INTERIOR} as soon as the point
+     * is known not to escape.
+     *
+     * @see EscapeTime#iterateWithInteriorDetection
+     */
+    int iterateWithInteriorDetection(double cReal, double cImg, double escapeValue, int precision);
+
+    /**
+     * Like {@link #iterate(double, double, double, double, double, int)}, but returns
+     * {@link EscapeTime#INTERIOR} as soon as the orbit is found to be periodic.
+     */
+    int iterateWithInteriorDetection(double zReal, double zImg, double cReal, double cImg,
+                                     double escapeValue, int precision);
+
+    /**
+     * Iterates {@code length} points on a row with imaginary part {@code cImg} and the real
+     * parts {@code cReal[0 .. length - 1]}, and writes the results to {@code iterations},
+     * starting at {@code offset}. Points found by interior detection are written as
+     * {@code precision}.
+     *
+     * @return The number of points that were found by interior detection
+     */
+    int iterateRow(double[] cReal, double cImg, int[] iterations, int offset, int length,
+                   double escapeValue, int precision, boolean interiorDetection);
+
+    /**
+     * Like {@link #iterate(double, double, double, double)}, but returns the continuous
+     * (smooth) iteration count: the number of iterations plus a fraction from 0 to 1 that
+     * depends on how far past {@code escapeValue} the point escaped (see {@link FractalKernels#smooth}).
+     * With interior detection, returns {@link EscapeTime#INTERIOR} for points found to be in the set.
+     */
+    double iterateSmooth(double cReal, double cImg, double escapeValue, int precision, boolean interiorDetection);
+
+    /**
+     * Like {@link #iterateSmooth(double, double, double, int, boolean)}, starting at {@code zReal + zImg * i}.
+     */
+    double iterateSmooth(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                         int precision, boolean interiorDetection);
+
+    /**
+     * Like {@link #iterateRow(double[], double, int[], int, int, double, int, boolean)}, but also
+     * writes the continuous iteration counts to {@code smooth}. The integer counts are the same.
+     */
+    int iterateRow(double[] cReal, double cImg, int[] iterations, float[] smooth, int offset, int length,
+                   double escapeValue, int precision, boolean interiorDetection);
+
+    /**
+     * Like {@link #iterateSmooth(double, double, double, int, boolean)}, but also tracks the
+     * derivative of z with respect to the pixel, and writes the estimated distance from the pixel
+     * to the boundary of the set to {@code distances[index]} (see {@link FractalKernels#distance}),
+     * or 0 if the pixel didn't escape. Escaped orbits are iterated a little further, to a |z| at
+     * which the estimate is accurate. The continuous counts are the same as those of iterateSmooth.
+     */
+    double iterateDistance(double cReal, double cImg, float[] distances, int index,
+                           double escapeValue, int precision, boolean interiorDetection);
+
+    /**
+     * Like {@link #iterateDistance(double, double, float[], int, double, int, boolean)}, starting
+     * at {@code zReal + zImg * i}.
+     *
+     * @param julia Whether the pixel is the starting point (a Julia set) rather than c, which
+     *              is what the derivative is taken with respect to
+     */
+    double iterateDistance(double zReal, double zImg, double cReal, double cImg, boolean julia,
+                           float[] distances, int index, double escapeValue, int precision,
+                           boolean interiorDetection);
+}
@@ -0,0 +1,1275 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * The {@link FractalKernel}s of the fractals of {@link FractalEngine}.
+ */
+public class FractalKernels {
+
+    // Initialized before the kernels, which are constructed with their degree
+    private static final double LN_2 = Math.log(2);
+    private static final double LOG2_2 = 1, LOG2_3 = Math.log(3) / LN_2, LOG2_4 = 2;
+
+    private static final EscapeTimeKernel MANDELBROT = new Mandelbrot();
+    private static final EscapeTimeKernel TRICORN = new Tricorn();
+    private static final EscapeTimeKernel BURNING_SHIP = new BurningShip();
+    private static final EscapeTimeKernel MULTIBROT_3 = new Multibrot3();
+    private static final EscapeTimeKernel MULTIBROT_4 = new Multibrot4();
+
+    /**
+     * The class of the {@code vector} module, which needs JDK 16 or later with the
+     * {@code jdk.incubator.vector} module. It isn't there on Android.
+     */
+    private static final String VECTOR_KERNELS_CLASS = "com.teinvdlugt.fractals.vector.VectorKernels";
+    /**
+     * The vectorised kernels by fractal, null for the fractals that have none or if the
+     * Vector API isn't available.
+     */
+    private static final FractalKernel[] VECTOR_KERNELS = loadVectorKernels("forFractal");
+    private static final FractalKernel[] FLOAT_VECTOR_KERNELS = loadVectorKernels("forFractalFloat");
+    private static volatile boolean vectorEnabled = true;
+
+    private FractalKernels() {
+    }
+
+    /**
+     * The continuous iteration count of a point from the result of an escape-time loop:
+     * {@code n + escapeValue^2 / |z|^2} for a point that escaped after n iterations (the
+     * fraction is below 1), or {@code precision} for a point that didn't escape.
+     * <p/>
+     * The count of a point that escaped is {@code n + 1 - log_d(log|z| / log(escapeValue))}, for a
+     * fractal of degree d = 2^{@code log2Degree}. As |z| at the escape goes from escapeValue^d
+     * down to escapeValue the count goes from n to n + 1, so it doesn't jump at the borders
+     * between the bands of the integer counts.
+     */
+    static double smooth(double escape, int precision, double escapeValue, double log2Degree) {
+        int iterations = (int) escape;
+        if (iterations >= precision || escape < 0) return escape;
+        // The last count isn't blended with the black of the set, see Palette#color(float[], ...)
+        if (iterations == precision - 1) return iterations;
+        return iterations + Fractions.get(escapeValue, log2Degree).fraction((float) (escape - iterations));
+    }
+
+    /**
+     * The |z|^2 to which {@link FractalKernel#iterateDistance} iterates escaped orbits, if the
+     * escape value is smaller. The distance estimate is only accurate for a large |z|.
+     */
+    private static final double DISTANCE_ESCAPE_VALUE2 = 1e8;
+    /**
+     * The maximum number of iterations after the escape for a distance estimate. With an escape
+     * value below 2 an orbit may not get to {@link #DISTANCE_ESCAPE_VALUE2}.
+     */
+    private static final int DISTANCE_EXTRA_ITERATIONS = 32;
+
+    /**
+     * The estimated distance from a point outside the set to its boundary, {@code |z| log|z| / |dz|},
+     * from z and its derivative dz with respect to the point at a large |z| (this is the Green's
+     * function of the set divided by its gradient). For the Mandelbrot set and the Julia sets of
+     * z^2 + c the real distance is between half and twice the estimate (by the Koebe 1/4 theorem).
+     * For the other fractals it is about as close: the Multibrot sets have other constants, and for
+     * the tricorn and the burning ship, which aren't holomorphic, dz is the derivative along the
+     * real axis.
+     */
+    static double distance(double abs2, double derivativeAbs2) {
+        return Math.max(0, Math.sqrt(abs2 / derivativeAbs2) * Math.log(abs2) / 2);
+    }
+
+    /**
+     * Writes the distance estimate of an orbit iterated for {@link FractalKernel#iterateDistance}
+     * and returns its continuous count.
+     *
+     * @param escape The result of the escape-time loop, see {@link #smooth}
+     */
+    private static double distance(double escape, double abs2, double derivativeAbs2, float[] distances, int index,
+                                   int precision, double escapeValue, double log2Degree) {
+        distances[index] = escape < precision ? (float) distance(abs2, derivativeAbs2) : 0;
+        return smooth(escape, precision, escapeValue, log2Degree);
+    }
+
+    /**
+     * Turns the ratios {@code escapeValue^2 / |z|^2} that the first pass of a row left in
+     * {@code smooth} into continuous counts.
+     */
+    static void smoothRow(int[] iterations, float[] smooth, int offset, int length, int precision,
+                          double escapeValue, double log2Degree) {
+        Fractions fractions = Fractions.get(escapeValue, log2Degree);
+        for (int i = offset; i < offset + length; i++) {
+            int count = iterations[i];
+            smooth[i] = count >= precision - 1 ? count : count + fractions.fraction(smooth[i]);
+        }
+    }
+
+    /**
+     * The fraction {@code 1 - log_d(log|z| / log(escapeValue))} of the continuous count as a function
+     * of {@code ratio = escapeValue^2 / |z|^2}, looked up in a table like the colors of a {@link Palette}.
+     * Calculating the two logarithms for every pixel made smooth renders 15 to 20% slower.
+     * <p/>
+     * The table is indexed with the bits of the ratio as a float, which grow with the logarithm
+     * of the ratio, so it has the same number of entries for every octave of |z|.
+     */
+    private static final class Fractions {
+        /**
+         * The table has 2^STEP_BITS entries per octave.
+         */
+        private static final int STEP_BITS = 7;
+        private static final int SHIFT = 23 - STEP_BITS;
+        private static final float SHIFT_SCALE = 1f / (1 << SHIFT);
+        private static final int MAX_OCTAVES = 126;
+
+        private static volatile Fractions last;
+
+        final double escapeValue, log2Degree;
+        /**
+         * The bits of the smallest ratio in the table; below it the fraction is 0.
+         */
+        private final int minBits;
+        private final float[] table;
+
+        private Fractions(double escapeValue, double log2Degree) {
+            this.escapeValue = escapeValue;
+            this.log2Degree = log2Degree;
+            if (escapeValue <= 1 || log2Degree <= 0) {
+                // Too small to smooth the counts with
+                minBits = Float.floatToRawIntBits(1);
+                table = new float[2];
+                return;
+            }
+            double log2Escape2 = 2 * Math.log(escapeValue) / LN_2;
+            // The fraction is 0 when |z| is escapeValue^d or more, d = 2^log2Degree
+            int octaves = (int) Math.min(MAX_OCTAVES, Math.ceil(log2Escape2 * (Math.pow(2, log2Degree) - 1)) + 1);
+            minBits = Float.floatToRawIntBits((float) Math.pow(2, -octaves));
+            table = new float[(octaves << STEP_BITS) + 2];
+            for (int i = 0; i < table.length; i++) {
+                double ratio = Float.intBitsToFloat(minBits + (i << SHIFT));
+                double fraction = 1 - Math.log(1 - Math.log(ratio) / LN_2 / log2Escape2) / LN_2 / log2Degree;
+                table[i] = (float) Math.max(0, Math.min(1, fraction));
+            }
+        }
+
+        static Fractions get(double escapeValue, double log2Degree) {
+            Fractions fractions = last;
+            if (fractions == null || fractions.escapeValue != escapeValue || fractions.log2Degree != log2Degree) {
+                fractions = new Fractions(escapeValue, log2Degree);
+                last = fractions;
+            }
+            return fractions;
+        }
+
+        float fraction(float ratio) {
+            int bits = Float.floatToRawIntBits(ratio) - minBits;
+            if (bits < 0) return 0;
+            int index = bits >>> SHIFT;
+            if (index >= table.length - 1) return table[table.length - 1];
+            float weight = (bits & ((1 << SHIFT) - 1)) * SHIFT_SCALE;
+            float fraction = table[index] + (table[index + 1] - table[index]) * weight;
+            // Right below the next count; not rounded up to it
+            return fraction < 1 ? fraction : 0.99999f;
+        }
+    }
+
+    /**
+     * The kernel of the fractal of the params, with its exponent if it is {@link FractalEngine#MULTIBROT},
+     * and iterating the Julia set of {@link RenderParams#getJuliaReal()} + {@link RenderParams#getJuliaImg()} i
+     * if the params are in Julia mode.
+     */
+    public static FractalKernel forParams(RenderParams params) {
+        EscapeTimeKernel kernel = params.getFractal() == FractalEngine.MULTIBROT
+                ? new Multibrot(params.getExponent()) : kernel(params.getFractal());
+        return params.isJulia() ? new Julia(kernel, params.getJuliaReal(), params.getJuliaImg()) : kernel;
+    }
+
+    /**
+     * The kernel to iterate whole rows with: the {@link #vectorized} kernel of the fractal if
+     * there is one and it is enabled, otherwise the same kernel as {@link #forParams}. The
+     * vectorised kernels pass single pixels on to the scalar kernels, which is slower than
+     * calling those directly, so pixel by pixel renders should use {@link #forParams}.
+     */
+    public static FractalKernel forRows(RenderParams params) {
+        FractalKernel vectorized = vectorEnabled && !params.isJulia() ? vectorized(params.getFractal()) : null;
+        return vectorized != null ? vectorized : forParams(params);
+    }
+
+    /**
+     * The kernel of a fractal that iterates the pixels of a row several at a time with the
+     * Vector API, giving the same counts as the scalar kernel. Only rows without interior
+     * detection or smoothing are vectorised.
+     *
+     * @return The vectorised kernel, or null if the fractal has none or the Vector API isn't
+     * available (the {@code vector} module isn't on the class path or the JVM wasn't started
+     * with {@code --add-modules jdk.incubator.vector})
+     */
+    public static FractalKernel vectorized(int fractal) {
+        return fractal >= 0 && fractal < VECTOR_KERNELS.length ? VECTOR_KERNELS[fractal] : null;
+    }
+
+    /**
+     * The kernel to iterate whole rows of {@link FractalEngine#ARITHMETIC_FLOAT} renders with,
+     * which iterates twice as many pixels at a time as the {@link #vectorized} kernel.
+     * Scalar floats are no faster than doubles, so there are only vectorised float kernels.
+     *
+     * @return The kernel, or null if the fractal has none, the params are in Julia mode or
+     * the vectorised kernels aren't available or enabled
+     */
+    public static FractalKernel forFloatRows(RenderParams params) {
+        int fractal = params.getFractal();
+        if (!vectorEnabled || params.isJulia() || fractal < 0 || fractal >= FLOAT_VECTOR_KERNELS.length) return null;
+        return FLOAT_VECTOR_KERNELS[fractal];
+    }
+
+    public static boolean isVectorAvailable() {
+        return vectorized(FractalEngine.MANDELBROT_SET) != null;
+    }
+
+    /**
+     * Whether {@link #forRows} returns the vectorised kernels when they are available. On by default.
+     */
+    public static void setVectorEnabled(boolean vectorEnabled) {
+        FractalKernels.vectorEnabled = vectorEnabled;
+    }
+
+    public static boolean isVectorEnabled() {
+        return vectorEnabled;
+    }
+
+    /**
+     * @param factoryMethod The static method of the vector module that returns the kernel of a fractal
+     */
+    private static FractalKernel[] loadVectorKernels(String factoryMethod) {
+        FractalKernel[] kernels = new FractalKernel[FractalEngine.MULTIBROT_4 + 1];
+        try {
+            Method forFractal = Class.forName(VECTOR_KERNELS_CLASS)
+                    .getMethod(factoryMethod, int.class, FractalKernel.class);
+            for (int fractal = 0; fractal < kernels.length; fractal++) {
+                kernels[fractal] = (FractalKernel) forFractal.invoke(null, fractal, forFractal(fractal));
+            }
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+                | InvocationTargetException | LinkageError e) {
+            // No Vector API, use the scalar kernels
+            return new FractalKernel[0];
+        }
+        return kernels;
+    }
+
+    /**
+     * The kernel of one of the fractals with a fixed formula.
+     */
+    public static FractalKernel forFractal(int fractal) {
+        return kernel(fractal);
+    }
+
+    private static EscapeTimeKernel kernel(int fractal) {
+        switch (fractal) {
+            case FractalEngine.MANDELBROT_SET:
+                return MANDELBROT;
+            case FractalEngine.TRICORN:
+                return TRICORN;
+            case FractalEngine.BURNING_SHIP:
+                return BURNING_SHIP;
+            case FractalEngine.MULTIBROT_3:
+                return MULTIBROT_3;
+            case FractalEngine.MULTIBROT_4:
+                return MULTIBROT_4;
+            case FractalEngine.MULTIBROT:
+                throw new IllegalArgumentException("The Multibrot set needs an exponent, use forParams");
+            default:
+                throw new IllegalArgumentException("Unknown fractal: " + fractal);
+        }
+    }
+
+
+    /**
+     * What the kernels share: the iteration of a whole row, the continuous counts, the check for
+     * the {@link #isKnownInterior known interior} and the iteration from z = 0. The loops themselves
+     * are written out in every kernel, with the formula of its fractal in them. A single loop
+     * calling the formula as a method would only be inlined by the JIT as long as the process used
+     * one kernel; the app uses several as soon as the fractal is switched or a Julia set is shown.
+     */
+    private abstract static class EscapeTimeKernel implements FractalKernel {
+        /**
+         * log2 of the degree of the fractal, see {@link FractalKernels#smooth}.
+         */
+        final double log2Degree;
+
+        EscapeTimeKernel(double log2Degree) {
+            this.log2Degree = log2Degree;
+        }
+
+        /**
+         * Whether interior detection can tell that c is in the set without iterating it.
+         */
+        boolean isKnownInterior(double cReal, double cImg, double escapeValue) {
+            return false;
+        }
+
+        /**
+         * The escape-time loop of {@link #iterateSmooth}: {@code n + escapeValue^2 / |z|^2} for a
+         * point that escaped after n iterations, see {@link FractalKernels#smooth}.
+         */
+        abstract double smoothEscape(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                                     int precision, boolean interiorDetection);
+
+        double smoothEscape(double cReal, double cImg, double escapeValue, int precision, boolean interiorDetection) {
+            if (interiorDetection && isKnownInterior(cReal, cImg, escapeValue)) return EscapeTime.INTERIOR;
+            return smoothEscape(0, 0, cReal, cImg, escapeValue, precision, interiorDetection);
+        }
+
+        @Override
+        public int iterate(double cReal, double cImg, double escapeValue, int precision) {
+            return iterate(0, 0, cReal, cImg, escapeValue, precision);
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double cReal, double cImg, double escapeValue, int precision) {
+            if (isKnownInterior(cReal, cImg, escapeValue)) return EscapeTime.INTERIOR;
+            return iterateWithInteriorDetection(0, 0, cReal, cImg, escapeValue, precision);
+        }
+
+        @Override
+        public int iterateRow(double[] cReal, double cImg, int[] iterations, int offset, int length,
+                              double escapeValue, int precision, boolean interiorDetection) {
+            int interior = 0;
+            for (int x = 0; x < length; x++) {
+                int result;
+                if (interiorDetection) {
+                    result = iterateWithInteriorDetection(cReal[x], cImg, escapeValue, precision);
+                    if (result == EscapeTime.INTERIOR) {
+                        interior++;
+                        result = precision;
+                    }
+                } else {
+                    result = iterate(cReal[x], cImg, escapeValue, precision);
+                }
+                iterations[offset + x] = result;
+            }
+            return interior;
+        }
+
+        @Override
+        public double iterateSmooth(double cReal, double cImg, double escapeValue, int precision,
+                                    boolean interiorDetection) {
+            return smooth(smoothEscape(cReal, cImg, escapeValue, precision, interiorDetection),
+                    precision, escapeValue, log2Degree);
+        }
+
+        @Override
+        public double iterateSmooth(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                                    int precision, boolean interiorDetection) {
+            return smooth(smoothEscape(zReal, zImg, cReal, cImg, escapeValue, precision, interiorDetection),
+                    precision, escapeValue, log2Degree);
+        }
+
+        @Override
+        public int iterateRow(double[] cReal, double cImg, int[] iterations, float[] smooth, int offset, int length,
+                              double escapeValue, int precision, boolean interiorDetection) {
+            int interior = 0;
+            for (int x = 0; x < length; x++) {
+                double escape = smoothEscape(cReal[x], cImg, escapeValue, precision, interiorDetection);
+                if (escape == EscapeTime.INTERIOR) {
+                    interior++;
+                    escape = precision;
+                }
+                iterations[offset + x] = (int) escape;
+                smooth[offset + x] = (float) (escape - (int) escape);
+            }
+            smoothRow(iterations, smooth, offset, length, precision, escapeValue, log2Degree);
+            return interior;
+        }
+
+        @Override
+        public double iterateDistance(double cReal, double cImg, float[] distances, int index,
+                                      double escapeValue, int precision, boolean interiorDetection) {
+            if (interiorDetection && isKnownInterior(cReal, cImg, escapeValue)) {
+                distances[index] = 0;
+                return EscapeTime.INTERIOR;
+            }
+            return iterateDistance(0, 0, cReal, cImg, false, distances, index, escapeValue, precision,
+                    interiorDetection);
+        }
+    }
+
+    /**
+     * {@code z^2 + c}
+     */
+    private static final class Mandelbrot extends EscapeTimeKernel {
+        Mandelbrot() {
+            super(LOG2_2);
+        }
+
+        /**
+         * Points in the set never get further than 2 from the origin, so with
+         * a smaller escape value they can still escape.
+         */
+        @Override
+        boolean isKnownInterior(double cReal, double cImg, double escapeValue) {
+            return escapeValue >= 2 && EscapeTime.isInMainCardioidOrBulb(cReal, cImg);
+        }
+
+        @Override
+        public int iterate(double zReal, double zImg, double cReal, double cImg, double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = 2 * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+            }
+            return iterations;
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double zReal, double zImg, double cReal, double cImg,
+                                                double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = 2 * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                        && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                    return EscapeTime.INTERIOR;
+                }
+                if (++sinceSaved == savedPeriod) {
+                    savedReal = zReal;
+                    savedImg = zImg;
+                    savedPeriod <<= 1;
+                    sinceSaved = 0;
+                }
+            }
+            return iterations;
+        }
+
+        @Override
+        double smoothEscape(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                            int precision, boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= escapeValue2 && iterations < precision) {
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = 2 * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            return iterations < precision ? iterations + escapeValue2 / abs2 : precision;
+        }
+
+        @Override
+        public double iterateDistance(double zReal, double zImg, double cReal, double cImg, boolean julia,
+                                      float[] distances, int index, double escapeValue, int precision,
+                                      boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double bailout2 = Math.max(escapeValue2, DISTANCE_ESCAPE_VALUE2);
+            // The derivative with respect to c starts at 0 and gets 1 added every iteration,
+            // the one with respect to the starting point starts at 1
+            double dzReal = julia ? 1 : 0, dzImg = 0, dc = julia ? 0 : 1;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double escape = precision, abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= bailout2) {
+                if (escape == precision) {
+                    if (iterations >= precision) break;
+                    if (abs2 > escapeValue2) escape = iterations + escapeValue2 / abs2;
+                } else if (iterations - (int) escape >= DISTANCE_EXTRA_ITERATIONS) {
+                    break;
+                }
+                // dz' = 2 z dz + dc
+                double dzRealNew = 2 * (zReal * dzReal - zImg * dzImg) + dc;
+                dzImg = 2 * (zReal * dzImg + zImg * dzReal);
+                dzReal = dzRealNew;
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = 2 * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection && escape == precision) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        distances[index] = 0;
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            // Escaped past both escape values at once
+            if (escape == precision && iterations < precision) escape = iterations + escapeValue2 / abs2;
+            return distance(escape, abs2, dzReal * dzReal + dzImg * dzImg, distances, index,
+                    precision, escapeValue, log2Degree);
+        }
+    }
+
+    /**
+     * {@code conj(z)^2 + c}
+     */
+    private static final class Tricorn extends EscapeTimeKernel {
+        Tricorn() {
+            super(LOG2_2);
+        }
+
+        @Override
+        public int iterate(double zReal, double zImg, double cReal, double cImg, double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = -2 * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+            }
+            return iterations;
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double zReal, double zImg, double cReal, double cImg,
+                                                double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = -2 * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                        && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                    return EscapeTime.INTERIOR;
+                }
+                if (++sinceSaved == savedPeriod) {
+                    savedReal = zReal;
+                    savedImg = zImg;
+                    savedPeriod <<= 1;
+                    sinceSaved = 0;
+                }
+            }
+            return iterations;
+        }
+
+        @Override
+        double smoothEscape(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                            int precision, boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= escapeValue2 && iterations < precision) {
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = -2 * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            return iterations < precision ? iterations + escapeValue2 / abs2 : precision;
+        }
+
+        @Override
+        public double iterateDistance(double zReal, double zImg, double cReal, double cImg, boolean julia,
+                                      float[] distances, int index, double escapeValue, int precision,
+                                      boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double bailout2 = Math.max(escapeValue2, DISTANCE_ESCAPE_VALUE2);
+            // The derivative with respect to c starts at 0 and gets 1 added every iteration,
+            // the one with respect to the starting point starts at 1
+            double dzReal = julia ? 1 : 0, dzImg = 0, dc = julia ? 0 : 1;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double escape = precision, abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= bailout2) {
+                if (escape == precision) {
+                    if (iterations >= precision) break;
+                    if (abs2 > escapeValue2) escape = iterations + escapeValue2 / abs2;
+                } else if (iterations - (int) escape >= DISTANCE_EXTRA_ITERATIONS) {
+                    break;
+                }
+                // dz' = 2 conj(z) conj(dz) + dc
+                double dzRealNew = 2 * (zReal * dzReal - zImg * dzImg) + dc;
+                dzImg = -2 * (zReal * dzImg + zImg * dzReal);
+                dzReal = dzRealNew;
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = -2 * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection && escape == precision) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        distances[index] = 0;
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            // Escaped past both escape values at once
+            if (escape == precision && iterations < precision) escape = iterations + escapeValue2 / abs2;
+            return distance(escape, abs2, dzReal * dzReal + dzImg * dzImg, distances, index,
+                    precision, escapeValue, log2Degree);
+        }
+    }
+
+    /**
+     * {@code (|Re z| + i |Im z|)^2 + c}
+     */
+    private static final class BurningShip extends EscapeTimeKernel {
+        BurningShip() {
+            super(LOG2_2);
+        }
+
+        @Override
+        public int iterate(double zReal, double zImg, double cReal, double cImg, double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = Math.abs(2 * zReal * zImg) + cImg;
+                zReal = zRealNew;
+                iterations++;
+            }
+            return iterations;
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double zReal, double zImg, double cReal, double cImg,
+                                                double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = Math.abs(2 * zReal * zImg) + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                        && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                    return EscapeTime.INTERIOR;
+                }
+                if (++sinceSaved == savedPeriod) {
+                    savedReal = zReal;
+                    savedImg = zImg;
+                    savedPeriod <<= 1;
+                    sinceSaved = 0;
+                }
+            }
+            return iterations;
+        }
+
+        @Override
+        double smoothEscape(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                            int precision, boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= escapeValue2 && iterations < precision) {
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = Math.abs(2 * zReal * zImg) + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            return iterations < precision ? iterations + escapeValue2 / abs2 : precision;
+        }
+
+        @Override
+        public double iterateDistance(double zReal, double zImg, double cReal, double cImg, boolean julia,
+                                      float[] distances, int index, double escapeValue, int precision,
+                                      boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double bailout2 = Math.max(escapeValue2, DISTANCE_ESCAPE_VALUE2);
+            // The derivative with respect to c starts at 0 and gets 1 added every iteration,
+            // the one with respect to the starting point starts at 1
+            double dzReal = julia ? 1 : 0, dzImg = 0, dc = julia ? 0 : 1;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double escape = precision, abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= bailout2) {
+                if (escape == precision) {
+                    if (iterations >= precision) break;
+                    if (abs2 > escapeValue2) escape = iterations + escapeValue2 / abs2;
+                } else if (iterations - (int) escape >= DISTANCE_EXTRA_ITERATIONS) {
+                    break;
+                }
+                // dz' = 2 w dw + dc, with w = |Re z| + i |Im z| and dw its derivative
+                double wReal = Math.abs(zReal), wImg = Math.abs(zImg);
+                double dwReal = zReal < 0 ? -dzReal : dzReal, dwImg = zImg < 0 ? -dzImg : dzImg;
+                dzReal = 2 * (wReal * dwReal - wImg * dwImg) + dc;
+                dzImg = 2 * (wReal * dwImg + wImg * dwReal);
+                double zRealNew = zReal * zReal - zImg * zImg + cReal;
+                zImg = Math.abs(2 * zReal * zImg) + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection && escape == precision) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        distances[index] = 0;
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            // Escaped past both escape values at once
+            if (escape == precision && iterations < precision) escape = iterations + escapeValue2 / abs2;
+            return distance(escape, abs2, dzReal * dzReal + dzImg * dzImg, distances, index,
+                    precision, escapeValue, log2Degree);
+        }
+    }
+
+    /**
+     * {@code z^3 + c}, with {@code (x + iy)^3 = x(x^2 - 3y^2) + iy(3x^2 - y^2)}. This rounds differently
+     * from the six products of {@link EscapeTime#iterate}, which changes the count of a few pixels
+     * on the edge of a band.
+     */
+    private static final class Multibrot3 extends EscapeTimeKernel {
+        Multibrot3() {
+            super(LOG2_3);
+        }
+
+        @Override
+        public int iterate(double zReal, double zImg, double cReal, double cImg, double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zReal2 = zReal * zReal, zImg2 = zImg * zImg;
+                double zRealNew = zReal * (zReal2 - 3 * zImg2) + cReal;
+                zImg = zImg * (3 * zReal2 - zImg2) + cImg;
+                zReal = zRealNew;
+                iterations++;
+            }
+            return iterations;
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double zReal, double zImg, double cReal, double cImg,
+                                                double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zReal2 = zReal * zReal, zImg2 = zImg * zImg;
+                double zRealNew = zReal * (zReal2 - 3 * zImg2) + cReal;
+                zImg = zImg * (3 * zReal2 - zImg2) + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                        && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                    return EscapeTime.INTERIOR;
+                }
+                if (++sinceSaved == savedPeriod) {
+                    savedReal = zReal;
+                    savedImg = zImg;
+                    savedPeriod <<= 1;
+                    sinceSaved = 0;
+                }
+            }
+            return iterations;
+        }
+
+        @Override
+        double smoothEscape(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                            int precision, boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= escapeValue2 && iterations < precision) {
+                double zReal2 = zReal * zReal, zImg2 = zImg * zImg;
+                double zRealNew = zReal * (zReal2 - 3 * zImg2) + cReal;
+                zImg = zImg * (3 * zReal2 - zImg2) + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            return iterations < precision ? iterations + escapeValue2 / abs2 : precision;
+        }
+
+        @Override
+        public double iterateDistance(double zReal, double zImg, double cReal, double cImg, boolean julia,
+                                      float[] distances, int index, double escapeValue, int precision,
+                                      boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double bailout2 = Math.max(escapeValue2, DISTANCE_ESCAPE_VALUE2);
+            // The derivative with respect to c starts at 0 and gets 1 added every iteration,
+            // the one with respect to the starting point starts at 1
+            double dzReal = julia ? 1 : 0, dzImg = 0, dc = julia ? 0 : 1;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double escape = precision, abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= bailout2) {
+                if (escape == precision) {
+                    if (iterations >= precision) break;
+                    if (abs2 > escapeValue2) escape = iterations + escapeValue2 / abs2;
+                } else if (iterations - (int) escape >= DISTANCE_EXTRA_ITERATIONS) {
+                    break;
+                }
+                // dz' = 3 z^2 dz + dc
+                double zReal2 = zReal * zReal, zImg2 = zImg * zImg;
+                double factorReal = 3 * (zReal2 - zImg2), factorImg = 6 * zReal * zImg;
+                double dzRealNew = factorReal * dzReal - factorImg * dzImg + dc;
+                dzImg = factorReal * dzImg + factorImg * dzReal;
+                dzReal = dzRealNew;
+                double zRealNew = zReal * (zReal2 - 3 * zImg2) + cReal;
+                zImg = zImg * (3 * zReal2 - zImg2) + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection && escape == precision) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        distances[index] = 0;
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            // Escaped past both escape values at once
+            if (escape == precision && iterations < precision) escape = iterations + escapeValue2 / abs2;
+            return distance(escape, abs2, dzReal * dzReal + dzImg * dzImg, distances, index,
+                    precision, escapeValue, log2Degree);
+        }
+    }
+
+    /**
+     * {@code z^4 + c}, with the products of {@link EscapeTime#iterate}. Writing it with x^2 and y^2
+     * saves a few multiplications, but rounds differently, which changed the counts of 31 of the
+     * 300 x 300 pixels of the view of range 0.1 around -0.8 + 0.2i at precision 400.
+     */
+    private static final class Multibrot4 extends EscapeTimeKernel {
+        Multibrot4() {
+            super(LOG2_4);
+        }
+
+        @Override
+        public int iterate(double zReal, double zImg, double cReal, double cImg, double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zRealNew = -6 * zReal * zReal * zImg * zImg + zReal * zReal * zReal * zReal
+                        + zImg * zImg * zImg * zImg + cReal;
+                zImg = -4 * zImg * zImg * zImg * zReal + 4 * zReal * zReal * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+            }
+            return iterations;
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double zReal, double zImg, double cReal, double cImg,
+                                                double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            while (zReal * zReal + zImg * zImg <= escapeValue2 && iterations < precision) {
+                double zRealNew = -6 * zReal * zReal * zImg * zImg + zReal * zReal * zReal * zReal
+                        + zImg * zImg * zImg * zImg + cReal;
+                zImg = -4 * zImg * zImg * zImg * zReal + 4 * zReal * zReal * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                        && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                    return EscapeTime.INTERIOR;
+                }
+                if (++sinceSaved == savedPeriod) {
+                    savedReal = zReal;
+                    savedImg = zImg;
+                    savedPeriod <<= 1;
+                    sinceSaved = 0;
+                }
+            }
+            return iterations;
+        }
+
+        @Override
+        double smoothEscape(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                            int precision, boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= escapeValue2 && iterations < precision) {
+                double zRealNew = -6 * zReal * zReal * zImg * zImg + zReal * zReal * zReal * zReal
+                        + zImg * zImg * zImg * zImg + cReal;
+                zImg = -4 * zImg * zImg * zImg * zReal + 4 * zReal * zReal * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            return iterations < precision ? iterations + escapeValue2 / abs2 : precision;
+        }
+
+        @Override
+        public double iterateDistance(double zReal, double zImg, double cReal, double cImg, boolean julia,
+                                      float[] distances, int index, double escapeValue, int precision,
+                                      boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double bailout2 = Math.max(escapeValue2, DISTANCE_ESCAPE_VALUE2);
+            // The derivative with respect to c starts at 0 and gets 1 added every iteration,
+            // the one with respect to the starting point starts at 1
+            double dzReal = julia ? 1 : 0, dzImg = 0, dc = julia ? 0 : 1;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double escape = precision, abs2;
+            while ((abs2 = zReal * zReal + zImg * zImg) <= bailout2) {
+                if (escape == precision) {
+                    if (iterations >= precision) break;
+                    if (abs2 > escapeValue2) escape = iterations + escapeValue2 / abs2;
+                } else if (iterations - (int) escape >= DISTANCE_EXTRA_ITERATIONS) {
+                    break;
+                }
+                // dz' = 4 z^3 dz + dc
+                double zReal2 = zReal * zReal, zImg2 = zImg * zImg;
+                double factorReal = 4 * zReal * (zReal2 - 3 * zImg2), factorImg = 4 * zImg * (3 * zReal2 - zImg2);
+                double dzRealNew = factorReal * dzReal - factorImg * dzImg + dc;
+                dzImg = factorReal * dzImg + factorImg * dzReal;
+                dzReal = dzRealNew;
+                double zRealNew = -6 * zReal * zReal * zImg * zImg + zReal * zReal * zReal * zReal
+                        + zImg * zImg * zImg * zImg + cReal;
+                zImg = -4 * zImg * zImg * zImg * zReal + 4 * zReal * zReal * zReal * zImg + cImg;
+                zReal = zRealNew;
+                iterations++;
+
+                if (interiorDetection && escape == precision) {
+                    if (Math.abs(zReal - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(zImg - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        distances[index] = 0;
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = zReal;
+                        savedImg = zImg;
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            // Escaped past both escape values at once
+            if (escape == precision && iterations < precision) escape = iterations + escapeValue2 / abs2;
+            return distance(escape, abs2, dzReal * dzReal + dzImg * dzImg, distances, index,
+                    precision, escapeValue, log2Degree);
+        }
+    }
+
+    /**
+     * {@code z^d + c} for any exponent d, with the allocation-free operations of {@link Complex}:
+     * integer powers by repeated squaring and other powers in polar form.
+     */
+    private static final class Multibrot extends EscapeTimeKernel {
+        /**
+         * Higher integer exponents are raised in polar form, which takes the same time for every exponent.
+         */
+        private static final int MAX_INTEGER_EXPONENT = 64;
+
+        private final double exponent;
+        /**
+         * The exponent if it is an integer from 0 to MAX_INTEGER_EXPONENT, otherwise -1.
+         */
+        private final int integerExponent;
+
+        Multibrot(double exponent) {
+            // 0 if the exponent is too small to smooth the iteration counts with
+            super(exponent > 1 ? Math.log(exponent) / LN_2 : 0);
+            this.exponent = exponent;
+            this.integerExponent = exponent == Math.rint(exponent) && exponent >= 0 && exponent <= MAX_INTEGER_EXPONENT
+                    ? (int) exponent : -1;
+        }
+
+        private Complex power(Complex z) {
+            return integerExponent >= 0 ? z.pow(integerExponent) : z.pow(exponent);
+        }
+
+        @Override
+        boolean isKnownInterior(double cReal, double cImg, double escapeValue) {
+            return integerExponent == 2 && escapeValue >= 2 && EscapeTime.isInMainCardioidOrBulb(cReal, cImg);
+        }
+
+        @Override
+        public int iterate(double zReal, double zImg, double cReal, double cImg, double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            Complex z = new Complex(zReal, zImg);
+            int iterations = 0;
+            while (z.abs2() <= escapeValue2 && iterations < precision) {
+                power(z).add(cReal, cImg);
+                iterations++;
+            }
+            return iterations;
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double zReal, double zImg, double cReal, double cImg,
+                                                double escapeValue, int precision) {
+            double escapeValue2 = escapeValue * escapeValue;
+            Complex z = new Complex(zReal, zImg);
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            while (z.abs2() <= escapeValue2 && iterations < precision) {
+                power(z).add(cReal, cImg);
+                iterations++;
+
+                if (Math.abs(z.getReal() - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                        && Math.abs(z.getImaginary() - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                    return EscapeTime.INTERIOR;
+                }
+                if (++sinceSaved == savedPeriod) {
+                    savedReal = z.getReal();
+                    savedImg = z.getImaginary();
+                    savedPeriod <<= 1;
+                    sinceSaved = 0;
+                }
+            }
+            return iterations;
+        }
+
+        @Override
+        double smoothEscape(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                            int precision, boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            Complex z = new Complex(zReal, zImg);
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double abs2;
+            while ((abs2 = z.abs2()) <= escapeValue2 && iterations < precision) {
+                power(z).add(cReal, cImg);
+                iterations++;
+
+                if (interiorDetection) {
+                    if (Math.abs(z.getReal() - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(z.getImaginary() - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = z.getReal();
+                        savedImg = z.getImaginary();
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            return iterations < precision ? iterations + escapeValue2 / abs2 : precision;
+        }
+
+        @Override
+        public double iterateDistance(double zReal, double zImg, double cReal, double cImg, boolean julia,
+                                      float[] distances, int index, double escapeValue, int precision,
+                                      boolean interiorDetection) {
+            double escapeValue2 = escapeValue * escapeValue;
+            double bailout2 = Math.max(escapeValue2, DISTANCE_ESCAPE_VALUE2);
+            Complex z = new Complex(zReal, zImg);
+            // The derivative with respect to c starts at 0 and gets 1 added every iteration,
+            // the one with respect to the starting point starts at 1
+            double dzReal = julia ? 1 : 0, dzImg = 0, dc = julia ? 0 : 1;
+            double savedReal = zReal, savedImg = zImg;
+            int savedPeriod = 1, sinceSaved = 0;
+            int iterations = 0;
+            double escape = precision, abs2;
+            while ((abs2 = z.abs2()) <= bailout2) {
+                if (escape == precision) {
+                    if (iterations >= precision) break;
+                    if (abs2 > escapeValue2) escape = iterations + escapeValue2 / abs2;
+                } else if (iterations - (int) escape >= DISTANCE_EXTRA_ITERATIONS) {
+                    break;
+                }
+                double oldReal = z.getReal(), oldImg = z.getImaginary();
+                power(z);
+                // dz' = d z^(d - 1) dz + dc, with z^(d - 1) = z^d / z (0 at z = 0 for d > 1)
+                double factorReal = 0, factorImg = 0;
+                if (abs2 > 0) {
+                    factorReal = exponent * (z.getReal() * oldReal + z.getImaginary() * oldImg) / abs2;
+                    factorImg = exponent * (z.getImaginary() * oldReal - z.getReal() * oldImg) / abs2;
+                }
+                double dzRealNew = factorReal * dzReal - factorImg * dzImg + dc;
+                dzImg = factorReal * dzImg + factorImg * dzReal;
+                dzReal = dzRealNew;
+                z.add(cReal, cImg);
+                iterations++;
+
+                if (interiorDetection && escape == precision) {
+                    if (Math.abs(z.getReal() - savedReal) < EscapeTime.PERIODICITY_EPSILON
+                            && Math.abs(z.getImaginary() - savedImg) < EscapeTime.PERIODICITY_EPSILON) {
+                        distances[index] = 0;
+                        return EscapeTime.INTERIOR;
+                    }
+                    if (++sinceSaved == savedPeriod) {
+                        savedReal = z.getReal();
+                        savedImg = z.getImaginary();
+                        savedPeriod <<= 1;
+                        sinceSaved = 0;
+                    }
+                }
+            }
+            // Escaped past both escape values at once
+            if (escape == precision && iterations < precision) escape = iterations + escapeValue2 / abs2;
+            return distance(escape, abs2, dzReal * dzReal + dzImg * dzImg, distances, index,
+                    precision, escapeValue, log2Degree);
+        }
+    }
+
+    /**
+     * The Julia set of a fixed c: every pixel is the starting point z of the orbit. It passes each
+     * pixel on to the loops of the kernel it wraps.
+     */
+    private static final class Julia extends EscapeTimeKernel {
+        private final EscapeTimeKernel kernel;
+        private final double juliaReal, juliaImg;
+
+        Julia(EscapeTimeKernel kernel, double juliaReal, double juliaImg) {
+            super(kernel.log2Degree);
+            this.kernel = kernel;
+            this.juliaReal = juliaReal;
+            this.juliaImg = juliaImg;
+        }
+
+        @Override
+        public int iterate(double zReal, double zImg, double escapeValue, int precision) {
+            return kernel.iterate(zReal, zImg, juliaReal, juliaImg, escapeValue, precision);
+        }
+
+        @Override
+        public int iterate(double zReal, double zImg, double cReal, double cImg, double escapeValue, int precision) {
+            return kernel.iterate(zReal, zImg, cReal, cImg, escapeValue, precision);
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double zReal, double zImg, double escapeValue, int precision) {
+            return kernel.iterateWithInteriorDetection(zReal, zImg, juliaReal, juliaImg, escapeValue, precision);
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double zReal, double zImg, double cReal, double cImg,
+                                                double escapeValue, int precision) {
+            return kernel.iterateWithInteriorDetection(zReal, zImg, cReal, cImg, escapeValue, precision);
+        }
+
+        @Override
+        double smoothEscape(double zReal, double zImg, double escapeValue, int precision, boolean interiorDetection) {
+            return kernel.smoothEscape(zReal, zImg, juliaReal, juliaImg, escapeValue, precision, interiorDetection);
+        }
+
+        @Override
+        double smoothEscape(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                            int precision, boolean interiorDetection) {
+            return kernel.smoothEscape(zReal, zImg, cReal, cImg, escapeValue, precision, interiorDetection);
+        }
+
+        @Override
+        public double iterateDistance(double zReal, double zImg, float[] distances, int index,
+                                      double escapeValue, int precision, boolean interiorDetection) {
+            return kernel.iterateDistance(zReal, zImg, juliaReal, juliaImg, true, distances, index,
+                    escapeValue, precision, interiorDetection);
+        }
+
+        @Override
+        public double iterateDistance(double zReal, double zImg, double cReal, double cImg, boolean julia,
+                                      float[] distances, int index, double escapeValue, int precision,
+                                      boolean interiorDetection) {
+            return kernel.iterateDistance(zReal, zImg, cReal, cImg, julia, distances, index,
+                    escapeValue, precision, interiorDetection);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * Maps a value between 0 and 1 to an ARGB color. {@link ColorScheme} turns iteration counts
+ * into these values, so a gradient only decides what the colors look like.
+ */
+public interface Gradient {
+
+    /**
+     * The original gradient: 0 is blue, .5 is red and 1 is green.
+     */
+    Gradient CLASSIC = new Gradient() {
+        @Override
+        public int color(double value) {
+            // 0.00 blue
+            // 0.50 red
+            // 1.00 green
+
+            double valuePerUnitColor = .5 / 255;
+
+            // 0.00 => 255 blue
+            // 0.50 => 0   blue
+            int blue = (int) Math.max(255 - value / valuePerUnitColor, 0);
+
+            // 0.00 => 0   red
+            // 0.50 => 255 red
+            // 1.00 => 0   red
+            int red = (int) Math.max(255 - Math.abs(.5 - value) / valuePerUnitColor, 0);
+            int green = (int) Math.max(255 - (1. - value) / valuePerUnitColor, 0);
+
+            return ColorScheme.rgb(red, green, blue);
+        }
+    };
+
+    /**
+     * @param value Between 0 and 1, or NaN for iteration counts above {@link ColorScheme#getMaxColorIterations()}
+     */
+    int color(double value);
+}
@@ -0,0 +1,404 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the iteration counts of earlier renders, so that the points a new viewport
+ * shares with an old one don't have to be iterated again.
+ * <p/>
+ * The points are stored by their position on a lattice: with a pixel size (step) s, the
+ * point (i, j) is the complex number {@code i * s + j * s i}. A viewport that is rendered with a cache is
+ * snapped to the lattice of its pixel size (which moves it by less than a pixel), so after
+ * panning the pixels that were visible before are exactly the same points. When zooming in by
+ * an integer factor k, the pixel size is snapped to 1/k of the old one, so that every k-th
+ * point of the new lattice is a point of the old one.
+ * <p/>
+ * The counts are stored in blocks of {@code BLOCK_SIZE x BLOCK_SIZE} points. The least
+ * recently used blocks are thrown away when the cache grows beyond its memory budget.
+ * With a {@link DiskBlockStore}, they are written to disk instead, and blocks that aren't
+ * in memory are looked up on disk before their points are iterated again.
+ */
+public class IterationCache {
+
+    public static final int BLOCK_SIZE = 64;
+    private static final int BLOCK_BYTES = BLOCK_SIZE * BLOCK_SIZE * 4;
+    private static final int EMPTY = -1;
+
+    /**
+     * How close the ratio between two pixel sizes has to be to an integer to use
+     * the points of one lattice for the other.
+     */
+    private static final double INTEGER_FACTOR_TOLERANCE = 1e-9;
+
+    /**
+     * Lattice indices have to be exact doubles.
+     */
+    private static final double MAX_INDEX = 1L << 52;
+
+    private final long maxBlocks;
+    private final LinkedHashMap<BlockKey, Block> blocks;
+    private final Map<Level, Integer> levels = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+    private DiskBlockStore diskStore;
+
+    /**
+     * @param maxBytes The memory budget for the stored iteration counts
+     */
+    public IterationCache(long maxBytes) {
+        maxBlocks = Math.max(1, maxBytes / BLOCK_BYTES);
+        blocks = new LinkedHashMap<BlockKey, Block>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BlockKey, Block> eldest) {
+                if (size() <= maxBlocks) return false;
+                writeBack(eldest.getKey(), eldest.getValue());
+                forgetBlock(eldest.getKey().level);
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * The lattice to render a viewport on, or null if the viewport can't be put on a
+     * lattice (because it is zoomed in too far).
+     */
+    synchronized Lattice lattice(Viewport viewport, RenderParams params) {
+        double stepReal = viewport.getRangeReal() / viewport.getWidth();
+        double stepImg = viewport.getRangeImg() / viewport.getHeight();
+
+        // Snap to an integer fraction of the finest coarser lattice that is in the cache
+        Set<Level> knownLevels = new HashSet<>(levels.keySet());
+        if (diskStore != null) knownLevels.addAll(diskStore.levels());
+        List<Level> coarserLevels = new ArrayList<>();
+        List<Integer> factors = new ArrayList<>();
+        int bestFactor = 0;
+        for (Level level : knownLevels) {
+            if (!level.hasSameParams(params)) continue;
+            double factor = level.stepReal / stepReal;
+            long k = Math.round(factor);
+            if (k < 2 || Math.abs(factor - k) > INTEGER_FACTOR_TOLERANCE * factor
+                    || Math.abs(level.stepImg / stepImg - k) > INTEGER_FACTOR_TOLERANCE * factor) continue;
+            if (bestFactor == 0 || k < bestFactor) {
+                bestFactor = (int) k;
+                stepReal = level.stepReal / k;
+                stepImg = level.stepImg / k;
+            }
+        }
+        for (Level level : knownLevels) {
+            if (!level.hasSameParams(params)) continue;
+            double factor = level.stepReal / stepReal;
+            long k = Math.round(factor);
+            if (k >= 2 && factor == k && level.stepImg / stepImg == k) {
+                coarserLevels.add(level);
+                factors.add((int) k);
+            }
+        }
+
+        double originReal = Math.rint(viewport.getStartReal() / stepReal);
+        double originImg = Math.rint(viewport.getStartImg() / stepImg);
+        if (Math.abs(originReal) + viewport.getWidth() > MAX_INDEX
+                || Math.abs(originImg) + viewport.getHeight() > MAX_INDEX) {
+            return null;
+        }
+
+        Level level = new Level(params, stepReal, stepImg);
+        int[] factorArray = new int[factors.size()];
+        for (int i = 0; i < factorArray.length; i++) factorArray[i] = factors.get(i);
+        return new Lattice(level, (long) originReal, (long) originImg,
+                coarserLevels.toArray(new Level[coarserLevels.size()]), factorArray);
+    }
+
+    /**
+     * @param create Whether to create an empty block if it is neither in memory nor on disk
+     * @return The block, or null if it doesn't exist and {@code create} is false
+     */
+    synchronized Block getBlock(Level level, long blockX, long blockY, boolean create) {
+        BlockKey key = new BlockKey(level, blockX, blockY);
+        Block block = blocks.get(key);
+        if (block == null && diskStore != null) {
+            int[] counts = diskStore.read(level, blockX, blockY);
+            if (counts != null) block = new Block(counts);
+        }
+        if (block == null && create) {
+            int[] counts = new int[BLOCK_SIZE * BLOCK_SIZE];
+            java.util.Arrays.fill(counts, EMPTY);
+            block = new Block(counts);
+        }
+        if (block != null && !blocks.containsKey(key)) {
+            Integer count = levels.get(level);
+            levels.put(level, count == null ? 1 : count + 1);
+            blocks.put(key, block);
+        }
+        return block;
+    }
+
+    private void writeBack(BlockKey key, Block block) {
+        if (diskStore != null && block.dirty) {
+            block.dirty = false;
+            diskStore.write(key.level, key.blockX, key.blockY, block.counts);
+        }
+    }
+
+    /**
+     * Writes the blocks that changed since they were read or last written to the disk store.
+     * Renders may go on meanwhile; points they add after their block was written are written
+     * the next time.
+     */
+    public synchronized void flush() {
+        if (diskStore == null) return;
+        for (Map.Entry<BlockKey, Block> entry : blocks.entrySet()) {
+            writeBack(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Keeps the blocks on disk as well, see {@link DiskBlockStore}. Blocks are written to it
+     * when they are thrown out of memory and by {@link #flush()}.
+     *
+     * @param diskStore May be null to only keep blocks in memory
+     */
+    public synchronized void setDiskStore(DiskBlockStore diskStore) {
+        this.diskStore = diskStore;
+    }
+
+    public synchronized DiskBlockStore getDiskStore() {
+        return diskStore;
+    }
+
+    private void forgetBlock(Level level) {
+        Integer count = levels.get(level);
+        if (count == null || count <= 1) levels.remove(level);
+        else levels.put(level, count - 1);
+    }
+
+    /**
+     * Forgets the blocks in memory. The ones in the disk store are kept.
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        levels.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * The fraction of looked up points that were in the cache, since it was created.
+     */
+    public double getHitRate() {
+        long hits = this.hits.get(), total = hits + misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public synchronized long getSizeBytes() {
+        return (long) blocks.size() * BLOCK_BYTES;
+    }
+
+    public long getMaxBytes() {
+        return maxBlocks * BLOCK_BYTES;
+    }
+
+    static long floorDiv(long a, int b) {
+        long quotient = a / b;
+        return (a % b != 0 && (a < 0)) ? quotient - 1 : quotient;
+    }
+
+    /**
+     * The points of a render on a lattice, and the lattices of which the points can be reused.
+     * A Lattice remembers the last block it used, so every worker thread needs its own copy.
+     */
+    class Lattice {
+        final Level level;
+        final long originReal, originImg;
+        final Level[] coarserLevels;
+        final int[] factors;
+
+        private long blockX = Long.MIN_VALUE, blockY = Long.MIN_VALUE;
+        private Block block;
+
+        Lattice(Level level, long originReal, long originImg, Level[] coarserLevels, int[] factors) {
+            this.level = level;
+            this.originReal = originReal;
+            this.originImg = originImg;
+            this.coarserLevels = coarserLevels;
+            this.factors = factors;
+        }
+
+        Lattice copy() {
+            return new Lattice(level, originReal, originImg, coarserLevels, factors);
+        }
+
+        double realValue(int column) {
+            return (originReal + column) * level.stepReal;
+        }
+
+        double imaginaryValue(int row) {
+            return (originImg - row) * level.stepImg;
+        }
+
+        /**
+         * @return The cached iteration count of a pixel, or -1 if it isn't in the cache
+         */
+        int get(int column, int row) {
+            long i = originReal + column, j = originImg - row;
+            int value = blockFor(i, j).counts[index(i, j)];
+            if (value == EMPTY) {
+                for (int l = 0; l < coarserLevels.length; l++) {
+                    int k = factors[l];
+                    if (i % k != 0 || j % k != 0) continue;
+                    long coarseI = i / k, coarseJ = j / k;
+                    Block coarseBlock = getBlock(coarserLevels[l],
+                            floorDiv(coarseI, BLOCK_SIZE), floorDiv(coarseJ, BLOCK_SIZE), false);
+                    if (coarseBlock != null && coarseBlock.counts[index(coarseI, coarseJ)] != EMPTY) {
+                        value = coarseBlock.counts[index(coarseI, coarseJ)];
+                        block.counts[index(i, j)] = value;
+                        block.dirty = true;
+                        break;
+                    }
+                }
+            }
+            if (value == EMPTY) misses.incrementAndGet();
+            else hits.incrementAndGet();
+            return value;
+        }
+
+        void put(int column, int row, int iterations) {
+            long i = originReal + column, j = originImg - row;
+            Block block = blockFor(i, j);
+            block.counts[index(i, j)] = iterations;
+            block.dirty = true;
+        }
+
+        private Block blockFor(long i, long j) {
+            long bx = floorDiv(i, BLOCK_SIZE), by = floorDiv(j, BLOCK_SIZE);
+            if (bx != blockX || by != blockY || block == null) {
+                block = getBlock(level, bx, by, true);
+                blockX = bx;
+                blockY = by;
+            }
+            return block;
+        }
+
+        private int index(long i, long j) {
+            return (int) (j - floorDiv(j, BLOCK_SIZE) * BLOCK_SIZE) * BLOCK_SIZE
+                    + (int) (i - floorDiv(i, BLOCK_SIZE) * BLOCK_SIZE);
+        }
+    }
+
+    /**
+     * The iteration counts of the points of a block.
+     */
+    static class Block {
+        final int[] counts;
+        /**
+         * Whether points were added since the block was read from or written to the disk store.
+         */
+        volatile boolean dirty;
+
+        Block(int[] counts) {
+            this.counts = counts;
+        }
+    }
+
+    /**
+     * The values that determine the iteration counts on a lattice.
+     */
+    static class Level {
+        final int fractal, precision;
+        final boolean julia;
+        final double escapeValue, exponent, juliaReal, juliaImg, stepReal, stepImg;
+
+        Level(RenderParams params, double stepReal, double stepImg) {
+            this(params.getFractal(), params.getPrecision(), params.getEscapeValue(), exponent(params),
+                    params.isJulia(), params.isJulia() ? params.getJuliaReal() : 0,
+                    params.isJulia() ? params.getJuliaImg() : 0, stepReal, stepImg);
+        }
+
+        Level(int fractal, int precision, double escapeValue, double exponent, boolean julia,
+              double juliaReal, double juliaImg, double stepReal, double stepImg) {
+            this.fractal = fractal;
+            this.precision = precision;
+            this.escapeValue = escapeValue;
+            this.exponent = exponent;
+            this.julia = julia;
+            this.juliaReal = juliaReal;
+            this.juliaImg = juliaImg;
+            this.stepReal = stepReal;
+            this.stepImg = stepImg;
+        }
+
+        boolean hasSameParams(RenderParams params) {
+            return equalParams(new Level(params, stepReal, stepImg));
+        }
+
+        private boolean equalParams(Level other) {
+            return fractal == other.fractal && precision == other.precision && escapeValue == other.escapeValue
+                    && exponent == other.exponent && julia == other.julia && juliaReal == other.juliaReal
+                    && juliaImg == other.juliaImg;
+        }
+
+        /**
+         * Only the Multibrot set has an exponent, the others don't depend on it.
+         */
+        static double exponent(RenderParams params) {
+            return params.getFractal() == FractalEngine.MULTIBROT ? params.getExponent() : 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Level)) return false;
+            Level other = (Level) o;
+            return equalParams(other) && stepReal == other.stepReal && stepImg == other.stepImg;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(escapeValue) * 31 + Double.doubleToLongBits(exponent);
+            bits = bits * 31 + Double.doubleToLongBits(juliaReal);
+            bits = bits * 31 + Double.doubleToLongBits(juliaImg);
+            bits = bits * 31 + Double.doubleToLongBits(stepReal);
+            bits = bits * 31 + Double.doubleToLongBits(stepImg);
+            return (int) (bits ^ (bits >>> 32)) * 31 * 31 + fractal * 31 + precision;
+        }
+    }
+
+    static class BlockKey {
+        final Level level;
+        final long blockX, blockY;
+
+        BlockKey(Level level, long blockX, long blockY) {
+            this.level = level;
+            this.blockX = blockX;
+            this.blockY = blockY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BlockKey)) return false;
+            BlockKey other = (BlockKey) o;
+            return blockX == other.blockX && blockY == other.blockY && level.equals(other.level);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = blockX * 31 + blockY;
+            return level.hashCode() * 31 + (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
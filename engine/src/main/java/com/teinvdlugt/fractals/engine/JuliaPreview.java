@@ -0,0 +1,141 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders small thumbnails of Julia sets, fast enough to do on the UI thread while picking c.
+ * The thumbnails are rendered on the calling thread with the {@link FractalKernel} of the
+ * fractal and interior detection, at a low precision, and the most recent ones are kept so
+ * that picking a c again doesn't render anything.
+ */
+public class JuliaPreview {
+
+    public static final int DEFAULT_SIZE = 64;
+    public static final int DEFAULT_PRECISION = 128;
+    private static final int CACHED_THUMBNAILS = 32;
+
+    /**
+     * The part of the plane the thumbnail shows; Julia sets lie within |z| <= 2.
+     */
+    private static final double RANGE = 4;
+
+    private final int size, precision;
+    private final Map<Key, int[]> thumbnails = new LinkedHashMap<Key, int[]>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+            return size() > CACHED_THUMBNAILS;
+        }
+    };
+    private long hits, misses;
+    private long lastRenderNanos;
+
+    public JuliaPreview() {
+        this(DEFAULT_SIZE, DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param size      The width and height of the thumbnails in pixels
+     * @param precision The maximum precision of the thumbnails
+     */
+    public JuliaPreview(int size, int precision) {
+        this.size = size;
+        this.precision = precision;
+    }
+
+    /**
+     * The iteration counts of the thumbnail of the Julia set of {@code cReal + cImg * i}.
+     * The {@code precision} of the params is lowered to the precision of the preview,
+     * see {@link #getPrecision(RenderParams)}.
+     *
+     * @param params The fractal, exponent and escape value of the Julia set
+     * @return The iteration counts, row by row; don't modify them, they are cached
+     */
+    public synchronized int[] render(RenderParams params, double cReal, double cImg) {
+        int precision = getPrecision(params);
+        Key key = new Key(params.getFractal(), params.getExponent(), params.getEscapeValue(), precision, cReal, cImg);
+        int[] iterations = thumbnails.get(key);
+        if (iterations != null) {
+            hits++;
+            lastRenderNanos = 0;
+            return iterations;
+        }
+        misses++;
+
+        long start = System.nanoTime();
+        RenderParams juliaParams = new RenderParams(params.getFractal(), precision, params.getEscapeValue());
+        juliaParams.setExponent(params.getExponent());
+        juliaParams.setJulia(cReal, cImg);
+        FractalKernel kernel = FractalKernels.forParams(juliaParams);
+
+        Viewport viewport = Viewport.centered(0, 0, RANGE, size, size);
+        double[] realValues = new double[size];
+        for (int x = 0; x < size; x++) {
+            realValues[x] = viewport.realValue(x);
+        }
+        iterations = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            kernel.iterateRow(realValues, viewport.imaginaryValue(y), iterations, y * size, size,
+                    params.getEscapeValue(), precision, true);
+        }
+        thumbnails.put(key, iterations);
+        lastRenderNanos = System.nanoTime() - start;
+        return iterations;
+    }
+
+    /**
+     * The precision the thumbnails of these params are rendered with.
+     */
+    public int getPrecision(RenderParams params) {
+        return Math.min(precision, params.getPrecision());
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * How long the last call to {@link #render} took, 0 if the thumbnail was cached.
+     */
+    public synchronized long getLastRenderNanos() {
+        return lastRenderNanos;
+    }
+
+    private static class Key {
+        final int fractal, precision;
+        final double exponent, escapeValue, cReal, cImg;
+
+        Key(int fractal, double exponent, double escapeValue, int precision, double cReal, double cImg) {
+            this.fractal = fractal;
+            this.exponent = fractal == FractalEngine.MULTIBROT ? exponent : 0;
+            this.escapeValue = escapeValue;
+            this.precision = precision;
+            this.cReal = cReal;
+            this.cImg = cImg;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return fractal == other.fractal && precision == other.precision && exponent == other.exponent
+                    && escapeValue == other.escapeValue && cReal == other.cReal && cImg == other.cImg;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(exponent) * 31 + Double.doubleToLongBits(escapeValue);
+            bits = bits * 31 + Double.doubleToLongBits(cReal);
+            bits = bits * 31 + Double.doubleToLongBits(cImg);
+            return (int) (bits ^ (bits >>> 32)) * 31 * 31 + fractal * 31 + precision;
+        }
+    }
+}
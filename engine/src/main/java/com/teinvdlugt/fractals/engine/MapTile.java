@@ -0,0 +1,108 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * A square tile of the plane at a power-of-two zoom level, like the tiles of a map. At zoom
+ * level 0 the tile (0, 0) covers the square from -2 + 2i to 2 - 2i; every level has tiles of
+ * half the size of the level before, so the four tiles (2x, 2y), (2x + 1, 2y), (2x, 2y + 1) and
+ * (2x + 1, 2y + 1) of level z + 1 cover the tile (x, y) of level z. Tiles outside that square
+ * exist too, so the map can be panned without end. x grows to the right and y downwards.
+ */
+public final class MapTile {
+
+    /**
+     * The width and height of a tile in pixels.
+     */
+    public static final int SIZE = 256;
+    /**
+     * The deepest zoom level, where the pixels are still large enough to be rendered with doubles.
+     */
+    public static final int MAX_ZOOM = 40;
+    private static final double START_REAL = -2, START_IMG = 2, RANGE = 4;
+
+    private final int zoom;
+    private final long x, y;
+
+    public MapTile(int zoom, long x, long y) {
+        this.zoom = zoom;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * The width and height in the plane of the tiles of a zoom level.
+     */
+    public static double range(int zoom) {
+        return RANGE / (1L << zoom);
+    }
+
+    /**
+     * The horizontal tile coordinate of a real value at a zoom level; the tile is the integer part.
+     */
+    public static double tileX(double real, int zoom) {
+        return (real - START_REAL) / range(zoom);
+    }
+
+    /**
+     * The vertical tile coordinate of an imaginary value at a zoom level; the tile is the integer part.
+     */
+    public static double tileY(double img, int zoom) {
+        return (START_IMG - img) / range(zoom);
+    }
+
+    /**
+     * The real value at a horizontal tile coordinate.
+     */
+    public static double realValue(double tileX, int zoom) {
+        return START_REAL + tileX * range(zoom);
+    }
+
+    /**
+     * The imaginary value at a vertical tile coordinate.
+     */
+    public static double imaginaryValue(double tileY, int zoom) {
+        return START_IMG - tileY * range(zoom);
+    }
+
+    /**
+     * The tile of the level above that covers this one, or null at level 0.
+     */
+    public MapTile getParent() {
+        if (zoom == 0) return null;
+        return new MapTile(zoom - 1, x >> 1, y >> 1);
+    }
+
+    public Viewport getViewport() {
+        double range = range(zoom);
+        return new Viewport(START_REAL + x * range, START_IMG - y * range, range, range, SIZE, SIZE);
+    }
+
+    public int getZoom() {
+        return zoom;
+    }
+
+    public long getX() {
+        return x;
+    }
+
+    public long getY() {
+        return y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MapTile)) return false;
+        MapTile other = (MapTile) o;
+        return zoom == other.zoom && x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = x * 31 + y;
+        return zoom * 31 + (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return zoom + "/" + x + "/" + y;
+    }
+}
@@ -0,0 +1,280 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders {@link MapTile}s on background threads for a view that can be panned and zoomed
+ * like a map, and keeps the most recently used ones.
+ * <p/>
+ * Every time the view moves, it tells the scheduler which region it shows with
+ * {@link #update}. The tiles of that region are rendered first, the ones nearest to its
+ * center before the others, and then the ring of tiles around it on the sides it moves to,
+ * so they are ready when they come into view. Tiles that are no longer wanted are taken off
+ * the queue, and the ones that are being rendered are cancelled. Only tiles that aren't in
+ * the cache are rendered, so panning only calculates the tiles that come into view.
+ * <p/>
+ * A tile is rendered on a single worker thread with {@link FractalEngine#calculateTile}, so
+ * several tiles are rendered at the same time. Its colors are turned into whatever the view
+ * draws (e.g. a bitmap) by a {@link TileFactory} on the worker thread.
+ *
+ * @param <T> The type of the rendered tiles
+ */
+public class MapTileScheduler<T> {
+
+    /**
+     * Priorities of the tiles around the region, which come after all tiles in it.
+     */
+    private static final double PREFETCH_PRIORITY = 1e12;
+
+    /**
+     * Turns the colors of a rendered tile into what is kept in the cache. Invoked on the worker threads.
+     */
+    public interface TileFactory<T> {
+        /**
+         * @param colors The colors of the tile, row by row; the buffer is reused after this returns
+         */
+        T create(MapTile tile, int[] colors);
+    }
+
+    /**
+     * Invoked on a worker thread when a tile has been rendered and can be taken with {@link #getTile}.
+     */
+    public interface OnTileReadyListener {
+        void onTileReady(MapTile tile);
+    }
+
+    private final TileFactory<T> factory;
+    private final ExecutorService executor;
+    private final int maxCachedTiles;
+    private final LinkedHashMap<MapTile, T> cache;
+    private final PriorityQueue<Job> queue = new PriorityQueue<>(64, new Comparator<Job>() {
+        @Override
+        public int compare(Job a, Job b) {
+            return Double.compare(a.priority, b.priority);
+        }
+    });
+    private final Map<MapTile, Job> running = new HashMap<>();
+    private RenderParams params;
+    private ColorScheme colorScheme;
+    private OnTileReadyListener listener;
+    private boolean shutdown;
+    private long renderedTiles, cancelledTiles;
+
+    private class Job {
+        final MapTile tile;
+        final double priority;
+        final RenderParams params;
+        final ColorScheme colorScheme;
+        final FractalEngine engine = new FractalEngine(new TileRenderer(null, 1, MapTile.SIZE));
+
+        Job(MapTile tile, double priority) {
+            this.tile = tile;
+            this.priority = priority;
+            this.params = MapTileScheduler.this.params;
+            this.colorScheme = MapTileScheduler.this.colorScheme;
+        }
+    }
+
+    /**
+     * @param threads        The number of tiles to render at the same time
+     * @param maxCachedTiles The number of rendered tiles to keep; at least the number of tiles
+     *                       that fit on the screen, with a ring around them
+     */
+    public MapTileScheduler(TileFactory<T> factory, int threads, int maxCachedTiles) {
+        this.factory = factory;
+        this.maxCachedTiles = maxCachedTiles;
+        this.cache = new LinkedHashMap<MapTile, T>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MapTile, T> eldest) {
+                return size() > MapTileScheduler.this.maxCachedTiles;
+            }
+        };
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "MapTileScheduler-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        for (int i = 0; i < threads; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            });
+        }
+    }
+
+    /**
+     * Renders the tiles with new params from now on. The tiles of the old ones are thrown away.
+     */
+    public synchronized void setParams(RenderParams params, ColorScheme colorScheme) {
+        this.params = params;
+        this.colorScheme = colorScheme;
+        cache.clear();
+        queue.clear();
+        for (Job job : running.values()) {
+            job.engine.cancel();
+        }
+    }
+
+    /**
+     * Schedules the tiles of the region the view shows, and cancels the work on other tiles.
+     * The region is given in tile coordinates of its zoom level, see {@link MapTile#tileX}.
+     *
+     * @param directionX The horizontal direction the view moves in, or 0
+     * @param directionY The vertical direction the view moves in (positive is downwards), or 0.
+     *                   When both are 0, all tiles around the region are prefetched.
+     */
+    public synchronized void update(int zoom, double left, double top, double right, double bottom,
+                                    double directionX, double directionY) {
+        if (params == null || shutdown) return;
+        long firstX = (long) Math.floor(left), lastX = (long) Math.ceil(right) - 1;
+        long firstY = (long) Math.floor(top), lastY = (long) Math.ceil(bottom) - 1;
+        double centerX = (left + right) / 2, centerY = (top + bottom) / 2;
+        boolean idle = directionX == 0 && directionY == 0;
+
+        Map<MapTile, Double> wanted = new HashMap<>();
+        for (long y = firstY - 1; y <= lastY + 1; y++) {
+            for (long x = firstX - 1; x <= lastX + 1; x++) {
+                boolean visible = x >= firstX && x <= lastX && y >= firstY && y <= lastY;
+                if (!visible && !idle && !(directionX > 0 && x > lastX) && !(directionX < 0 && x < firstX)
+                        && !(directionY > 0 && y > lastY) && !(directionY < 0 && y < firstY)) {
+                    continue;
+                }
+                double dx = x + .5 - centerX, dy = y + .5 - centerY;
+                wanted.put(new MapTile(zoom, x, y), (visible ? 0 : PREFETCH_PRIORITY) + dx * dx + dy * dy);
+            }
+        }
+
+        for (Job job : running.values()) {
+            if (!wanted.containsKey(job.tile)) job.engine.cancel();
+        }
+        queue.clear();
+        for (Map.Entry<MapTile, Double> entry : wanted.entrySet()) {
+            // Also marks the tile as recently used
+            if (cache.get(entry.getKey()) != null) continue;
+            Job job = running.get(entry.getKey());
+            if (job != null && !job.engine.isCancelled()) continue;
+            queue.add(new Job(entry.getKey(), entry.getValue()));
+        }
+        notifyAll();
+    }
+
+    private void work() {
+        int[] iterations = new int[MapTile.SIZE * MapTile.SIZE];
+        int[] colors = new int[iterations.length];
+        while (true) {
+            Job job;
+            synchronized (this) {
+                while (!shutdown && queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (shutdown) return;
+                job = queue.poll();
+                running.put(job.tile, job);
+            }
+
+            T tile = null;
+            try {
+                if (job.engine.calculateTile(job.tile.getViewport(), job.params, iterations, 0, 0,
+                        MapTile.SIZE, MapTile.SIZE)) {
+                    job.colorScheme.color(iterations, colors, job.params.getPrecision(), MapTile.SIZE,
+                            0, 0, MapTile.SIZE, MapTile.SIZE);
+                    tile = factory.create(job.tile, colors);
+                }
+            } finally {
+                OnTileReadyListener listener;
+                synchronized (this) {
+                    // A cancelled job may have been scheduled again
+                    if (running.get(job.tile) == job) running.remove(job.tile);
+                    // The params may have changed while it was rendered
+                    if (tile != null && job.params == params) {
+                        cache.put(job.tile, tile);
+                        renderedTiles++;
+                    } else {
+                        tile = null;
+                        cancelledTiles++;
+                    }
+                    listener = this.listener;
+                    notifyAll();
+                }
+                if (tile != null && listener != null) listener.onTileReady(job.tile);
+            }
+        }
+    }
+
+    /**
+     * The rendered tile, or null if it hasn't been rendered (yet).
+     */
+    public synchronized T getTile(MapTile tile) {
+        return cache.get(tile);
+    }
+
+    /**
+     * Waits until all scheduled tiles are rendered.
+     *
+     * @return false if they weren't rendered within the timeout
+     */
+    public synchronized boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (!queue.isEmpty() || !running.isEmpty()) {
+            long left = end - System.currentTimeMillis();
+            if (left <= 0) return false;
+            wait(left);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the worker threads. The scheduler can't be used any more afterwards.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        queue.clear();
+        for (Job job : running.values()) {
+            job.engine.cancel();
+        }
+        notifyAll();
+        executor.shutdown();
+    }
+
+    public synchronized void setOnTileReadyListener(OnTileReadyListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * The number of tiles that were rendered and put in the cache.
+     */
+    public synchronized long getRenderedTiles() {
+        return renderedTiles;
+    }
+
+    /**
+     * The number of tiles that were cancelled while they were rendered, or were rendered with old params.
+     */
+    public synchronized long getCancelledTiles() {
+        return cancelledTiles;
+    }
+
+    public synchronized int getCachedTiles() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,124 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * The color of every iteration count from 0 to the precision, calculated once so that
+ * coloring a pixel is a single array lookup.
+ */
+public class Palette {
+
+    private final ColorScheme colorScheme;
+    private final int precision;
+    private final int[] colors;
+
+    private Palette(ColorScheme colorScheme, int precision) {
+        this.colorScheme = colorScheme;
+        this.precision = precision;
+        this.colors = new int[precision + 1];
+    }
+
+    /**
+     * Builds the palette of a color scheme on the calling thread.
+     */
+    public static Palette build(ColorScheme colorScheme, int precision) {
+        Palette palette = new Palette(colorScheme, precision);
+        palette.fill(0, precision + 1);
+        return palette;
+    }
+
+    /**
+     * Builds the palette of a color scheme on the worker threads of a renderer.
+     *
+     * @return The palette, or null if the renderer was cancelled
+     */
+    public static Palette build(ColorScheme colorScheme, int precision, TileRenderer renderer) {
+        final Palette palette = new Palette(colorScheme, precision);
+        boolean finished = renderer.render(precision + 1, 1, new TileRenderer.TileCalculator() {
+            @Override
+            public void calculateTile(int left, int top, int width, int height) {
+                palette.fill(left, left + width);
+            }
+        }, null);
+        return finished ? palette : null;
+    }
+
+    private void fill(int from, int to) {
+        for (int i = from; i < to; i++) {
+            colors[i] = colorScheme.calculateColor(i, precision);
+        }
+    }
+
+    public int color(int iterations) {
+        return iterations >= 0 && iterations <= precision ? colors[iterations]
+                : colorScheme.calculateColor(iterations, precision);
+    }
+
+    /**
+     * Colors the pixels of a rectangular region of {@code iterations} into {@code colors}.
+     * Both arrays are laid out row by row with the given stride.
+     */
+    public void color(int[] iterations, int[] colors, int stride, int left, int top, int width, int height) {
+        int[] table = this.colors;
+        for (int y = top; y < top + height; y++) {
+            for (int i = y * stride + left; i < y * stride + left + width; i++) {
+                int count = iterations[i];
+                colors[i] = count >= 0 && count <= precision ? table[count] : color(count);
+            }
+        }
+    }
+
+    /**
+     * Colors the pixels of a rectangular region of continuous iteration counts into {@code colors},
+     * blending the colors of the two integer counts around every count. The last count before
+     * the precision isn't blended with the black of the set.
+     */
+    public void color(float[] smooth, int[] colors, int stride, int left, int top, int width, int height) {
+        int[] table = this.colors;
+        for (int y = top; y < top + height; y++) {
+            for (int i = y * stride + left; i < y * stride + left + width; i++) {
+                float count = smooth[i];
+                int floor = (int) count;
+                if (floor < 0 || floor >= precision - 1) {
+                    colors[i] = color(floor);
+                    continue;
+                }
+                int weight = (int) ((count - floor) * 256);
+                colors[i] = blend(table[floor], table[floor + 1], weight);
+            }
+        }
+    }
+
+    /**
+     * Blends the colors of a rectangular region with the color of the set by the distances of the
+     * pixels to its boundary: completely at the boundary, and less the further away the pixel is,
+     * up to {@code boundaryWidth} pixels. The boundary is anti-aliased this way, and filaments that
+     * pass between the pixels are drawn as thin lines instead of disappearing.
+     *
+     * @param distances The distances in pixels, row by row; infinity (no estimate) leaves a pixel alone
+     */
+    public void shade(float[] distances, int[] colors, double boundaryWidth, int stride,
+                      int left, int top, int width, int height) {
+        int set = color(precision);
+        float scale = (float) (256 / boundaryWidth);
+        for (int y = top; y < top + height; y++) {
+            for (int i = y * stride + left; i < y * stride + left + width; i++) {
+                float weight = distances[i] * scale;
+                if (weight < 256) colors[i] = blend(set, colors[i], (int) weight);
+            }
+        }
+    }
+
+    /**
+     * Mixes two opaque colors channel by channel, {@code weight / 256} of the second one.
+     */
+    private static int blend(int from, int to, int weight) {
+        if (from == to) return from;
+        int inverse = 256 - weight;
+        int redBlue = ((from & 0xFF00FF) * inverse + (to & 0xFF00FF) * weight) >>> 8;
+        int green = ((from & 0xFF00) * inverse + (to & 0xFF00) * weight) >>> 8;
+        return 0xFF000000 | (redBlue & 0xFF00FF) | (green & 0xFF00);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+}
@@ -0,0 +1,235 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Deep zoom rendering of the Mandelbrot set by perturbation theory. Only the orbit of the
+ * center of the viewport (the reference orbit Z) is calculated with arbitrary precision.
+ * Every pixel c = C + dc is then iterated as its (small) difference d = z - Z:
+ * <pre>
+ *     d' = 2 * Z * d + d^2 + dc
+ * </pre>
+ * which doubles can do, because it is d that is tiny and not its precision.
+ * <p/>
+ * The first iterations are skipped with a series approximation d = A*dc + B*dc^2 + C*dc^3,
+ * of which the coefficients only depend on the reference orbit.
+ * <p/>
+ * When |z| gets smaller than |d|, d has lost its precision relative to z, which shows up as
+ * glitches (flat blobs of wrong iteration counts). The pixel is then rebased: it continues
+ * with d = z from the start of the reference orbit, which is exact because Z0 = 0.
+ * The same happens when the reference orbit escapes before the pixel does.
+ */
+public class Perturbation {
+
+    /**
+     * The series approximation is used for as long as its third-order term is this much
+     * smaller than its second-order term, for the corners of the viewport.
+     */
+    private static final double SERIES_TOLERANCE = 1e-6;
+
+    private final DeepViewport viewport;
+    private final int precision;
+    private final double escapeValue;
+
+    /**
+     * The reference orbit, rounded to doubles, which is shared with the perturbations that
+     * reuse it. The point it belongs to and the number of digits it was calculated with.
+     */
+    private final double[] refReal, refImg;
+    private final int refLength;
+    private final BigDecimal refCenterReal, refCenterImg;
+    private final int refDigits;
+
+    /**
+     * The series approximation, and the viewport it was calculated for.
+     */
+    private final DeepViewport seriesViewport;
+    private final int skippedIterations;
+    private final double aReal, aImg, bReal, bImg, cReal, cImg;
+
+    public Perturbation(DeepViewport viewport, int precision, double escapeValue) {
+        this(viewport, precision, escapeValue, null);
+    }
+
+    /**
+     * A perturbation of a viewport around the same point as another one, which reuses its
+     * reference orbit instead of calculating it again, e.g. for the frames of a zoom. If the
+     * viewport is part of the other one, like a {@link DeepViewport#strip} of it, its series
+     * approximation is reused as well, so its pixels come out exactly the same.
+     *
+     * @see #canReuseFor(DeepViewport, int, double)
+     */
+    public Perturbation(DeepViewport viewport, Perturbation reference) {
+        this(viewport, reference.precision, reference.escapeValue, reference);
+    }
+
+    private Perturbation(DeepViewport viewport, int precision, double escapeValue, Perturbation reference) {
+        this.viewport = viewport;
+        this.precision = precision;
+        this.escapeValue = escapeValue;
+
+        if (reference != null) {
+            refReal = reference.refReal;
+            refImg = reference.refImg;
+            refLength = reference.refLength;
+            refCenterReal = reference.refCenterReal;
+            refCenterImg = reference.refCenterImg;
+            refDigits = reference.refDigits;
+        } else {
+            refReal = new double[precision + 1];
+            refImg = new double[precision + 1];
+            refCenterReal = viewport.getCenterReal();
+            refCenterImg = viewport.getCenterImg();
+            MathContext mc = viewport.getMathContext();
+            refDigits = mc.getPrecision();
+            refLength = calculateReferenceOrbit(refCenterReal, refCenterImg, mc);
+        }
+
+        if (reference != null && reference.seriesViewport.contains(viewport)) {
+            seriesViewport = reference.seriesViewport;
+            skippedIterations = reference.skippedIterations;
+            aReal = reference.aReal;
+            aImg = reference.aImg;
+            bReal = reference.bReal;
+            bImg = reference.bImg;
+            cReal = reference.cReal;
+            cImg = reference.cImg;
+            return;
+        }
+
+        // Series approximation: find the last iteration at which it is still accurate
+        // for the corners of the viewport, which are furthest away from the reference.
+        seriesViewport = viewport;
+        double maxDelta = Math.hypot(
+                Math.max(Math.abs(viewport.deltaReal(0)), Math.abs(viewport.deltaReal(viewport.getWidth()))),
+                Math.max(Math.abs(viewport.deltaImg(0)), Math.abs(viewport.deltaImg(viewport.getHeight()))));
+        double aR = 0, aI = 0, bR = 0, bI = 0, cR = 0, cI = 0;
+        int n = 0;
+        while (n < refLength - 1) {
+            double zR = refReal[n], zI = refImg[n];
+            // A' = 2ZA + 1, B' = 2ZB + A^2, C' = 2ZC + 2AB
+            double aRNew = 2 * (zR * aR - zI * aI) + 1;
+            double aINew = 2 * (zR * aI + zI * aR);
+            double bRNew = 2 * (zR * bR - zI * bI) + aR * aR - aI * aI;
+            double bINew = 2 * (zR * bI + zI * bR) + 2 * aR * aI;
+            double cRNew = 2 * (zR * cR - zI * cI) + 2 * (aR * bR - aI * bI);
+            double cINew = 2 * (zR * cI + zI * cR) + 2 * (aR * bI + aI * bR);
+
+            double aTerm = Math.hypot(aRNew, aINew) * maxDelta;
+            double bTerm = Math.hypot(bRNew, bINew) * maxDelta * maxDelta;
+            double cTerm = Math.hypot(cRNew, cINew) * maxDelta * maxDelta * maxDelta;
+            if (cTerm > SERIES_TOLERANCE * bTerm || Double.isInfinite(cTerm) || Double.isNaN(cTerm)) break;
+            // Pixels must not be able to escape during the skipped iterations
+            if (Math.hypot(refReal[n + 1], refImg[n + 1]) + aTerm + bTerm + cTerm > escapeValue) break;
+
+            aR = aRNew;
+            aI = aINew;
+            bR = bRNew;
+            bI = bINew;
+            cR = cRNew;
+            cI = cINew;
+            n++;
+        }
+        skippedIterations = n;
+        aReal = aR;
+        aImg = aI;
+        bReal = bR;
+        bImg = bI;
+        cReal = cR;
+        cImg = cI;
+    }
+
+    /**
+     * Iterates Z = Z^2 + C with arbitrary precision until it escapes or the precision is
+     * reached, and stores the rounded values in {@code refReal} and {@code refImg}.
+     *
+     * @return The number of stored values
+     */
+    private int calculateReferenceOrbit(BigDecimal centerReal, BigDecimal centerImg, MathContext mc) {
+        BigDecimal zReal = BigDecimal.ZERO, zImg = BigDecimal.ZERO;
+        int n = 0;
+        while (true) {
+            double real = zReal.doubleValue(), img = zImg.doubleValue();
+            refReal[n] = real;
+            refImg[n] = img;
+            if (real * real + img * img > escapeValue * escapeValue || n == precision) return n + 1;
+
+            BigDecimal zRealNew = zReal.multiply(zReal, mc).subtract(zImg.multiply(zImg, mc), mc).add(centerReal, mc);
+            zImg = zReal.multiply(zImg, mc).multiply(BigDecimal.valueOf(2), mc).add(centerImg, mc);
+            zReal = zRealNew;
+            n++;
+        }
+    }
+
+    /**
+     * @param column The column of the pixel in the viewport
+     * @param row    The row of the pixel in the viewport
+     * @param stats  The rebases of the pixel are added to these stats, may be null
+     * @return The number of iterations after which the pixel escaped, or {@code precision}
+     */
+    public int iterate(int column, int row, RenderStats stats) {
+        double dcReal = viewport.deltaReal(column);
+        double dcImg = viewport.deltaImg(row);
+
+        // d = A*dc + B*dc^2 + C*dc^3
+        double dc2Real = dcReal * dcReal - dcImg * dcImg;
+        double dc2Img = 2 * dcReal * dcImg;
+        double dc3Real = dc2Real * dcReal - dc2Img * dcImg;
+        double dc3Img = dc2Real * dcImg + dc2Img * dcReal;
+        double dReal = aReal * dcReal - aImg * dcImg + bReal * dc2Real - bImg * dc2Img + cReal * dc3Real - cImg * dc3Img;
+        double dImg = aReal * dcImg + aImg * dcReal + bReal * dc2Img + bImg * dc2Real + cReal * dc3Img + cImg * dc3Real;
+
+        double escape2 = escapeValue * escapeValue;
+        int iterations = skippedIterations;
+        int m = skippedIterations;
+        int rebases = 0;
+        while (iterations < precision) {
+            double zReal = refReal[m] + dReal;
+            double zImg = refImg[m] + dImg;
+            double z2 = zReal * zReal + zImg * zImg;
+            if (z2 > escape2) break;
+
+            if (z2 < dReal * dReal + dImg * dImg || m == refLength - 1) {
+                dReal = zReal;
+                dImg = zImg;
+                m = 0;
+                rebases++;
+            }
+
+            // d = (2Z + d) * d + dc
+            double twoZdReal = 2 * refReal[m] + dReal;
+            double twoZdImg = 2 * refImg[m] + dImg;
+            double dRealNew = twoZdReal * dReal - twoZdImg * dImg + dcReal;
+            dImg = twoZdReal * dImg + twoZdImg * dReal + dcImg;
+            dReal = dRealNew;
+            iterations++;
+            m++;
+        }
+
+        if (stats != null && rebases > 0) stats.addRebases(rebases);
+        return iterations;
+    }
+
+    /**
+     * Whether the reference orbit of this perturbation can be used for a viewport: it has to be
+     * around the same point, and not be zoomed in further than the orbit has digits for.
+     */
+    public boolean canReuseFor(DeepViewport viewport, int precision, double escapeValue) {
+        return precision == this.precision && escapeValue == this.escapeValue
+                && viewport.getMathContext().getPrecision() <= refDigits
+                && viewport.getCenterReal().compareTo(refCenterReal) == 0
+                && viewport.getCenterImg().compareTo(refCenterImg) == 0;
+    }
+
+    /**
+     * The number of iterations that every pixel skips thanks to the series approximation.
+     */
+    public int getSkippedIterations() {
+        return skippedIterations;
+    }
+
+    public int getReferenceLength() {
+        return refLength;
+    }
+}
@@ -0,0 +1,213 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an RGB PNG image row by row, so that images of any size can be written with the memory
+ * of a few rows. The compressed rows are written in IDAT chunks of {@link #CHUNK_BYTES} as they
+ * come out of the deflater. Every row is filtered with the PNG filter that gives the smallest
+ * sum of absolute differences, like most encoders do.
+ */
+public class PngWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int FILTER_NONE = 0, FILTER_SUB = 1, FILTER_UP = 2, FILTER_PAETH = 4;
+    private static final int BYTES_PER_PIXEL = 3;
+
+    private final OutputStream out;
+    private final int width, height;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    /**
+     * The current and the previous row, unfiltered, and the current row with every filter.
+     * The first byte of the filtered rows is the filter type.
+     */
+    private byte[] row, previous;
+    private final byte[][] filtered = new byte[5][];
+    private final byte[] chunk = new byte[CHUNK_BYTES];
+    private int chunkLength;
+    private int rowsWritten;
+    private boolean finished;
+
+    /**
+     * Writes the header of the image.
+     *
+     * @param level The compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     */
+    public PngWriter(OutputStream out, int width, int height, int level) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Empty image: " + width + "x" + height);
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        deflater = new Deflater(level);
+        row = new byte[width * BYTES_PER_PIXEL];
+        previous = new byte[row.length];
+        for (int filter = 0; filter < filtered.length; filter++) {
+            if (filter == 3) continue; // The average filter is rarely the best, so it isn't tried
+            filtered[filter] = new byte[row.length + 1];
+            filtered[filter][0] = (byte) filter;
+        }
+
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8; // bits per sample
+        header[9] = 2; // RGB
+        // Compression, filter and interlace methods are all 0
+        writeChunk("IHDR", header, header.length);
+    }
+
+    public PngWriter(OutputStream out, int width, int height) throws IOException {
+        this(out, width, height, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Writes the next rows of the image.
+     *
+     * @param colors The colors of the rows (the alpha is ignored), row by row
+     * @param offset The index of the first pixel in {@code colors}
+     * @param rows   The number of rows to write
+     */
+    public void writeRows(int[] colors, int offset, int rows) throws IOException {
+        if (rowsWritten + rows > height) {
+            throw new IllegalStateException("The image only has " + height + " rows");
+        }
+        for (int y = 0; y < rows; y++) {
+            writeRow(colors, offset + y * width);
+        }
+    }
+
+    private void writeRow(int[] colors, int offset) throws IOException {
+        byte[] temp = previous;
+        previous = row;
+        row = temp;
+        for (int x = 0, i = 0; x < width; x++) {
+            int color = colors[offset + x];
+            row[i++] = (byte) (color >> 16);
+            row[i++] = (byte) (color >> 8);
+            row[i++] = (byte) color;
+        }
+
+        byte[] none = filtered[FILTER_NONE], sub = filtered[FILTER_SUB],
+                up = filtered[FILTER_UP], paeth = filtered[FILTER_PAETH];
+        // The previous row of the first row is all zeros, which makes up equal to none and paeth equal to sub
+        boolean first = rowsWritten == 0;
+        long sumNone = 0, sumSub = 0, sumUp = 0, sumPaeth = 0;
+        for (int i = 0; i < row.length; i++) {
+            int value = row[i] & 0xFF;
+            int left = i >= BYTES_PER_PIXEL ? row[i - BYTES_PER_PIXEL] & 0xFF : 0;
+            int above = first ? 0 : previous[i] & 0xFF;
+            int aboveLeft = first || i < BYTES_PER_PIXEL ? 0 : previous[i - BYTES_PER_PIXEL] & 0xFF;
+            byte n = (byte) value, s = (byte) (value - left), u = (byte) (value - above),
+                    p = (byte) (value - paethPredictor(left, above, aboveLeft));
+            none[i + 1] = n;
+            sub[i + 1] = s;
+            up[i + 1] = u;
+            paeth[i + 1] = p;
+            sumNone += Math.abs(n);
+            sumSub += Math.abs(s);
+            sumUp += Math.abs(u);
+            sumPaeth += Math.abs(p);
+        }
+        byte[] best = none;
+        long bestSum = sumNone;
+        if (sumSub < bestSum) {
+            best = sub;
+            bestSum = sumSub;
+        }
+        if (sumUp < bestSum) {
+            best = up;
+            bestSum = sumUp;
+        }
+        if (sumPaeth < bestSum) best = paeth;
+
+        deflater.setInput(best, 0, best.length);
+        while (!deflater.needsInput()) {
+            drainDeflater();
+        }
+        rowsWritten++;
+    }
+
+    private static int paethPredictor(int left, int above, int aboveLeft) {
+        int estimate = left + above - aboveLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceAbove = Math.abs(estimate - above);
+        int distanceAboveLeft = Math.abs(estimate - aboveLeft);
+        if (distanceLeft <= distanceAbove && distanceLeft <= distanceAboveLeft) return left;
+        if (distanceAbove <= distanceAboveLeft) return above;
+        return aboveLeft;
+    }
+
+    /**
+     * Moves compressed data into the chunk buffer, and writes the chunk when it is full.
+     */
+    private void drainDeflater() throws IOException {
+        chunkLength += deflater.deflate(chunk, chunkLength, chunk.length - chunkLength);
+        if (chunkLength == chunk.length) {
+            writeChunk("IDAT", chunk, chunkLength);
+            chunkLength = 0;
+        }
+    }
+
+    /**
+     * Writes the rest of the compressed data and the end of the image, after all rows were written.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        if (rowsWritten != height) {
+            throw new IllegalStateException(rowsWritten + " of " + height + " rows were written");
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            drainDeflater();
+        }
+        if (chunkLength > 0) writeChunk("IDAT", chunk, chunkLength);
+        chunkLength = 0;
+        writeChunk("IEND", chunk, 0);
+        out.flush();
+        finished = true;
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] header = new byte[8];
+        writeInt(header, 0, length);
+        for (int i = 0; i < 4; i++) {
+            header[4 + i] = (byte) type.charAt(i);
+        }
+        crc.reset();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, length);
+        out.write(header);
+        out.write(data, 0, length);
+        byte[] trailer = new byte[4];
+        writeInt(trailer, 0, (int) crc.getValue());
+        out.write(trailer);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * Frees the deflater and closes the stream. The image is only complete if {@link #finish()}
+     * was invoked before.
+     */
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        out.close();
+    }
+}
@@ -0,0 +1,137 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders images that are too large to keep in memory, like posters of 16384 x 16384 pixels,
+ * and streams them into a PNG. The image is rendered in strips of whole rows with the worker
+ * threads of the engine; every strip is colored while its tiles finish and written to the
+ * {@link PngWriter} before the next one starts. The memory it needs depends only on the width
+ * of the image and the size of a strip.
+ */
+public class PosterExport {
+
+    /**
+     * The default number of pixels in a strip: 4 MB of iteration counts and 4 MB of colors.
+     */
+    public static final int DEFAULT_STRIP_PIXELS = 1024 * 1024;
+
+    /**
+     * Invoked on the calling thread after every strip.
+     */
+    public interface OnProgressListener {
+        void onProgress(int rowsWritten, int height);
+    }
+
+    private final FractalEngine engine;
+    private final int stripPixels;
+    private volatile boolean cancelled;
+
+    /**
+     * @param stripPixels The maximum number of pixels in a strip, which is at least one row
+     */
+    public PosterExport(FractalEngine engine, int stripPixels) {
+        this.engine = engine;
+        this.stripPixels = stripPixels;
+    }
+
+    public PosterExport() {
+        this(new FractalEngine(), DEFAULT_STRIP_PIXELS);
+    }
+
+    /**
+     * Renders a viewport into a PNG. The stream is closed afterwards.
+     *
+     * @param smooth Whether to color with continuous iteration counts, which takes another 4 bytes per pixel
+     * @return false if the export was cancelled, in which case the image is incomplete
+     */
+    public boolean export(final Viewport viewport, final RenderParams params, ColorScheme colorScheme,
+                          boolean smooth, OutputStream out, OnProgressListener listener) throws IOException {
+        return export(viewport.getWidth(), viewport.getHeight(), new StripRenderer() {
+            @Override
+            public boolean render(int top, int rows, int[] iterations, float[] smooth,
+                                  TileRenderer.TileCalculator colorer) {
+                return engine.render(viewport.strip(top, rows), params, iterations, smooth, colorer, null);
+            }
+        }, params.getPrecision(), colorScheme, smooth, out, listener);
+    }
+
+    /**
+     * Renders a viewport that may be zoomed in further than doubles can resolve into a PNG.
+     * If it needs {@link Perturbation}, the reference orbit and the series approximation are
+     * calculated once, for the center of the whole image, and every strip reuses them, so the
+     * image is the same as a render of the viewport at once.
+     *
+     * @see #export(Viewport, RenderParams, ColorScheme, boolean, OutputStream, OnProgressListener)
+     */
+    public boolean export(final DeepViewport viewport, final RenderParams params, ColorScheme colorScheme,
+                          boolean smooth, OutputStream out, OnProgressListener listener) throws IOException {
+        if (params.getFractal() == FractalEngine.MANDELBROT_SET && !params.isJulia()
+                && FractalEngine.needsPerturbation(viewport.getRangeReal(), viewport.getWidth())) {
+            engine.setReferenceOrbit(new Perturbation(viewport, params.getPrecision(), params.getEscapeValue()));
+        }
+        return export(viewport.getWidth(), viewport.getHeight(), new StripRenderer() {
+            @Override
+            public boolean render(int top, int rows, int[] iterations, float[] smooth,
+                                  TileRenderer.TileCalculator colorer) {
+                return engine.render(viewport.strip(top, rows), params, iterations, smooth, colorer, null);
+            }
+        }, params.getPrecision(), colorScheme, smooth, out, listener);
+    }
+
+    private interface StripRenderer {
+        boolean render(int top, int rows, int[] iterations, float[] smooth, TileRenderer.TileCalculator colorer);
+    }
+
+    private boolean export(final int width, int height, StripRenderer renderer, final int precision,
+                           final ColorScheme colorScheme, boolean smooth, OutputStream out,
+                           OnProgressListener listener) throws IOException {
+        int stripRows = Math.max(1, Math.min(height, stripPixels / width));
+        final int[] iterations = new int[width * stripRows];
+        final int[] colors = new int[iterations.length];
+        final float[] smoothIterations = smooth ? new float[iterations.length] : null;
+        TileRenderer.TileCalculator colorer = new TileRenderer.TileCalculator() {
+            @Override
+            public void calculateTile(int left, int top, int tileWidth, int tileHeight) {
+                if (smoothIterations != null) {
+                    colorScheme.color(smoothIterations, colors, precision, width, left, top, tileWidth, tileHeight);
+                } else {
+                    colorScheme.color(iterations, colors, precision, width, left, top, tileWidth, tileHeight);
+                }
+            }
+        };
+
+        PngWriter writer = new PngWriter(out, width, height);
+        try {
+            if (!colorScheme.preparePalette(precision, engine.getRenderer())) return false;
+            for (int top = 0; top < height; top += stripRows) {
+                if (cancelled) return false;
+                int rows = Math.min(stripRows, height - top);
+                if (!renderer.render(top, rows, iterations, smoothIterations, colorer)) return false;
+                writer.writeRows(colors, 0, rows);
+                if (listener != null) listener.onProgress(top + rows, height);
+            }
+            writer.finish();
+            return true;
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Stops the export. Can be invoked from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        engine.cancel();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public FractalEngine getEngine() {
+        return engine;
+    }
+}
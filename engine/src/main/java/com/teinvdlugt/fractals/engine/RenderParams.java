@@ -0,0 +1,156 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * The values that determine the iteration counts of a render, apart from the viewport.
+ */
+public class RenderParams {
+
+    /**
+     * Calculate every pixel.
+     */
+    public static final int MODE_BRUTE_FORCE = 0;
+    /**
+     * Calculate the borders of rectangles first and fill rectangles with a uniform
+     * border without calculating their inside (Mariani-Silver). This is a heuristic: details
+     * that pass between the pixels of a border are lost, so a few pixels can differ from
+     * {@link #MODE_BRUTE_FORCE}.
+     */
+    public static final int MODE_SUBDIVISION = 1;
+
+    private int fractal = FractalEngine.MANDELBROT_SET;
+    private int precision = 400;
+    private double escapeValue = 2;
+    private double exponent = 2;
+    private boolean julia = false;
+    private double juliaReal, juliaImg;
+    private boolean interiorDetection = false;
+    private int renderMode = MODE_BRUTE_FORCE;
+    private boolean progressive = false;
+    private boolean floatArithmetic = false;
+
+    public RenderParams() {
+    }
+
+    public RenderParams(int fractal, int precision, double escapeValue) {
+        this.fractal = fractal;
+        this.precision = precision;
+        this.escapeValue = escapeValue;
+    }
+
+    public int getFractal() {
+        return fractal;
+    }
+
+    public void setFractal(int fractal) {
+        this.fractal = fractal;
+    }
+
+    /**
+     * The maximum number of iterations. Points that haven't escaped after this many
+     * iterations are considered to be in the set.
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(int precision) {
+        this.precision = precision;
+    }
+
+    public double getEscapeValue() {
+        return escapeValue;
+    }
+
+    public void setEscapeValue(double escapeValue) {
+        this.escapeValue = escapeValue;
+    }
+
+    /**
+     * The exponent d of {@link FractalEngine#MULTIBROT}, z^d + c. Ignored by the other fractals.
+     */
+    public double getExponent() {
+        return exponent;
+    }
+
+    public void setExponent(double exponent) {
+        this.exponent = exponent;
+    }
+
+    /**
+     * Whether to render the Julia set of the fractal: every pixel is the starting point of
+     * the orbit, and c is fixed at {@link #getJuliaReal()} + {@link #getJuliaImg()} i.
+     */
+    public boolean isJulia() {
+        return julia;
+    }
+
+    public void setJulia(boolean julia) {
+        this.julia = julia;
+    }
+
+    public double getJuliaReal() {
+        return juliaReal;
+    }
+
+    public double getJuliaImg() {
+        return juliaImg;
+    }
+
+    /**
+     * Renders the Julia set of c = {@code real + img * i}.
+     */
+    public void setJulia(double real, double img) {
+        this.julia = true;
+        this.juliaReal = real;
+        this.juliaImg = img;
+    }
+
+    /**
+     * Whether to stop iterating points as soon as they are known to be in the set.
+     * See {@link EscapeTime#iterateWithInteriorDetection}.
+     */
+    public boolean isInteriorDetection() {
+        return interiorDetection;
+    }
+
+    public void setInteriorDetection(boolean interiorDetection) {
+        this.interiorDetection = interiorDetection;
+    }
+
+    /**
+     * {@link #MODE_BRUTE_FORCE} or {@link #MODE_SUBDIVISION}.
+     */
+    public int getRenderMode() {
+        return renderMode;
+    }
+
+    public void setRenderMode(int renderMode) {
+        this.renderMode = renderMode;
+    }
+
+    /**
+     * Whether to render a coarse preview first and refine it in passes of 1/8, 1/4, 1/2 and
+     * full resolution. The passes don't calculate any pixel twice. With {@link #MODE_SUBDIVISION}
+     * the last pass subdivides instead of calculating the remaining pixels one by one.
+     */
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    /**
+     * Whether zoomed out views may be iterated with {@link FractalEngine#ARITHMETIC_FLOAT floats},
+     * which is faster, but changes the counts of a few hundred pixels of a view along the boundary
+     * of the set. Off by default.
+     */
+    public boolean isFloatArithmetic() {
+        return floatArithmetic;
+    }
+
+    public void setFloatArithmetic(boolean floatArithmetic) {
+        this.floatArithmetic = floatArithmetic;
+    }
+}
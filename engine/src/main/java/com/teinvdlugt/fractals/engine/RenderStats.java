@@ -0,0 +1,212 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters that are filled in while rendering a frame. The worker threads add their
+ * counts once per tile, so the counters can be read while the render is running.
+ * <p/>
+ * The times of the phases are added up over all threads that worked on them, so with more
+ * than one thread the iterate and color times can be longer than the wall time. The engine
+ * measures iterating and coloring; uploading the pixels to the screen and scaling them are
+ * measured by whoever shows the frame, e.g. the app.
+ */
+public class RenderStats {
+
+    private final AtomicLong earlyExitPixels = new AtomicLong();
+    private final AtomicLong iteratedPixels = new AtomicLong();
+    private final AtomicLong outputPixels = new AtomicLong();
+    private final AtomicLong rebases = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong iterations = new AtomicLong();
+    private final AtomicLong escapedPixels = new AtomicLong();
+    private final AtomicLong interiorPixels = new AtomicLong();
+    private final AtomicLong iterateNanos = new AtomicLong();
+    private final AtomicLong colorNanos = new AtomicLong();
+    private final AtomicLong uploadNanos = new AtomicLong();
+    private final AtomicLong scaleNanos = new AtomicLong();
+    private volatile long wallNanos;
+    private volatile int threads = 1;
+    private volatile int arithmetic = FractalEngine.ARITHMETIC_DOUBLE;
+
+    /**
+     * The number of pixels that were found to be in the set by interior detection,
+     * without doing all {@code precision} iterations.
+     */
+    public long getEarlyExitPixels() {
+        return earlyExitPixels.get();
+    }
+
+    public void addEarlyExitPixels(long pixels) {
+        earlyExitPixels.addAndGet(pixels);
+    }
+
+    /**
+     * The number of pixels that were actually iterated. Less than {@link #getOutputPixels()}
+     * when the subdivision mode filled in some rectangles.
+     */
+    public long getIteratedPixels() {
+        return iteratedPixels.get();
+    }
+
+    public void addIteratedPixels(long pixels) {
+        iteratedPixels.addAndGet(pixels);
+    }
+
+    /**
+     * The number of pixels of the finished (or cancelled) tiles.
+     */
+    public long getOutputPixels() {
+        return outputPixels.get();
+    }
+
+    public void addOutputPixels(long pixels) {
+        outputPixels.addAndGet(pixels);
+    }
+
+    /**
+     * The number of times a pixel was rebased to the start of the reference orbit
+     * by the {@link Perturbation} renderer.
+     */
+    public long getRebases() {
+        return rebases.get();
+    }
+
+    public void addRebases(long rebases) {
+        this.rebases.addAndGet(rebases);
+    }
+
+    /**
+     * The number of pixels that were taken from the {@link IterationCache} instead of
+     * being iterated.
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public void addCacheHits(long pixels) {
+        cacheHits.addAndGet(pixels);
+    }
+
+    /**
+     * The iteration counts of the pixels that were iterated, added up. Pixels that were
+     * stopped early by interior detection count as {@code precision} iterations.
+     */
+    public long getIterations() {
+        return iterations.get();
+    }
+
+    public void addIterations(long iterations) {
+        this.iterations.addAndGet(iterations);
+    }
+
+    /**
+     * The number of pixels of the finished tiles that escaped, however they got their count.
+     */
+    public long getEscapedPixels() {
+        return escapedPixels.get();
+    }
+
+    public void addEscapedPixels(long pixels) {
+        escapedPixels.addAndGet(pixels);
+    }
+
+    /**
+     * The number of pixels of the finished tiles that didn't escape within {@code precision} iterations.
+     */
+    public long getInteriorPixels() {
+        return interiorPixels.get();
+    }
+
+    public void addInteriorPixels(long pixels) {
+        interiorPixels.addAndGet(pixels);
+    }
+
+    /**
+     * The time spent calculating iteration counts, added up over the worker threads.
+     */
+    public long getIterateNanos() {
+        return iterateNanos.get();
+    }
+
+    public void addIterateNanos(long nanos) {
+        iterateNanos.addAndGet(nanos);
+    }
+
+    /**
+     * The time spent coloring, added up over the worker threads.
+     */
+    public long getColorNanos() {
+        return colorNanos.get();
+    }
+
+    public void addColorNanos(long nanos) {
+        colorNanos.addAndGet(nanos);
+    }
+
+    /**
+     * The time spent copying colored pixels into the frame that is shown.
+     */
+    public long getUploadNanos() {
+        return uploadNanos.get();
+    }
+
+    public void addUploadNanos(long nanos) {
+        uploadNanos.addAndGet(nanos);
+    }
+
+    /**
+     * The time spent scaling the frame to the size of the screen.
+     */
+    public long getScaleNanos() {
+        return scaleNanos.get();
+    }
+
+    public void addScaleNanos(long nanos) {
+        scaleNanos.addAndGet(nanos);
+    }
+
+    /**
+     * The time from the start of the render until it finished or was cancelled, including
+     * the preparation, like calculating the reference orbit of {@link Perturbation}.
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public void setWallNanos(long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    /**
+     * The number of output pixels per second of wall time, or 0 before the render is finished.
+     */
+    public double getPixelsPerSecond() {
+        long nanos = wallNanos;
+        return nanos > 0 ? getOutputPixels() * 1e9 / nanos : 0;
+    }
+
+    /**
+     * The number of worker threads of the renderer.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * The arithmetic the engine chose for the last frame: {@link FractalEngine#ARITHMETIC_FLOAT},
+     * {@link FractalEngine#ARITHMETIC_DOUBLE}, {@link FractalEngine#ARITHMETIC_DOUBLE_DOUBLE} or
+     * {@link FractalEngine#ARITHMETIC_PERTURBATION}. See {@link FractalEngine#arithmeticName(int)}.
+     */
+    public int getArithmetic() {
+        return arithmetic;
+    }
+
+    public void setArithmetic(int arithmetic) {
+        this.arithmetic = arithmetic;
+    }
+}
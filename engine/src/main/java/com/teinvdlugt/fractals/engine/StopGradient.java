@@ -0,0 +1,55 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * A gradient that interpolates linearly between colors at fixed positions.
+ */
+public class StopGradient implements Gradient {
+
+    private final double[] positions;
+    private final int[] colors;
+
+    /**
+     * @param positions Increasing positions between 0 and 1
+     * @param colors    The ARGB color at every position
+     */
+    public StopGradient(double[] positions, int[] colors) {
+        if (positions.length == 0 || positions.length != colors.length) {
+            throw new IllegalArgumentException("Every stop needs a position and a color");
+        }
+        for (int i = 1; i < positions.length; i++) {
+            if (positions[i] < positions[i - 1]) {
+                throw new IllegalArgumentException("The positions of the stops have to increase");
+            }
+        }
+        this.positions = positions.clone();
+        this.colors = colors.clone();
+    }
+
+    public static StopGradient grayscale() {
+        return new StopGradient(new double[]{0, 1}, new int[]{ColorScheme.BLACK, ColorScheme.WHITE});
+    }
+
+    public static StopGradient fire() {
+        return new StopGradient(new double[]{0, .3, .6, 1},
+                new int[]{ColorScheme.BLACK, ColorScheme.rgb(180, 0, 0), ColorScheme.rgb(255, 160, 0), ColorScheme.WHITE});
+    }
+
+    @Override
+    public int color(double value) {
+        if (!(value > positions[0])) return colors[0];
+        int last = positions.length - 1;
+        if (value >= positions[last]) return colors[last];
+
+        int stop = 1;
+        while (positions[stop] < value) stop++;
+        double fraction = (value - positions[stop - 1]) / (positions[stop] - positions[stop - 1]);
+        int from = colors[stop - 1], to = colors[stop];
+        return ColorScheme.rgb(interpolate(from >> 16 & 0xFF, to >> 16 & 0xFF, fraction),
+                interpolate(from >> 8 & 0xFF, to >> 8 & 0xFF, fraction),
+                interpolate(from & 0xFF, to & 0xFF, fraction));
+    }
+
+    private static int interpolate(int from, int to, double fraction) {
+        return (int) (from + (to - from) * fraction + .5);
+    }
+}
@@ -0,0 +1,164 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a frame into square tiles and calculates them on a pool of worker threads.
+ * The workers take the next tile from a shared counter as soon as they are done with
+ * their previous one, so a thread that got a cheap (escaping) tile doesn't sit idle
+ * while another one is still working on the black inside of the set.
+ * <p/>
+ * The thread that calls {@link #render} doesn't calculate anything itself, but receives
+ * every finished tile through {@link OnTileFinishedListener}, so it can copy the tile
+ * to the screen while the workers carry on.
+ */
+public class TileRenderer {
+
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    private static final int WORKER_DONE = -1;
+
+    private static ExecutorService defaultExecutor;
+
+    private final ExecutorService executor;
+    private final int threads;
+    private final int tileSize;
+    private volatile boolean cancelled;
+
+    /**
+     * Calculates the pixels of one tile. Invoked concurrently from the worker threads,
+     * so implementations may only write to the pixels within the given bounds.
+     */
+    public interface TileCalculator {
+        void calculateTile(int left, int top, int width, int height);
+    }
+
+    /**
+     * Invoked on the thread that called {@link #render} every time a tile is finished.
+     */
+    public interface OnTileFinishedListener {
+        void onTileFinished(int left, int top, int width, int height);
+    }
+
+    public TileRenderer() {
+        this(getDefaultExecutor(), availableProcessors(), DEFAULT_TILE_SIZE);
+    }
+
+    public TileRenderer(ExecutorService executor, int threads, int tileSize) {
+        this.executor = executor;
+        this.threads = Math.max(1, threads);
+        this.tileSize = Math.max(1, tileSize);
+    }
+
+    /**
+     * Calculates all tiles of a {@code width x height} frame and waits for the workers
+     * to finish. When the render is cancelled (by {@link #cancel()} or by interrupting the
+     * calling thread) this method still waits for the tiles that are being calculated at
+     * that moment, so no worker writes to the caller's buffers after it returns.
+     *
+     * @param calculator The function that calculates the pixels of a tile
+     * @param listener   Listener to be notified of finished tiles, may be null
+     * @return false if the render was cancelled before all tiles were finished
+     */
+    public boolean render(final int width, final int height, final TileCalculator calculator,
+                          OnTileFinishedListener listener) {
+        final int tilesX = (width + tileSize - 1) / tileSize;
+        final int tileCount = tilesX * ((height + tileSize - 1) / tileSize);
+        final AtomicInteger nextTile = new AtomicInteger();
+        final LinkedBlockingQueue<Integer> finishedTiles = new LinkedBlockingQueue<>();
+
+        int workers = Math.min(threads, tileCount);
+        for (int i = 0; i < workers; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int tile;
+                        while (!cancelled && (tile = nextTile.getAndIncrement()) < tileCount) {
+                            int left = (tile % tilesX) * tileSize;
+                            int top = (tile / tilesX) * tileSize;
+                            calculator.calculateTile(left, top,
+                                    Math.min(tileSize, width - left), Math.min(tileSize, height - top));
+                            finishedTiles.add(tile);
+                        }
+                    } finally {
+                        finishedTiles.add(WORKER_DONE);
+                    }
+                }
+            });
+        }
+
+        boolean interrupted = false;
+        int finishedWorkers = 0;
+        while (finishedWorkers < workers) {
+            int tile;
+            try {
+                tile = finishedTiles.take();
+            } catch (InterruptedException e) {
+                // Keep waiting for the workers, but don't let them start new tiles
+                interrupted = true;
+                cancelled = true;
+                continue;
+            }
+
+            if (tile == WORKER_DONE) {
+                finishedWorkers++;
+            } else if (listener != null && !cancelled) {
+                int left = (tile % tilesX) * tileSize;
+                int top = (tile / tilesX) * tileSize;
+                listener.onTileFinished(left, top,
+                        Math.min(tileSize, width - left), Math.min(tileSize, height - top));
+            }
+        }
+
+        if (interrupted) Thread.currentThread().interrupt();
+        return !cancelled && nextTile.get() >= tileCount;
+    }
+
+    /**
+     * Stops the workers from starting new tiles. {@link TileCalculator}s should also poll
+     * {@link #isCancelled()} now and then to give up on a tile that has already been started.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public static int availableProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * A shared pool with a (daemon) thread for every available processor.
+     */
+    public static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TileRenderer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return defaultExecutor;
+    }
+}
@@ -0,0 +1,133 @@
+package com.teinvdlugt.fractals.engine;
+
+/**
+ * The part of the complex plane that is rendered, and the number of (virtual) pixels
+ * it is divided into. The top left pixel represents {@code startReal + startImg * i}.
+ * <p/>
+ * A viewport that is part of another one, like a {@link #strip}, is a window on the pixels of
+ * that one: it keeps its start and pixel size and only counts its columns and rows from
+ * {@code left} and {@code top}, so its pixels have exactly the same values, rounding included.
+ */
+public class Viewport {
+
+    /**
+     * The largest {@code left} and {@code top} of a {@link #zoomedIn} viewport, far enough from
+     * 2^53 that {@code left + column} still converts to a double exactly.
+     */
+    private static final long MAX_OFFSET = 1L << 52;
+
+    /**
+     * The start of the grid of pixels, which is the top left pixel unless this viewport is
+     * part of another one, and the first column and row of this viewport in that grid.
+     */
+    private final double startReal, startImg;
+    private final long left, top;
+    private final double pixelReal, pixelImg;
+    private final double rangeReal, rangeImg;
+    private final int width, height;
+
+    public Viewport(double startReal, double startImg, double rangeReal, double rangeImg, int width, int height) {
+        this(startReal, startImg, rangeReal / width, rangeImg / height, 0, 0, rangeReal, rangeImg, width, height);
+    }
+
+    Viewport(double startReal, double startImg, double pixelReal, double pixelImg, long left, long top,
+             double rangeReal, double rangeImg, int width, int height) {
+        this.startReal = startReal;
+        this.startImg = startImg;
+        this.pixelReal = pixelReal;
+        this.pixelImg = pixelImg;
+        this.left = left;
+        this.top = top;
+        this.rangeReal = rangeReal;
+        this.rangeImg = rangeImg;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * The view the app starts with: -2 to 2 on both axes.
+     */
+    public static Viewport defaultViewport(int width, int height) {
+        return new Viewport(-2, 2, 4, 4, width, height);
+    }
+
+    /**
+     * A viewport around a center point, with square pixels.
+     */
+    public static Viewport centered(double centerReal, double centerImg, double rangeReal, int width, int height) {
+        double rangeImg = rangeReal * height / width;
+        return new Viewport(centerReal - rangeReal / 2, centerImg + rangeImg / 2, rangeReal, rangeImg, width, height);
+    }
+
+    /**
+     * The real value in the complex field represented by a column of pixels.
+     *
+     * @param column The column of the pixels (defined in {@code width})
+     * @return The real value in the complex field
+     */
+    public double realValue(int column) {
+        return startReal + pixelReal * (left + column);
+    }
+
+    /**
+     * The imaginary value in the complex field represented by a row of pixels.
+     *
+     * @param row The row of the pixels (defined in {@code height})
+     * @return The imaginary value in the complex field
+     */
+    public double imaginaryValue(int row) {
+        return startImg - pixelImg * (top + row);
+    }
+
+    /**
+     * A band of rows of this viewport, with the same pixels: row {@code r} of the band has
+     * exactly the imaginary value of row {@code top + r} of this viewport.
+     *
+     * @param top  The first row of the band
+     * @param rows The number of rows in the band
+     */
+    public Viewport strip(int top, int rows) {
+        return new Viewport(startReal, startImg, pixelReal, pixelImg, left, this.top + top,
+                rangeReal, pixelImg * rows, width, rows);
+    }
+
+    /**
+     * The center of this viewport zoomed in 2x on the same grid, see {@link DeepViewport#zoomedIn}.
+     * When the columns or rows would be counted too far from the start to be exact in a double,
+     * a new grid starts at the top left pixel instead.
+     */
+    Viewport zoomedIn() {
+        double pixelReal = this.pixelReal / 2, pixelImg = this.pixelImg / 2;
+        long left = 2 * this.left + width / 2, top = 2 * this.top + height / 2;
+        if (Math.max(left, top) > MAX_OFFSET) {
+            return new Viewport(startReal + pixelReal * left, startImg - pixelImg * top, pixelReal, pixelImg, 0, 0,
+                    rangeReal / 2, rangeImg / 2, width, height);
+        }
+        return new Viewport(startReal, startImg, pixelReal, pixelImg, left, top, rangeReal / 2, rangeImg / 2,
+                width, height);
+    }
+
+    public double getStartReal() {
+        return realValue(0);
+    }
+
+    public double getStartImg() {
+        return imaginaryValue(0);
+    }
+
+    public double getRangeReal() {
+        return rangeReal;
+    }
+
+    public double getRangeImg() {
+        return rangeImg;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
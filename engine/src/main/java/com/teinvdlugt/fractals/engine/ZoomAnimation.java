@@ -0,0 +1,217 @@
+package com.teinvdlugt.fractals.engine;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Renders the frames of an animation that zooms into a point at a constant speed: the range of
+ * every frame is the same factor smaller than that of the frame before.
+ * <p/>
+ * Most frames aren't rendered themselves. The animation renders a keyframe for every zoom of
+ * 2x, at twice the resolution of the frames, and every frame is resampled from the keyframe
+ * that is just larger than it, which has at least one pixel for every pixel of the frame.
+ * Because the next keyframe has the same pixels as the center of the one before, only three
+ * quarters of its pixels are calculated (see {@link FractalEngine#refine}). All keyframes of
+ * a deep zoom share one reference orbit, which is calculated for the deepest one.
+ */
+public class ZoomAnimation {
+
+    /**
+     * Invoked on the calling thread for every frame, in order.
+     */
+    public interface FrameSink {
+        /**
+         * @param colors The colors of the frame, row by row; the buffer is reused for the next frame
+         */
+        void writeFrame(int frame, int[] colors, int width, int height) throws IOException;
+    }
+
+    private final FractalEngine engine;
+    private final BigDecimal centerReal, centerImg;
+    private final double startRange, endRange;
+    private final int frames, width, height;
+    private volatile boolean cancelled;
+    private int keyframes;
+    private long calculatedPixels, reusedPixels;
+
+    /**
+     * @param startRange The real range of the first frame
+     * @param endRange   The real range of the last frame, smaller than the first
+     * @param width      The width of the frames, which has to be even
+     * @param height     The height of the frames, which has to be even
+     */
+    public ZoomAnimation(FractalEngine engine, BigDecimal centerReal, BigDecimal centerImg,
+                         double startRange, double endRange, int frames, int width, int height) {
+        if (endRange >= startRange) throw new IllegalArgumentException("The animation has to zoom in");
+        if (width % 2 != 0 || height % 2 != 0) {
+            throw new IllegalArgumentException("The frame size has to be even: " + width + "x" + height);
+        }
+        if (frames < 2) throw new IllegalArgumentException("An animation has at least 2 frames");
+        this.engine = engine;
+        this.centerReal = centerReal;
+        this.centerImg = centerImg;
+        this.startRange = startRange;
+        this.endRange = endRange;
+        this.frames = frames;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * The real range of a frame.
+     */
+    public double frameRange(int frame) {
+        return startRange * Math.pow(endRange / startRange, (double) frame / (frames - 1));
+    }
+
+    /**
+     * The keyframe that a frame is resampled from: keyframe k has a range of startRange / 2^k,
+     * and the range of the frame is at most that and more than half of it.
+     */
+    private int keyframeOf(int frame) {
+        double zooms = Math.log(startRange / frameRange(frame)) / Math.log(2);
+        // Rounding may put a range of exactly a power of two in either keyframe, which are both fine
+        return Math.max(0, (int) Math.floor(zooms));
+    }
+
+    /**
+     * Keyframe k is the first keyframe {@link DeepViewport#zoomedIn zoomed in} k times, so that
+     * the pixels it shares with the keyframe before have exactly the same values.
+     */
+    private DeepViewport keyframeViewport(int keyframe) {
+        DeepViewport viewport = DeepViewport.centered(centerReal, centerImg, startRange, width * 2, height * 2);
+        for (int i = 0; i < keyframe; i++) {
+            viewport = viewport.zoomedIn();
+        }
+        return viewport;
+    }
+
+    /**
+     * Renders all frames and passes them to the sink.
+     *
+     * @return false if the animation was cancelled
+     */
+    public boolean render(RenderParams params, final ColorScheme colorScheme, FrameSink sink) throws IOException {
+        final int keyWidth = width * 2, keyHeight = height * 2;
+        final int precision = params.getPrecision();
+        int[] previous = new int[keyWidth * keyHeight];
+        int[] current = new int[previous.length];
+        final int[] keyColors = new int[previous.length];
+        final int[] frameColors = new int[width * height];
+
+        int lastKeyframe = keyframeOf(frames - 1);
+        DeepViewport deepest = keyframeViewport(lastKeyframe);
+        if (params.getFractal() == FractalEngine.MANDELBROT_SET && !params.isJulia()
+                && FractalEngine.needsPerturbation(deepest.getRangeReal(), deepest.getWidth())) {
+            engine.setReferenceOrbit(new Perturbation(deepest, precision, params.getEscapeValue()));
+        }
+        if (!colorScheme.preparePalette(precision, engine.getRenderer())) return false;
+
+        int keyframe = -1;
+        DeepViewport viewport = null;
+        for (int frame = 0; frame < frames; frame++) {
+            while (keyframe < keyframeOf(frame)) {
+                if (cancelled) return false;
+                keyframe++;
+                viewport = keyframe == 0 ? keyframeViewport(0) : viewport.zoomedIn();
+                boolean finished;
+                if (keyframe == 0) {
+                    finished = engine.render(viewport, params, current, null, null);
+                    calculatedPixels += current.length;
+                } else {
+                    // The center of the last keyframe has the even pixels of this one
+                    for (int y = 0; y < keyHeight; y += 2) {
+                        int source = (keyHeight / 4 + y / 2) * keyWidth + keyWidth / 4;
+                        for (int x = 0, i = y * keyWidth; x < keyWidth; x += 2, i += 2) {
+                            current[i] = previous[source++];
+                        }
+                    }
+                    finished = engine.refine(viewport, params, current, null, null);
+                    calculatedPixels += current.length - current.length / 4;
+                    reusedPixels += current.length / 4;
+                }
+                if (!finished || !engine.color(current, keyColors, keyWidth, keyHeight, precision, colorScheme)) {
+                    return false;
+                }
+                keyframes++;
+                int[] temp = previous;
+                previous = current;
+                current = temp;
+            }
+
+            // Keyframe pixels per frame pixel, from 1 to 2
+            final double scale = 2 * frameRange(frame) / (startRange / Math.pow(2, keyframe));
+            boolean finished = engine.getRenderer().render(width, height, new TileRenderer.TileCalculator() {
+                @Override
+                public void calculateTile(int left, int top, int tileWidth, int tileHeight) {
+                    resample(keyColors, keyWidth, keyHeight, frameColors, scale, left, top, tileWidth, tileHeight);
+                }
+            }, null);
+            if (!finished || cancelled) return false;
+            sink.writeFrame(frame, frameColors, width, height);
+        }
+        return true;
+    }
+
+    /**
+     * Samples a region of a frame from the center of a keyframe, bilinearly.
+     */
+    private void resample(int[] keyColors, int keyWidth, int keyHeight, int[] frameColors, double scale,
+                          int left, int top, int tileWidth, int tileHeight) {
+        for (int y = top; y < top + tileHeight; y++) {
+            double keyY = Math.max(0, Math.min(keyHeight - 1, keyHeight / 2.0 + (y + .5 - height / 2.0) * scale - .5));
+            int y0 = Math.min((int) keyY, keyHeight - 2);
+            double fy = keyY - y0;
+            for (int x = left; x < left + tileWidth; x++) {
+                double keyX = Math.max(0, Math.min(keyWidth - 1, keyWidth / 2.0 + (x + .5 - width / 2.0) * scale - .5));
+                int x0 = Math.min((int) keyX, keyWidth - 2);
+                double fx = keyX - x0;
+                int i = y0 * keyWidth + x0;
+                frameColors[y * width + x] = interpolate(
+                        interpolate(keyColors[i], keyColors[i + 1], fx),
+                        interpolate(keyColors[i + keyWidth], keyColors[i + keyWidth + 1], fx), fy);
+            }
+        }
+    }
+
+    private static int interpolate(int a, int b, double t) {
+        if (a == b) return a;
+        int red = (int) Math.round(((a >> 16) & 0xFF) * (1 - t) + ((b >> 16) & 0xFF) * t);
+        int green = (int) Math.round(((a >> 8) & 0xFF) * (1 - t) + ((b >> 8) & 0xFF) * t);
+        int blue = (int) Math.round((a & 0xFF) * (1 - t) + (b & 0xFF) * t);
+        return 0xFF000000 | red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * Stops the animation. Can be invoked from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        engine.cancel();
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * The number of keyframes that were rendered.
+     */
+    public int getKeyframes() {
+        return keyframes;
+    }
+
+    /**
+     * The number of keyframe pixels that were calculated.
+     */
+    public long getCalculatedPixels() {
+        return calculatedPixels;
+    }
+
+    /**
+     * The number of keyframe pixels that were copied from the keyframe before.
+     */
+    public long getReusedPixels() {
+        return reusedPixels;
+    }
+}
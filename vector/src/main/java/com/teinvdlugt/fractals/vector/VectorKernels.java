@@ -0,0 +1,424 @@
+package com.teinvdlugt.fractals.vector;
+
+import com.teinvdlugt.fractals.engine.FractalEngine;
+import com.teinvdlugt.fractals.engine.FractalKernel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link FractalKernel}s that iterate a row of pixels a few at a time with the Vector API: as
+ * many adjacent pixels as fit in a vector register (4 with AVX2, 8 with AVX-512) are iterated
+ * together, and the pixels that have escaped are masked out until all of them have. The
+ * iteration counts are the same as those of the scalar kernels, because every lane does the
+ * same operations in the same order.
+ * <p/>
+ * Only rows without interior detection or smoothing are vectorised; everything else is passed
+ * on to the scalar kernel. The {@link #forFractalFloat float kernels} iterate twice as many
+ * pixels at a time, but don't give the same counts. The engine finds this class by reflection (see
+ * {@link com.teinvdlugt.fractals.engine.FractalKernels#vectorized}); the JVM has to be started
+ * with {@code --add-modules jdk.incubator.vector}.
+ */
+public class VectorKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    /**
+     * The vectorised kernel of a fractal, or null if there is none.
+     *
+     * @param scalar The scalar kernel of the fractal, for everything that isn't vectorised
+     */
+    public static FractalKernel forFractal(int fractal, FractalKernel scalar) {
+        switch (fractal) {
+            case FractalEngine.MANDELBROT_SET:
+                return new Mandelbrot(scalar);
+            case FractalEngine.TRICORN:
+                return new Tricorn(scalar);
+            case FractalEngine.BURNING_SHIP:
+                return new BurningShip(scalar);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The kernel of a fractal that iterates rows with floats instead of doubles, or null if
+     * there is none. Its counts are those of the points rounded to floats, which is only
+     * close enough to the double counts when the pixels are much larger than the rounding (see
+     * {@link FractalEngine#ARITHMETIC_FLOAT}). Rows with interior detection or smoothing
+     * are passed on to the scalar kernel, and iterated with doubles.
+     */
+    public static FractalKernel forFractalFloat(int fractal, FractalKernel scalar) {
+        switch (fractal) {
+            case FractalEngine.MANDELBROT_SET:
+                return new FloatMandelbrot(scalar);
+            case FractalEngine.TRICORN:
+                return new FloatTricorn(scalar);
+            case FractalEngine.BURNING_SHIP:
+                return new FloatBurningShip(scalar);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The number of pixels that are iterated together.
+     */
+    public static int lanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * The number of pixels that are iterated together by the float kernels.
+     */
+    public static int floatLanes() {
+        return FLOAT_SPECIES.length();
+    }
+
+    /**
+     * Passes everything but plain rows on to the scalar kernel.
+     */
+    private abstract static class VectorKernel implements FractalKernel {
+        final FractalKernel scalar;
+
+        VectorKernel(FractalKernel scalar) {
+            this.scalar = scalar;
+        }
+
+        @Override
+        public int iterate(double cReal, double cImg, double escapeValue, int precision) {
+            return scalar.iterate(cReal, cImg, escapeValue, precision);
+        }
+
+        @Override
+        public int iterate(double zReal, double zImg, double cReal, double cImg, double escapeValue, int precision) {
+            return scalar.iterate(zReal, zImg, cReal, cImg, escapeValue, precision);
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double cReal, double cImg, double escapeValue, int precision) {
+            return scalar.iterateWithInteriorDetection(cReal, cImg, escapeValue, precision);
+        }
+
+        @Override
+        public int iterateWithInteriorDetection(double zReal, double zImg, double cReal, double cImg,
+                                                double escapeValue, int precision) {
+            return scalar.iterateWithInteriorDetection(zReal, zImg, cReal, cImg, escapeValue, precision);
+        }
+
+        @Override
+        public double iterateSmooth(double cReal, double cImg, double escapeValue, int precision,
+                                    boolean interiorDetection) {
+            return scalar.iterateSmooth(cReal, cImg, escapeValue, precision, interiorDetection);
+        }
+
+        @Override
+        public double iterateSmooth(double zReal, double zImg, double cReal, double cImg, double escapeValue,
+                                    int precision, boolean interiorDetection) {
+            return scalar.iterateSmooth(zReal, zImg, cReal, cImg, escapeValue, precision, interiorDetection);
+        }
+
+        @Override
+        public int iterateRow(double[] cReal, double cImg, int[] iterations, float[] smooth, int offset, int length,
+                              double escapeValue, int precision, boolean interiorDetection) {
+            return scalar.iterateRow(cReal, cImg, iterations, smooth, offset, length, escapeValue, precision,
+                    interiorDetection);
+        }
+
+        @Override
+        public double iterateDistance(double cReal, double cImg, float[] distances, int index,
+                                      double escapeValue, int precision, boolean interiorDetection) {
+            return scalar.iterateDistance(cReal, cImg, distances, index, escapeValue, precision, interiorDetection);
+        }
+
+        @Override
+        public double iterateDistance(double zReal, double zImg, double cReal, double cImg, boolean julia,
+                                      float[] distances, int index, double escapeValue, int precision,
+                                      boolean interiorDetection) {
+            return scalar.iterateDistance(zReal, zImg, cReal, cImg, julia, distances, index, escapeValue,
+                    precision, interiorDetection);
+        }
+    }
+
+    /**
+     * {@code z^2 + c}
+     */
+    private static final class Mandelbrot extends VectorKernel {
+        Mandelbrot(FractalKernel scalar) {
+            super(scalar);
+        }
+
+        @Override
+        public int iterateRow(double[] cReal, double cImg, int[] iterations, int offset, int length,
+                              double escapeValue, int precision, boolean interiorDetection) {
+            if (interiorDetection) {
+                return scalar.iterateRow(cReal, cImg, iterations, offset, length, escapeValue, precision, true);
+            }
+            int vectorLength = SPECIES.loopBound(length);
+            double[] counts = new double[SPECIES.length()];
+            DoubleVector ci = DoubleVector.broadcast(SPECIES, cImg);
+            for (int x = 0; x < vectorLength; x += SPECIES.length()) {
+                DoubleVector cr = DoubleVector.fromArray(SPECIES, cReal, x);
+                DoubleVector zr = DoubleVector.zero(SPECIES), zi = DoubleVector.zero(SPECIES);
+                DoubleVector count = DoubleVector.zero(SPECIES);
+                VectorMask<Double> active = SPECIES.maskAll(true);
+                for (int i = 0; i < precision; i++) {
+                    DoubleVector zr2 = zr.mul(zr), zi2 = zi.mul(zi);
+                    active = active.and(zr2.add(zi2).compare(VectorOperators.LE, escapeValue * escapeValue));
+                    if (!active.anyTrue()) break;
+                    count = count.add(1, active);
+                    // The same operations as the scalar kernel: (x^2 - y^2) + cr, (2x)y + ci
+                    DoubleVector zrNew = zr2.sub(zi2).add(cr);
+                    zi = zr.mul(2).mul(zi).add(ci);
+                    zr = zrNew;
+                }
+                store(count, counts, iterations, offset + x);
+            }
+            if (vectorLength < length) {
+                scalar.iterateRow(tail(cReal, vectorLength, length), cImg, iterations, offset + vectorLength,
+                        length - vectorLength, escapeValue, precision, false);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * {@code conj(z)^2 + c}
+     */
+    private static final class Tricorn extends VectorKernel {
+        Tricorn(FractalKernel scalar) {
+            super(scalar);
+        }
+
+        @Override
+        public int iterateRow(double[] cReal, double cImg, int[] iterations, int offset, int length,
+                              double escapeValue, int precision, boolean interiorDetection) {
+            if (interiorDetection) {
+                return scalar.iterateRow(cReal, cImg, iterations, offset, length, escapeValue, precision, true);
+            }
+            int vectorLength = SPECIES.loopBound(length);
+            double[] counts = new double[SPECIES.length()];
+            DoubleVector ci = DoubleVector.broadcast(SPECIES, cImg);
+            for (int x = 0; x < vectorLength; x += SPECIES.length()) {
+                DoubleVector cr = DoubleVector.fromArray(SPECIES, cReal, x);
+                DoubleVector zr = DoubleVector.zero(SPECIES), zi = DoubleVector.zero(SPECIES);
+                DoubleVector count = DoubleVector.zero(SPECIES);
+                VectorMask<Double> active = SPECIES.maskAll(true);
+                for (int i = 0; i < precision; i++) {
+                    DoubleVector zr2 = zr.mul(zr), zi2 = zi.mul(zi);
+                    active = active.and(zr2.add(zi2).compare(VectorOperators.LE, escapeValue * escapeValue));
+                    if (!active.anyTrue()) break;
+                    count = count.add(1, active);
+                    DoubleVector zrNew = zr2.sub(zi2).add(cr);
+                    zi = zr.mul(-2).mul(zi).add(ci);
+                    zr = zrNew;
+                }
+                store(count, counts, iterations, offset + x);
+            }
+            if (vectorLength < length) {
+                scalar.iterateRow(tail(cReal, vectorLength, length), cImg, iterations, offset + vectorLength,
+                        length - vectorLength, escapeValue, precision, false);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * {@code (|Re z| + i |Im z|)^2 + c}
+     */
+    private static final class BurningShip extends VectorKernel {
+        BurningShip(FractalKernel scalar) {
+            super(scalar);
+        }
+
+        @Override
+        public int iterateRow(double[] cReal, double cImg, int[] iterations, int offset, int length,
+                              double escapeValue, int precision, boolean interiorDetection) {
+            if (interiorDetection) {
+                return scalar.iterateRow(cReal, cImg, iterations, offset, length, escapeValue, precision, true);
+            }
+            int vectorLength = SPECIES.loopBound(length);
+            double[] counts = new double[SPECIES.length()];
+            DoubleVector ci = DoubleVector.broadcast(SPECIES, cImg);
+            for (int x = 0; x < vectorLength; x += SPECIES.length()) {
+                DoubleVector cr = DoubleVector.fromArray(SPECIES, cReal, x);
+                DoubleVector zr = DoubleVector.zero(SPECIES), zi = DoubleVector.zero(SPECIES);
+                DoubleVector count = DoubleVector.zero(SPECIES);
+                VectorMask<Double> active = SPECIES.maskAll(true);
+                for (int i = 0; i < precision; i++) {
+                    DoubleVector zr2 = zr.mul(zr), zi2 = zi.mul(zi);
+                    active = active.and(zr2.add(zi2).compare(VectorOperators.LE, escapeValue * escapeValue));
+                    if (!active.anyTrue()) break;
+                    count = count.add(1, active);
+                    DoubleVector zrNew = zr2.sub(zi2).add(cr);
+                    zi = zr.mul(2).mul(zi).abs().add(ci);
+                    zr = zrNew;
+                }
+                store(count, counts, iterations, offset + x);
+            }
+            if (vectorLength < length) {
+                scalar.iterateRow(tail(cReal, vectorLength, length), cImg, iterations, offset + vectorLength,
+                        length - vectorLength, escapeValue, precision, false);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * {@code z^2 + c} with floats
+     */
+    private static final class FloatMandelbrot extends VectorKernel {
+        FloatMandelbrot(FractalKernel scalar) {
+            super(scalar);
+        }
+
+        @Override
+        public int iterateRow(double[] cReal, double cImg, int[] iterations, int offset, int length,
+                              double escapeValue, int precision, boolean interiorDetection) {
+            if (interiorDetection) {
+                return scalar.iterateRow(cReal, cImg, iterations, offset, length, escapeValue, precision, true);
+            }
+            float[] floats = toFloats(cReal, length);
+            float escape2 = (float) (escapeValue * escapeValue);
+            FloatVector ci = FloatVector.broadcast(FLOAT_SPECIES, (float) cImg);
+            for (int x = 0; x < length; x += FLOAT_SPECIES.length()) {
+                VectorMask<Float> inRow = FLOAT_SPECIES.indexInRange(x, length);
+                FloatVector cr = FloatVector.fromArray(FLOAT_SPECIES, floats, x, inRow);
+                FloatVector zr = FloatVector.zero(FLOAT_SPECIES), zi = FloatVector.zero(FLOAT_SPECIES);
+                FloatVector count = FloatVector.zero(FLOAT_SPECIES);
+                VectorMask<Float> active = inRow;
+                for (int i = 0; i < precision; i++) {
+                    FloatVector zr2 = zr.mul(zr), zi2 = zi.mul(zi);
+                    active = active.and(zr2.add(zi2).compare(VectorOperators.LE, escape2));
+                    if (!active.anyTrue()) break;
+                    count = count.add(1, active);
+                    FloatVector zrNew = zr2.sub(zi2).add(cr);
+                    zi = zr.mul(2).mul(zi).add(ci);
+                    zr = zrNew;
+                }
+                store(count, inRow, iterations, offset + x);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * {@code conj(z)^2 + c} with floats
+     */
+    private static final class FloatTricorn extends VectorKernel {
+        FloatTricorn(FractalKernel scalar) {
+            super(scalar);
+        }
+
+        @Override
+        public int iterateRow(double[] cReal, double cImg, int[] iterations, int offset, int length,
+                              double escapeValue, int precision, boolean interiorDetection) {
+            if (interiorDetection) {
+                return scalar.iterateRow(cReal, cImg, iterations, offset, length, escapeValue, precision, true);
+            }
+            float[] floats = toFloats(cReal, length);
+            float escape2 = (float) (escapeValue * escapeValue);
+            FloatVector ci = FloatVector.broadcast(FLOAT_SPECIES, (float) cImg);
+            for (int x = 0; x < length; x += FLOAT_SPECIES.length()) {
+                VectorMask<Float> inRow = FLOAT_SPECIES.indexInRange(x, length);
+                FloatVector cr = FloatVector.fromArray(FLOAT_SPECIES, floats, x, inRow);
+                FloatVector zr = FloatVector.zero(FLOAT_SPECIES), zi = FloatVector.zero(FLOAT_SPECIES);
+                FloatVector count = FloatVector.zero(FLOAT_SPECIES);
+                VectorMask<Float> active = inRow;
+                for (int i = 0; i < precision; i++) {
+                    FloatVector zr2 = zr.mul(zr), zi2 = zi.mul(zi);
+                    active = active.and(zr2.add(zi2).compare(VectorOperators.LE, escape2));
+                    if (!active.anyTrue()) break;
+                    count = count.add(1, active);
+                    FloatVector zrNew = zr2.sub(zi2).add(cr);
+                    zi = zr.mul(-2).mul(zi).add(ci);
+                    zr = zrNew;
+                }
+                store(count, inRow, iterations, offset + x);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * {@code (|Re z| + i |Im z|)^2 + c} with floats
+     */
+    private static final class FloatBurningShip extends VectorKernel {
+        FloatBurningShip(FractalKernel scalar) {
+            super(scalar);
+        }
+
+        @Override
+        public int iterateRow(double[] cReal, double cImg, int[] iterations, int offset, int length,
+                              double escapeValue, int precision, boolean interiorDetection) {
+            if (interiorDetection) {
+                return scalar.iterateRow(cReal, cImg, iterations, offset, length, escapeValue, precision, true);
+            }
+            float[] floats = toFloats(cReal, length);
+            float escape2 = (float) (escapeValue * escapeValue);
+            FloatVector ci = FloatVector.broadcast(FLOAT_SPECIES, (float) cImg);
+            for (int x = 0; x < length; x += FLOAT_SPECIES.length()) {
+                VectorMask<Float> inRow = FLOAT_SPECIES.indexInRange(x, length);
+                FloatVector cr = FloatVector.fromArray(FLOAT_SPECIES, floats, x, inRow);
+                FloatVector zr = FloatVector.zero(FLOAT_SPECIES), zi = FloatVector.zero(FLOAT_SPECIES);
+                FloatVector count = FloatVector.zero(FLOAT_SPECIES);
+                VectorMask<Float> active = inRow;
+                for (int i = 0; i < precision; i++) {
+                    FloatVector zr2 = zr.mul(zr), zi2 = zi.mul(zi);
+                    active = active.and(zr2.add(zi2).compare(VectorOperators.LE, escape2));
+                    if (!active.anyTrue()) break;
+                    count = count.add(1, active);
+                    FloatVector zrNew = zr2.sub(zi2).add(cr);
+                    zi = zr.mul(2).mul(zi).abs().add(ci);
+                    zr = zrNew;
+                }
+                store(count, inRow, iterations, offset + x);
+            }
+            return 0;
+        }
+    }
+
+    private static void store(DoubleVector count, double[] counts, int[] iterations, int offset) {
+        count.intoArray(counts, 0);
+        for (int lane = 0; lane < counts.length; lane++) {
+            iterations[offset + lane] = (int) counts[lane];
+        }
+    }
+
+    /**
+     * Stores the lanes of the row, the last group of lanes may stick out of it. Floats
+     * count exactly up to 2^24, far beyond any precision that is used.
+     */
+    private static void store(FloatVector count, VectorMask<Float> inRow, int[] iterations, int offset) {
+        IntVector counts = (IntVector) count.convert(VectorOperators.F2I, 0);
+        counts.intoArray(iterations, offset, inRow.cast(counts.species()));
+    }
+
+    /**
+     * The first {@code length} values rounded to floats.
+     */
+    private static float[] toFloats(double[] values, int length) {
+        float[] floats = new float[length];
+        for (int i = 0; i < length; i++) {
+            floats[i] = (float) values[i];
+        }
+        return floats;
+    }
+
+    /**
+     * The real parts of the pixels after the last full group of lanes.
+     */
+    private static double[] tail(double[] cReal, int from, int to) {
+        double[] tail = new double[to - from];
+        System.arraycopy(cReal, from, tail, 0, tail.length);
+        return tail;
+    }
+}